@@ -0,0 +1,187 @@
+package biz.netcentric.filevault.validator.aem.cloud;
+
+/*-
+ * #%L
+ * AEM Cloud Validator
+ * %%
+ * Copyright (C) 2021 Netcentric - A Cognizant Digital Business
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jackrabbit.vault.packaging.PackageType;
+import org.apache.jackrabbit.vault.validation.impl.util.ValidatorSettingsImpl;
+import org.apache.jackrabbit.vault.validation.spi.ValidationContext;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessage;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
+import org.apache.jackrabbit.vault.validation.spi.ValidatorSettings;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import biz.netcentric.filevault.validator.aem.cloud.SyntheticPackage.DocViewNodeWithContext;
+
+/**
+ * Benchmarks for the callbacks of {@link AemCloudValidator} and for {@link AemCloudValidatorFactory#createValidator(ValidationContext, ValidatorSettings)}.
+ * Each benchmark operation validates a full synthetic package, i.e. divide the average time by the number of nodes to get the costs per node.
+ * Run with {@code mvn -Pjmh test-compile exec:exec} (optionally pass additional JMH arguments like {@code -Djmh.args="-prof gc"} to also measure allocations).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class AemCloudValidatorBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class NodePaths {
+        @Param({ "1000000" })
+        int numNodes;
+
+        @Param({ "CONTENT", "APPLICATION", "MIXED" })
+        PackageType packageType;
+
+        String[] paths;
+
+        @Setup
+        public void setUp() {
+            paths = SyntheticPackage.generatePaths(numNodes, 42);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class MixedNodePaths {
+        @Param({ "1000000" })
+        int numNodes;
+
+        /** {@code false} to classify every node path even if the outcome is already final */
+        @Param({ "true", "false" })
+        boolean isEarlySaturationEnabled;
+
+        String[] paths;
+
+        @Setup
+        public void setUp() {
+            paths = SyntheticPackage.generatePaths(numNodes, 42);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class DocViewNodes {
+        @Param({ "1000000" })
+        int numNodes;
+
+        /** every n-th node is an index definition */
+        @Param({ "10", "1000" })
+        int indexDefinitionRatio;
+
+        List<DocViewNodeWithContext> nodes;
+
+        @Setup
+        public void setUp() {
+            nodes = SyntheticPackage.generateDocViewNodes(SyntheticPackage.generatePaths(numNodes, 42), indexDefinitionRatio);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class MetaInfPaths {
+        @Param({ "10000" })
+        int numPaths;
+
+        Path[] paths;
+
+        @Setup
+        public void setUp() {
+            paths = SyntheticPackage.generateMetaInfPaths(numPaths);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ValidationContexts {
+        /** the nesting depth of the package validated by the validator */
+        @Param({ "0", "3" })
+        int nestingDepth;
+
+        AemCloudValidatorFactory factory;
+        ValidationContext context;
+        ValidatorSettings settings;
+
+        @Setup
+        public void setUp() {
+            factory = new AemCloudValidatorFactory();
+            ValidationContext context = new SimpleValidationContext("container", PackageType.CONTAINER, Paths.get("container.zip"), null);
+            for (int i = 0; i < nestingDepth; i++) {
+                context = new SimpleValidationContext("subpackage" + i, i == nestingDepth - 1 ? PackageType.CONTENT : PackageType.CONTAINER,
+                        Paths.get("jcr_root", "apps", "synthetic", "install.publish", "subpackage" + i + ".zip"), context);
+            }
+            this.context = context;
+            settings = new ValidatorSettingsImpl(false, ValidationMessageSeverity.ERROR, Collections.singletonMap("allowLibsNode", "false"));
+        }
+    }
+
+    @Benchmark
+    public void validateNodePaths(NodePaths state, Blackhole blackhole) {
+        AemCloudValidator validator = new AemCloudValidator(false, false, false, state.packageType, null, ValidationMessageSeverity.ERROR);
+        for (String path : state.paths) {
+            blackhole.consume(validator.validate(path));
+        }
+        blackhole.consume(validator.done());
+    }
+
+    /**
+     * Validates a mixed package whose outcome is final after a few nodes (the synthetic package does not contain {@code /libs} nodes, therefore those are allowed
+     * to reach saturation), i.e. compares the costs of the saturated no-op with the costs of classifying every node path.
+     */
+    @Benchmark
+    public void validateNodePathsWithEarlySaturation(MixedNodePaths state, Blackhole blackhole) {
+        AemCloudValidator validator = new AemCloudValidator(false, true, false, PackageType.MIXED, null, ValidationMessageSeverity.ERROR);
+        validator.setEarlySaturationEnabled(state.isEarlySaturationEnabled);
+        for (String path : state.paths) {
+            blackhole.consume(validator.validate(path));
+        }
+        blackhole.consume(validator.done());
+    }
+
+    @Benchmark
+    public void validateDocViewNodes(DocViewNodes state, Blackhole blackhole) {
+        AemCloudValidator validator = new AemCloudValidator(false, false, false, PackageType.APPLICATION, null, ValidationMessageSeverity.ERROR);
+        for (DocViewNodeWithContext node : state.nodes) {
+            blackhole.consume(validator.validate(node.node, node.nodeContext, true));
+        }
+        blackhole.consume(validator.done());
+    }
+
+    @Benchmark
+    public void validateMetaInfPaths(MetaInfPaths state, Blackhole blackhole) {
+        AemCloudValidator validator = new AemCloudValidator(false, false, false, PackageType.CONTENT, null, ValidationMessageSeverity.ERROR);
+        for (Path path : state.paths) {
+            blackhole.consume(validator.validateMetaInfPath(path));
+        }
+        blackhole.consume(validator.done());
+    }
+
+    @Benchmark
+    public Collection<ValidationMessage> createValidator(ValidationContexts state) {
+        return ((AemCloudValidator) state.factory.createValidator(state.context, state.settings)).done();
+    }
+}
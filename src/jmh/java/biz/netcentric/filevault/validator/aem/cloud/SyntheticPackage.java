@@ -0,0 +1,181 @@
+package biz.netcentric.filevault.validator.aem.cloud;
+
+/*-
+ * #%L
+ * AEM Cloud Validator
+ * %%
+ * Copyright (C) 2021 Netcentric - A Cognizant Digital Business
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import javax.jcr.PropertyType;
+
+import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.spi.commons.name.NameConstants;
+import org.apache.jackrabbit.spi.commons.name.NameFactoryImpl;
+import org.apache.jackrabbit.util.Text;
+import org.apache.jackrabbit.vault.util.DocViewNode2;
+import org.apache.jackrabbit.vault.util.DocViewProperty2;
+import org.apache.jackrabbit.vault.validation.spi.NodeContext;
+import org.apache.jackrabbit.vault.validation.spi.util.NodeContextImpl;
+
+/**
+ * Generates deterministic synthetic package content (node paths and document view nodes) for benchmarks.
+ */
+final class SyntheticPackage {
+
+    private static final String[] ROOTS = { "/apps/synthetic", "/content/synthetic", "/var/synthetic" };
+    /** the relative weights of the roots from {@link #ROOTS} */
+    private static final int[] ROOT_WEIGHTS = { 3, 6, 1 };
+    private static final int MAX_DEPTH = 40;
+    private static final Name PN_TYPE = NameFactoryImpl.getInstance().create(Name.NS_DEFAULT_URI, "type");
+    private static final Name PN_COMPAT_VERSION = NameFactoryImpl.getInstance().create(Name.NS_DEFAULT_URI, "compatVersion");
+    private static final Name PN_TITLE = NameFactoryImpl.getInstance().create(Name.NS_JCR_URI, "title");
+    private static final Name PN_TEXT = NameFactoryImpl.getInstance().create(Name.NS_DEFAULT_URI, "text");
+    private static final Name PN_TAGS = NameFactoryImpl.getInstance().create(Name.NS_DEFAULT_URI, "tags");
+    private static final Path BASE_PATH = Paths.get("jcr_root");
+
+    private SyntheticPackage() {
+        // only static methods
+    }
+
+    /**
+     * Generates a tree of node paths below {@code /apps}, {@code /content} and {@code /var}.
+     * Each parent path is emitted before its children (like in a regular package traversal).
+     * The tree contains deep chains (up to {@value #MAX_DEPTH} levels below the root) as well as wide parents with thousands of children.
+     * @param numNodes the number of paths to generate
+     * @param seed the seed for the random generator
+     * @return the generated paths
+     */
+    static String[] generatePaths(int numNodes, long seed) {
+        Random random = new Random(seed);
+        String[] paths = new String[numNodes];
+        int[] depths = new int[numNodes];
+        int totalWeight = Arrays.stream(ROOT_WEIGHTS).sum();
+        int numPaths = 0;
+        // the last node added per root (extending it leads to deep trees)
+        int[] lastIndexPerRoot = new int[ROOTS.length];
+        // one wide parent per root which receives lots of children
+        int[] wideParentPerRoot = new int[ROOTS.length];
+        for (int i = 0; i < ROOTS.length && numPaths < numNodes; i++) {
+            paths[numPaths] = ROOTS[i];
+            lastIndexPerRoot[i] = numPaths;
+            wideParentPerRoot[i] = numPaths;
+            numPaths++;
+        }
+        while (numPaths < numNodes) {
+            int root = selectRoot(random.nextInt(totalWeight));
+            int parent;
+            int selector = random.nextInt(100);
+            if (selector < 40 && depths[lastIndexPerRoot[root]] < MAX_DEPTH) {
+                // go deeper
+                parent = lastIndexPerRoot[root];
+            } else if (selector < 60) {
+                // make wide
+                parent = wideParentPerRoot[root];
+            } else {
+                // random existing node below the same root
+                parent = random.nextInt(numPaths);
+                if (!paths[parent].startsWith(ROOTS[root]) || depths[parent] >= MAX_DEPTH) {
+                    parent = wideParentPerRoot[root];
+                }
+            }
+            paths[numPaths] = paths[parent] + "/node" + numPaths;
+            depths[numPaths] = depths[parent] + 1;
+            lastIndexPerRoot[root] = numPaths;
+            numPaths++;
+        }
+        return paths;
+    }
+
+    private static int selectRoot(int weight) {
+        for (int i = 0; i < ROOT_WEIGHTS.length; i++) {
+            weight -= ROOT_WEIGHTS[i];
+            if (weight < 0) {
+                return i;
+            }
+        }
+        return ROOT_WEIGHTS.length - 1;
+    }
+
+    /**
+     * Generates document view nodes for the given paths.
+     * @param paths the node paths
+     * @param indexDefinitionRatio every n-th node is an {@code oak:QueryIndexDefinition} (with alternating valid and invalid definitions), 0 to not generate any index definitions
+     * @return the document view nodes with their node contexts
+     */
+    static List<DocViewNodeWithContext> generateDocViewNodes(String[] paths, int indexDefinitionRatio) {
+        List<DocViewNodeWithContext> nodes = new ArrayList<>(paths.length);
+        for (int i = 0; i < paths.length; i++) {
+            final String nodePath;
+            final List<DocViewProperty2> properties;
+            if (indexDefinitionRatio > 0 && i % indexDefinitionRatio == 0) {
+                // alternating between valid and invalid names
+                nodePath = "/oak:index/synthetic" + i + ((i / indexDefinitionRatio) % 2 == 0 ? "-1-custom-1" : "");
+                properties = Arrays.asList(
+                        new DocViewProperty2(NameConstants.JCR_PRIMARYTYPE, "oak:QueryIndexDefinition"),
+                        new DocViewProperty2(PN_TYPE, "lucene"),
+                        new DocViewProperty2(PN_COMPAT_VERSION, "2", PropertyType.LONG));
+            } else {
+                nodePath = paths[i];
+                properties = Arrays.asList(
+                        new DocViewProperty2(NameConstants.JCR_PRIMARYTYPE, "nt:unstructured"),
+                        new DocViewProperty2(PN_TITLE, "Title of node " + i),
+                        new DocViewProperty2(PN_TEXT, "<p>Some rich text for node " + i + "</p>"),
+                        new DocViewProperty2(PN_TAGS, Arrays.asList("synthetic:tag1", "synthetic:tag2")));
+            }
+            Name name = NameFactoryImpl.getInstance().create(Name.NS_DEFAULT_URI, Text.getName(nodePath));
+            NodeContext nodeContext = new NodeContextImpl(nodePath, Paths.get(Text.getRelativeParent(nodePath, 1).substring(1).replace(':', '_'), ".content.xml"), BASE_PATH);
+            nodes.add(new DocViewNodeWithContext(new DocViewNode2(name, properties), nodeContext));
+        }
+        return nodes;
+    }
+
+    /**
+     *
+     * @param numPaths the number of paths
+     * @return paths relative to the {@code META-INF} folder
+     */
+    static Path[] generateMetaInfPaths(int numPaths) {
+        Path[] paths = new Path[numPaths];
+        for (int i = 0; i < numPaths; i++) {
+            switch (i % 4) {
+                case 0:
+                    paths[i] = Paths.get("vault", "definition", "thumbnail" + i + ".png");
+                    break;
+                case 1:
+                    paths[i] = Paths.get("vault", "hooks", "hook" + i + ".jar");
+                    break;
+                case 2:
+                    paths[i] = Paths.get("vault", "config.xml");
+                    break;
+                default:
+                    paths[i] = Paths.get("maven", "repository", "artifact" + i + ".pom");
+                    break;
+            }
+        }
+        return paths;
+    }
+
+    static final class DocViewNodeWithContext {
+        final DocViewNode2 node;
+        final NodeContext nodeContext;
+
+        DocViewNodeWithContext(DocViewNode2 node, NodeContext nodeContext) {
+            this.node = node;
+            this.nodeContext = nodeContext;
+        }
+    }
+}
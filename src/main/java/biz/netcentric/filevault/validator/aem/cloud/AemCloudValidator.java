@@ -20,7 +20,10 @@ import java.util.Arrays;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.regex.Pattern;
 
 import javax.jcr.PropertyType;
@@ -33,18 +36,18 @@ import org.apache.jackrabbit.vault.packaging.PackageType;
 import org.apache.jackrabbit.vault.util.Constants;
 import org.apache.jackrabbit.vault.util.DocViewNode2;
 import org.apache.jackrabbit.vault.util.DocViewProperty2;
-import org.apache.jackrabbit.vault.validation.spi.DocumentViewXmlValidator;
-import org.apache.jackrabbit.vault.validation.spi.MetaInfPathValidator;
 import org.apache.jackrabbit.vault.validation.spi.NodeContext;
-import org.apache.jackrabbit.vault.validation.spi.NodePathValidator;
-import org.apache.jackrabbit.vault.validation.spi.PropertiesValidator;
 import org.apache.jackrabbit.vault.validation.spi.ValidationContext;
 import org.apache.jackrabbit.vault.validation.spi.ValidationMessage;
 import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-public class AemCloudValidator implements NodePathValidator, MetaInfPathValidator, DocumentViewXmlValidator, PropertiesValidator {
+/**
+ * All callbacks may be invoked concurrently for the same package (e.g. when validating entries of large packages in parallel),
+ * only {@link #done()} must be called after all other callbacks have returned.
+ */
+public class AemCloudValidator implements PackageValidator {
 
     static final String VIOLATION_MESSAGE_READONLY_MUTABLE_PATH = "Using mutable nodes in this repository location is only allowed in author-specific packages as it is not writable by the underlying service user on a publish instance. Consider to use repoinit scripts instead or move that content to another location. Further details at https://experienceleague.adobe.com/docs/experience-manager-learn/cloud-service/debugging/debugging-aem-as-a-cloud-service/build-and-deployment.html?lang=en#including-%2Fvar-in-content-package";
     static final String VIOLATION_MESSAGE_INSTALL_HOOK_IN_MUTABLE_PACKAGE = "Using install hooks in mutable content packages leads to deployment failures as the underlying service user on the publish does not have the right to execute those.";
@@ -54,7 +57,13 @@ public class AemCloudValidator implements NodePathValidator, MetaInfPathValidato
     static final String VIOLATION_MESSAGE_MUTABLE_NODES_AND_IMMUTABLE_NODES_IN_SAME_PACKAGE = "Mutable and immutable nodes must not be mixed in the same package. You must separate those into two packages and give them both a dedicated package type!";
     static final String VIOLATION_MESSAGE_NON_LUCENE_TYPE_INDEX_DEFINITION = "Only oak:QueryIndexDefinitions of type='lucene' are supported in AEMaaCS but found type='%s'. Compare with https://experienceleague.adobe.com/en/docs/experience-manager-cloud-service/content/operations/indexing#current-limitations";
     static final String VIOLATION_MESSAGE_INVALID_COMPAT_VERSION_IN_INDEX_DEFINITION = "The compatVersion property of an oak:QueryIndexDefinition must be set to the Long value '2' but found '%s'. Compare with https://experienceleague.adobe.com/en/docs/experience-manager-cloud-service/content/operations/indexing#current-limitations";
-    
+    static final String VIOLATION_MESSAGE_AGGREGATED_VIOLATIONS = "Found %d node(s) violating the following rule (first affected paths: %s): %s";
+    static final String RULE_ID_INSTALL_HOOK_IN_MUTABLE_PACKAGE = "installHookInMutablePackage";
+    static final String RULE_ID_MUTABLE_NODES_AND_IMMUTABLE_NODES_IN_SAME_PACKAGE = "mutableAndImmutableNodesInSamePackage";
+    static final String RULE_ID_NON_LUCENE_TYPE_INDEX_DEFINITION = "nonLuceneIndexDefinition";
+    static final String RULE_ID_INVALID_COMPAT_VERSION_IN_INDEX_DEFINITION = "invalidIndexDefinitionCompatVersion";
+    static final String RULE_ID_INVALID_INDEX_DEFINITION_NODE_NAME = "invalidIndexDefinitionNodeName";
+
     // this path is relative to META-INF
     private static final Path INSTALL_HOOK_PATH = Paths.get(Constants.VAULT_DIR, Constants.HOOKS_DIR);
     /**
@@ -62,134 +71,340 @@ public class AemCloudValidator implements NodePathValidator, MetaInfPathValidato
      */
     private static final Pattern INDEX_DEFINITION_NAME_PATTERN = Pattern.compile(".*-\\d++-custom-\\d++");
     
-    private static final Collection<String> IMMUTABLE_PATH_PREFIXES = Arrays.asList("/apps", "/libs", "/oak:index");
-    private static final Collection<String> WRITABLE_PATHS_BY_DISTRIBUTION_IMPORTER = Arrays.asList(
+    static final Collection<String> IMMUTABLE_PATH_PREFIXES = Arrays.asList("/apps", "/libs", "/oak:index");
+    static final Collection<String> WRITABLE_PATHS_BY_DISTRIBUTION_IMPORTER = Arrays.asList(
             "/content",     // access provided by system user content-writer-service and sling-distribution-importer
             "/etc",         // access provided by system user version-manager-service and sling-distribution-importer
             "/conf",        // access provided by system user version-manager-service and sling-distribution-importer
             "/home/users",  // access provided by system user user-administration-service
             "/home/groups"  // access provided by system user group-administration-service
             );
+    static final String LIBS_PATH_PREFIX = "/libs";
+    static final String INDEX_DEFINITION_PRIMARY_TYPE = "oak:QueryIndexDefinition";
+    /** The classifier for all the paths listed above */
+    static final PathClassifier DEFAULT_PATH_CLASSIFIER = new PathClassifier(
+            PathClassifier.mergeFlags(PathClassifier.toFlags(IMMUTABLE_PATH_PREFIXES, PathClassifier.IMMUTABLE),
+                    PathClassifier.toFlags(WRITABLE_PATHS_BY_DISTRIBUTION_IMPORTER, PathClassifier.WRITABLE_BY_DISTRIBUTION_IMPORTER)),
+            PathClassifier.toFlags(Collections.singleton(LIBS_PATH_PREFIX), PathClassifier.LIBS));
 
     private final @NotNull ValidationMessageSeverity defaultSeverity;
-    private final ValidationContext containerValidationContext;
+    /** {@code true} in case this package has been included in an "author" run mode specific folder (in any of its containers) */
+    private final boolean isContainedInAuthorOnlyPackage;
     private final PackageType packageType;
-    private boolean hasMutableNodes;
+    private final @NotNull PathClassifier pathClassifier;
+    // the flags are only ever set to true, therefore concurrent writes don't need to be atomic but only visible
+    private volatile boolean hasMutableNodes;
     private final boolean allowReadOnlyMutablePaths;
     private final boolean allowLibsNode;
     private final boolean allowHooksInMutableContent;
-    private boolean hasInstallHooks;
-    private boolean hasImmutableNodes;
+    private volatile boolean hasInstallHooks;
+    private volatile boolean hasImmutableNodes;
 
     private static final int MAX_NUM_VIOLATIONS_PER_TYPE = 5;
+    private static final String INSTALL_FOLDER_RUN_MODE_PREFIX = "install.";
+    private static final String RUN_MODE_AUTHOR = "author";
     private static final Name PN_TYPE = NameFactoryImpl.getInstance().create(Name.NS_DEFAULT_URI, "type");
     private static final Name PN_COMPAT_VERSION = NameFactoryImpl.getInstance().create(Name.NS_DEFAULT_URI, "compatVersion");
-    private int numVarNodeViolations = 0;
-    private int numLibNodeViolations = 0;
-    private int numMutableNodeViolations = 0;
+    /** the number of emitted messages per {@link NodePathViolationType} (only used if violations are not aggregated) */
+    private final AtomicIntegerArray numViolationsPerType = new AtomicIntegerArray(NodePathViolationType.values().length);
+    /** {@code null} in case violations should not be aggregated */
+    private final @Nullable ViolationAggregator violationAggregator;
+    /** {@code null} in case no user-defined path rules are configured */
+    private final @Nullable PathRules pathRules;
+    /** {@code true} for each {@link NodePathViolationType} (by ordinal) which may be reported with the given settings and package type */
+    private final boolean[] isViolationTypeEnabled;
+    private boolean isEarlySaturationEnabled;
+    /**
+     * {@code true} once no further call of {@link #validate(String)} can change the outcome of the validation,
+     * i.e. all enabled violation types reached their limit and all flags evaluated in {@link #done()} are set
+     */
+    private volatile boolean isSaturated;
+    /** {@code null} in case metrics are disabled */
+    private @Nullable ValidatorMetrics metrics;
+
+    /** Violations detected on node paths, which may occur for a huge number of nodes per package */
+    enum NodePathViolationType {
+        READONLY_MUTABLE_PATH("readOnlyMutablePath", VIOLATION_MESSAGE_READONLY_MUTABLE_PATH),
+        MUTABLE_NODES_IN_MIXED_PACKAGE("mutableNodesInMixedPackage", VIOLATION_MESSAGE_MUTABLE_NODES_IN_MIXED_PACKAGE),
+        LIBS_NODES("libsNodes", VIOLATION_MESSAGE_LIBS_NODES);
+
+        private final @NotNull String ruleId;
+        private final @NotNull String message;
+
+        NodePathViolationType(@NotNull String ruleId, @NotNull String message) {
+            this.ruleId = ruleId;
+            this.message = message;
+        }
+
+        @NotNull String getRuleId() {
+            return ruleId;
+        }
+
+        @NotNull String getMessage() {
+            return message;
+        }
+    }
 
     public AemCloudValidator(boolean allowReadOnlyMutablePaths, boolean allowLibsNode, boolean allowHooksInMutableContent, @Nullable PackageType packageType,
                              @Nullable ValidationContext containerValidationContext, @NotNull ValidationMessageSeverity defaultSeverity) {
+        this(allowReadOnlyMutablePaths, allowLibsNode, allowHooksInMutableContent, packageType, containerValidationContext, defaultSeverity, DEFAULT_PATH_CLASSIFIER, null);
+    }
+
+    /**
+     * 
+     * @param violationAggregator the aggregator to use for violations of type {@link NodePathViolationType}, {@code null} to emit at most {@link #MAX_NUM_VIOLATIONS_PER_TYPE} messages per type instead
+     */
+    AemCloudValidator(boolean allowReadOnlyMutablePaths, boolean allowLibsNode, boolean allowHooksInMutableContent, @Nullable PackageType packageType,
+                             @Nullable ValidationContext containerValidationContext, @NotNull ValidationMessageSeverity defaultSeverity, @NotNull PathClassifier pathClassifier,
+                             @Nullable ViolationAggregator violationAggregator) {
+        this(allowReadOnlyMutablePaths, allowLibsNode, allowHooksInMutableContent, packageType, containerValidationContext, defaultSeverity, pathClassifier, violationAggregator, null);
+    }
+
+    /**
+     * 
+     * @param violationAggregator the aggregator to use for violations of type {@link NodePathViolationType}, {@code null} to emit at most {@link #MAX_NUM_VIOLATIONS_PER_TYPE} messages per type instead
+     * @param pathRules the user-defined path rules whose allow rules exempt paths from the check for read-only mutable paths, may be {@code null}
+     */
+    AemCloudValidator(boolean allowReadOnlyMutablePaths, boolean allowLibsNode, boolean allowHooksInMutableContent, @Nullable PackageType packageType,
+                             @Nullable ValidationContext containerValidationContext, @NotNull ValidationMessageSeverity defaultSeverity, @NotNull PathClassifier pathClassifier,
+                             @Nullable ViolationAggregator violationAggregator, @Nullable PathRules pathRules) {
         super();
         this.allowReadOnlyMutablePaths = allowReadOnlyMutablePaths;
         this.allowLibsNode = allowLibsNode;
         this.allowHooksInMutableContent = allowHooksInMutableContent;
         this.packageType = packageType;
-        this.containerValidationContext = containerValidationContext;
+        // the containers never change, therefore evaluate the run modes only once
+        this.isContainedInAuthorOnlyPackage = getInstallationRunModes(containerValidationContext).contains(RUN_MODE_AUTHOR);
         this.defaultSeverity = defaultSeverity;
+        this.pathClassifier = pathClassifier;
+        this.violationAggregator = violationAggregator;
+        this.pathRules = pathRules;
         this.hasMutableNodes = false;
         this.hasImmutableNodes = false;
         this.hasInstallHooks = false;
+        this.isViolationTypeEnabled = new boolean[NodePathViolationType.values().length];
+        isViolationTypeEnabled[NodePathViolationType.READONLY_MUTABLE_PATH.ordinal()] = !allowReadOnlyMutablePaths && !isContainedInAuthorOnlyPackage;
+        isViolationTypeEnabled[NodePathViolationType.MUTABLE_NODES_IN_MIXED_PACKAGE.ordinal()] = PackageType.MIXED.equals(packageType);
+        isViolationTypeEnabled[NodePathViolationType.LIBS_NODES.ordinal()] = !allowLibsNode;
+        this.isEarlySaturationEnabled = true;
+        updateSaturation();
+    }
+
+    /**
+     * Only to be called right after construction (e.g. to compare results and performance in tests and benchmarks).
+     * @param isEarlySaturationEnabled {@code false} to classify all node paths even if that cannot change the outcome anymore
+     */
+    void setEarlySaturationEnabled(boolean isEarlySaturationEnabled) {
+        this.isEarlySaturationEnabled = isEarlySaturationEnabled;
+        this.isSaturated = false;
+        updateSaturation();
+    }
+
+    /**
+     * Only to be called right after construction. Records the number of mutable and immutable nodes in the given metrics.
+     * Disables early saturation, as otherwise the nodes validated after saturation would not be classified.
+     * @param metrics the metrics of the package
+     */
+    void setMetrics(@NotNull ValidatorMetrics metrics) {
+        this.metrics = metrics;
+        setEarlySaturationEnabled(false);
+    }
+
+    /**
+     * 
+     * @return {@code true} in case {@link #validate(String)} is a no-op from now on, because its outcome is already final
+     */
+    boolean isSaturated() {
+        return isSaturated;
+    }
+
+    /**
+     * Sets {@link #isSaturated} once the outcome of all node path checks is final.
+     * Must be called whenever one of the conditions evaluated here changes, which happens only a few times per package.
+     * This is never the case with aggregated violations, as those count all nodes.
+     */
+    private void updateSaturation() {
+        if (!isEarlySaturationEnabled || violationAggregator != null) {
+            return;
+        }
+        // hasMutableNodes is evaluated in done() for install hooks and mixed content, hasImmutableNodes only for mixed content
+        if (!hasMutableNodes && (packageType == null || (PackageType.CONTENT.equals(packageType) && !allowHooksInMutableContent))) {
+            return;
+        }
+        if (!hasImmutableNodes && packageType == null) {
+            return;
+        }
+        for (NodePathViolationType type : NodePathViolationType.values()) {
+            if (isViolationTypeEnabled[type.ordinal()] && numViolationsPerType.get(type.ordinal()) < MAX_NUM_VIOLATIONS_PER_TYPE) {
+                return;
+            }
+        }
+        isSaturated = true;
     }
 
     @Override
     public Collection<ValidationMessage> validate(@NotNull String path) {
-        Collection<ValidationMessage> messages = new ArrayList<>();
+        if (isSaturated) {
+            return Collections.emptyList();
+        }
+        // only allocated in case of violations, as most nodes don't emit any message
+        Collection<ValidationMessage> messages = null;
+        // classify once, all checks below only evaluate the resulting flags
+        int pathFlags = pathClassifier.classify(path);
         // skip root node for mutable/immutable path classification
         if (!"/".equals(path)) {
-            if (isMutablePath(path)) {
-                hasMutableNodes = true;
-                if (numVarNodeViolations < MAX_NUM_VIOLATIONS_PER_TYPE && !isPathWritableByDistributionJournalImporter(path)) {
-                    // check if package itself is only used on author
-                    if (!allowReadOnlyMutablePaths && !isContainedInAuthorOnlyPackage(containerValidationContext)) {
-                        // only emit once per package
-                        messages.add(new ValidationMessage(defaultSeverity, VIOLATION_MESSAGE_READONLY_MUTABLE_PATH));
-                        numVarNodeViolations++;
-                    }
+            if (PathClassifier.isMutable(pathFlags)) {
+                if (metrics != null) {
+                    metrics.mutableNodes.increment();
+                }
+                // only write once to prevent contention on the shared field
+                if (!hasMutableNodes) {
+                    hasMutableNodes = true;
+                    updateSaturation();
                 }
-                if (numMutableNodeViolations < MAX_NUM_VIOLATIONS_PER_TYPE && PackageType.MIXED.equals(packageType)) {
-                    messages.add(new ValidationMessage(defaultSeverity, VIOLATION_MESSAGE_MUTABLE_NODES_IN_MIXED_PACKAGE));
-                    numMutableNodeViolations++;
+                // check if package itself is only used on author
+                if (!PathClassifier.isWritableByDistributionImporter(pathFlags) && !allowReadOnlyMutablePaths && !isContainedInAuthorOnlyPackage
+                        && (pathRules == null || !pathRules.isAllowed(path, packageType))) {
+                    messages = reportNodePathViolation(messages, NodePathViolationType.READONLY_MUTABLE_PATH, path);
+                }
+                if (PackageType.MIXED.equals(packageType)) {
+                    messages = reportNodePathViolation(messages, NodePathViolationType.MUTABLE_NODES_IN_MIXED_PACKAGE, path);
                 }
             } else {
-                hasImmutableNodes = true;
+                if (metrics != null) {
+                    metrics.immutableNodes.increment();
+                }
+                if (!hasImmutableNodes) {
+                    hasImmutableNodes = true;
+                    updateSaturation();
+                }
             }
         }
-        if (numLibNodeViolations < MAX_NUM_VIOLATIONS_PER_TYPE && !allowLibsNode && path.startsWith("/libs")) {
-            messages.add(new ValidationMessage(defaultSeverity, VIOLATION_MESSAGE_LIBS_NODES));
-            numLibNodeViolations++;
+        if (!allowLibsNode && PathClassifier.isLibs(pathFlags)) {
+            messages = reportNodePathViolation(messages, NodePathViolationType.LIBS_NODES, path);
+        }
+        return messages != null ? messages : Collections.emptyList();
+    }
+
+    /**
+     * Either emits a message for the given violation (at most {@link #MAX_NUM_VIOLATIONS_PER_TYPE} times per type) or records it in the aggregator (if aggregation is enabled).
+     * @param messages the messages collection, may be {@code null}
+     * @param type the violation type
+     * @param path the node path violating
+     * @return the messages collection (potentially newly created)
+     */
+    private @Nullable Collection<ValidationMessage> reportNodePathViolation(@Nullable Collection<ValidationMessage> messages, @NotNull NodePathViolationType type, @NotNull String path) {
+        if (violationAggregator != null) {
+            // summary is emitted in done()
+            violationAggregator.record(type.ordinal(), path);
+        } else if (tryIncrementNumViolations(type)) {
+            messages = addMessage(messages, new RuleValidationMessage(type.getRuleId(), defaultSeverity, type.getMessage()));
         }
         return messages;
     }
 
-    static boolean isMutablePath(String path) {
-        for (String immutablePathPrefix : IMMUTABLE_PATH_PREFIXES) {
-            if (path.startsWith(immutablePathPrefix+"/") || path.equals(immutablePathPrefix)) {
+    /**
+     * Increments the number of emitted messages for the given type unless {@link #MAX_NUM_VIOLATIONS_PER_TYPE} has been reached.
+     * The limit is exact even for concurrent callers.
+     * @param type the violation type
+     * @return {@code true} in case the counter has been incremented (i.e. the message should be emitted), otherwise {@code false}
+     */
+    private boolean tryIncrementNumViolations(@NotNull NodePathViolationType type) {
+        int index = type.ordinal();
+        int numViolations;
+        do {
+            numViolations = numViolationsPerType.get(index);
+            if (numViolations >= MAX_NUM_VIOLATIONS_PER_TYPE) {
                 return false;
             }
+        } while (!numViolationsPerType.compareAndSet(index, numViolations, numViolations + 1));
+        if (numViolations + 1 == MAX_NUM_VIOLATIONS_PER_TYPE) {
+            updateSaturation();
         }
         return true;
     }
 
+    /**
+     * 
+     * @param messages the messages collection, may be {@code null}
+     * @param message the message to add
+     * @return the given messages collection with the given message added or a newly created collection containing only the given message in case the given collection was {@code null}
+     */
+    static @NotNull Collection<ValidationMessage> addMessage(@Nullable Collection<ValidationMessage> messages, @NotNull ValidationMessage message) {
+        if (messages == null) {
+            messages = new ArrayList<>(2);
+        }
+        messages.add(message);
+        return messages;
+    }
+
+    static boolean isMutablePath(String path) {
+        return PathClassifier.isMutable(DEFAULT_PATH_CLASSIFIER.classify(path));
+    }
+
     /**
      * 
      * @return {@code true} in case the given mutable path is writable by the service user used by the Content Distribution Journal Importer used on AEMaaCS publish
      */
     static boolean isPathWritableByDistributionJournalImporter(String path) {
-        for (String writablePath : WRITABLE_PATHS_BY_DISTRIBUTION_IMPORTER) {
-            if (path.startsWith(writablePath + "/") || path.equals(writablePath)) {
-                return true;
-            }
-        }
-        return false;
+        return PathClassifier.isWritableByDistributionImporter(DEFAULT_PATH_CLASSIFIER.classify(path));
     }
 
     /** @param containerValidationContext the container validation context of the package to be validated.
-     * @return {@code true} in case this package has been included in a "author" run mode specific folder, otherwise {@code false} */
-    private boolean isContainedInAuthorOnlyPackage(ValidationContext containerValidationContext) {
-        if (containerValidationContext == null) {
-            return false;
-        } else {
-            // assume that run mode specific folder
-            if (isPackagePathInstalledConditionally("author", containerValidationContext.getPackageRootPath())) {
-                return true;
-            } else {
-                return isContainedInAuthorOnlyPackage(containerValidationContext.getContainerValidationContext());
-            }
+     * @return the run modes which are required to install this package (derived from the "install.&lt;runmode&gt;" folders in which this package or any of its containers has been included),
+     *  the empty set in case the package is installed unconditionally */
+    static @NotNull Set<String> getInstallationRunModes(@Nullable ValidationContext containerValidationContext) {
+        Set<String> runModes = new HashSet<>();
+        for (ValidationContext context = containerValidationContext; context != null; context = context.getContainerValidationContext()) {
+            runModes.addAll(getRunModesFromPackagePath(context.getPackageRootPath()));
         }
+        return runModes;
     }
 
     static boolean isPackagePathInstalledConditionally(String runMode, Path packageRootPath) {
+        return getRunModesFromPackagePath(packageRootPath).contains(runMode);
+    }
+
+    /**
+     * 
+     * @param packageRootPath the path of the (sub) package
+     * @return all run modes from the run mode specific folders in the given path (a package installed in folder "install.author.dev" is only installed on instances having both run modes "author" and "dev")
+     */
+    static @NotNull Set<String> getRunModesFromPackagePath(@NotNull Path packageRootPath) {
         // https://experienceleague.adobe.com/docs/experience-manager-cloud-service/implementing/developing/aem-project-content-package-structure.html?lang=en#embeddeds
+        Set<String> runModes = Collections.emptySet();
         for (int i = packageRootPath.getNameCount() - 1; i-- > 0;) {
-            if (packageRootPath.getName(i).toString().equals("install." + runMode)) {
-                return true;
+            String folderName = packageRootPath.getName(i).toString();
+            if (folderName.startsWith(INSTALL_FOLDER_RUN_MODE_PREFIX)) {
+                if (runModes.isEmpty()) {
+                    runModes = new HashSet<>();
+                }
+                runModes.addAll(Arrays.asList(folderName.substring(INSTALL_FOLDER_RUN_MODE_PREFIX.length()).split("\\.")));
             }
         }
-        return false;
+        return runModes;
     }
 
     @Override
     public @Nullable Collection<ValidationMessage> done() {
-        Collection<ValidationMessage> messages = new ArrayList<>();
+        Collection<ValidationMessage> messages = null;
+        if (violationAggregator != null) {
+            for (NodePathViolationType type : NodePathViolationType.values()) {
+                long count = violationAggregator.getCount(type.ordinal());
+                if (count > 0) {
+                    messages = addMessage(messages, new RuleValidationMessage(type.getRuleId(), defaultSeverity,
+                            String.format(VIOLATION_MESSAGE_AGGREGATED_VIOLATIONS, count, String.join(", ", violationAggregator.getSamples(type.ordinal())), type.getMessage())));
+                }
+            }
+        }
         if (hasInstallHooks && hasMutableNodes && !allowHooksInMutableContent) {
-            messages.add(new ValidationMessage(defaultSeverity, VIOLATION_MESSAGE_INSTALL_HOOK_IN_MUTABLE_PACKAGE));
+            messages = addMessage(messages, new RuleValidationMessage(RULE_ID_INSTALL_HOOK_IN_MUTABLE_PACKAGE, defaultSeverity, VIOLATION_MESSAGE_INSTALL_HOOK_IN_MUTABLE_PACKAGE));
         }
         // for non-set package types usually the package type is determined by cp2fm, but it will be MIXED in case both mutable and immutable nodes are contained
         if (packageType == null && hasMutableNodes && hasImmutableNodes) {
-            messages.add(new ValidationMessage(defaultSeverity, VIOLATION_MESSAGE_MUTABLE_NODES_AND_IMMUTABLE_NODES_IN_SAME_PACKAGE));
+            messages = addMessage(messages, new RuleValidationMessage(RULE_ID_MUTABLE_NODES_AND_IMMUTABLE_NODES_IN_SAME_PACKAGE, defaultSeverity, VIOLATION_MESSAGE_MUTABLE_NODES_AND_IMMUTABLE_NODES_IN_SAME_PACKAGE));
         }
-        return messages;
+        return messages != null ? messages : Collections.emptyList();
     }
 
     @Override
@@ -200,7 +415,7 @@ public class AemCloudValidator implements NodePathValidator, MetaInfPathValidato
             if (PackageType.CONTENT.equals(packageType)) {
                 hasInstallHooks = true;
                 if (!allowHooksInMutableContent) {
-                    return Collections.singleton(new ValidationMessage(defaultSeverity, VIOLATION_MESSAGE_INSTALL_HOOK_IN_MUTABLE_PACKAGE));
+                    return Collections.singleton(new RuleValidationMessage(RULE_ID_INSTALL_HOOK_IN_MUTABLE_PACKAGE, defaultSeverity, VIOLATION_MESSAGE_INSTALL_HOOK_IN_MUTABLE_PACKAGE));
                 }
             } else if (packageType == null) {
                 // defer checking until one is sure that the package has mutable content
@@ -212,23 +427,23 @@ public class AemCloudValidator implements NodePathValidator, MetaInfPathValidato
 
     @Override
     public @Nullable Collection<ValidationMessage> validate(@NotNull DocViewNode2 node, @NotNull NodeContext nodeContext, boolean isRoot) {
-        if ("oak:QueryIndexDefinition".equals(node.getPrimaryType().orElse(""))) {
-            Collection<ValidationMessage> messages = new ArrayList<>();
+        if (INDEX_DEFINITION_PRIMARY_TYPE.equals(node.getPrimaryType().orElse(""))) {
+            Collection<ValidationMessage> messages = null;
             String indexType = node.getPropertyValue(PN_TYPE).orElse("");
             if (!"lucene".equals(indexType)) {
-                messages.add(new ValidationMessage(defaultSeverity,
+                messages = addMessage(messages, new RuleValidationMessage(RULE_ID_NON_LUCENE_TYPE_INDEX_DEFINITION, defaultSeverity,
                         String.format(VIOLATION_MESSAGE_NON_LUCENE_TYPE_INDEX_DEFINITION, indexType)));
             } else {
                 Optional<DocViewProperty2> compatVersionProperty = node.getProperty(PN_COMPAT_VERSION);
                 if (!compatVersionProperty.isPresent() || compatVersionProperty.get().getType() != PropertyType.LONG || !compatVersionProperty.get().getStringValue().orElse("").equals("2")) {
-                    messages.add(new ValidationMessage(defaultSeverity,
+                    messages = addMessage(messages, new RuleValidationMessage(RULE_ID_INVALID_COMPAT_VERSION_IN_INDEX_DEFINITION, defaultSeverity,
                             String.format(VIOLATION_MESSAGE_INVALID_COMPAT_VERSION_IN_INDEX_DEFINITION, compatVersionProperty.map(p -> p.formatValue()).orElse("not set"))));
                 }
             }
             // check node name (jcr qualified name as contained in the path)
             String qualifiedName = Text.getName(nodeContext.getNodePath());
             if (!INDEX_DEFINITION_NAME_PATTERN.matcher(qualifiedName).matches()) {
-                messages.add(new ValidationMessage(defaultSeverity,
+                messages = addMessage(messages, new RuleValidationMessage(RULE_ID_INVALID_INDEX_DEFINITION_NODE_NAME, defaultSeverity,
                         String.format(VIOLATION_MESSAGE_INVALID_INDEX_DEFINITION_NODE_NAME, qualifiedName)));
             }
             return messages;
@@ -240,7 +455,7 @@ public class AemCloudValidator implements NodePathValidator, MetaInfPathValidato
     public @Nullable Collection<ValidationMessage> validate(@NotNull PackageProperties properties) {
         if (!properties.getExternalHooks().isEmpty()) {
             if (PackageType.CONTENT.equals(packageType)) {
-                return Collections.singleton(new ValidationMessage(defaultSeverity, VIOLATION_MESSAGE_INSTALL_HOOK_IN_MUTABLE_PACKAGE));
+                return Collections.singleton(new RuleValidationMessage(RULE_ID_INSTALL_HOOK_IN_MUTABLE_PACKAGE, defaultSeverity, VIOLATION_MESSAGE_INSTALL_HOOK_IN_MUTABLE_PACKAGE));
             }
         }
         return null;
@@ -13,11 +13,27 @@ package biz.netcentric.filevault.validator.aem.cloud;
  * #L%
  */
 
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.jackrabbit.vault.packaging.PackageId;
 import org.apache.jackrabbit.vault.validation.spi.ValidationContext;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessage;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
 import org.apache.jackrabbit.vault.validation.spi.Validator;
 import org.apache.jackrabbit.vault.validation.spi.ValidatorFactory;
 import org.apache.jackrabbit.vault.validation.spi.ValidatorSettings;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.kohsuke.MetaInfServices;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,9 +46,40 @@ public class AemCloudValidatorFactory implements ValidatorFactory {
     private static final String OPTION_ALLOW_READONLY_MUTABLE_PATHS = "allowReadOnlyMutablePaths";
     private static final String OPTION_ALLOW_LIBS_NODE = "allowLibsNode";
     private static final String OPTION_ALLOW_HOOKS_IN_MUTABLE_CONTENT = "allowHooksInMutableContent";
+    private static final String OPTION_AGGREGATE_VIOLATIONS = "aggregateViolations";
+    private static final String OPTION_MAX_VIOLATION_SAMPLES = "maxViolationSamples";
+    private static final int DEFAULT_MAX_VIOLATION_SAMPLES = 5;
+    private static final String OPTION_RESULT_CACHE_DIRECTORY = "resultCacheDirectory";
+    private static final String OPTION_RESULT_CACHE_MAX_ENTRIES = "resultCacheMaxEntries";
+    private static final int DEFAULT_RESULT_CACHE_MAX_ENTRIES = 1000;
+    private static final String OPTION_METRICS_DIRECTORY = "metricsDirectory";
+    private static final String OPTION_ANALYZE_INDEX_DEFINITION_COSTS = "analyzeIndexDefinitionCosts";
+    private static final String OPTION_INDEX_DEFINITION_COST_SEVERITIES = "indexDefinitionCostSeverities";
+    private static final String OPTION_MAX_CHILD_NODES = "maxChildNodes";
+    private static final String OPTION_MAX_CHILD_NODES_SEVERITY = "maxChildNodesSeverity";
+    private static final String OPTION_DETECT_DUPLICATE_INDEX_DEFINITIONS = "detectDuplicateIndexDefinitions";
+    private static final String OPTION_DUPLICATE_INDEX_DEFINITIONS_SEVERITY = "duplicateIndexDefinitionsSeverity";
+    private static final String OPTION_MAX_MUTABLE_NODES = "maxMutableNodes";
+    private static final String OPTION_MAX_MUTABLE_PROPERTIES = "maxMutableProperties";
+    private static final String OPTION_MAX_MUTABLE_BYTES = "maxMutableBytes";
+    private static final String OPTION_MUTABLE_CONTENT_BUDGET_SEVERITY = "mutableContentBudgetSeverity";
+    private static final String OPTION_MAX_PROPERTY_VALUE_SIZE = "maxPropertyValueSize";
+    private static final String OPTION_MAX_PROPERTY_VALUES = "maxPropertyValues";
+    private static final String OPTION_OVERSIZED_PROPERTIES_SEVERITY = "oversizedPropertiesSeverity";
+    private static final String OPTION_MAX_PATH_DEPTH = "maxPathDepth";
+    private static final String OPTION_MAX_PATH_LENGTH = "maxPathLength";
+    private static final String OPTION_PATH_DEPTH_SEVERITY = "pathDepthSeverity";
+    private static final String OPTION_REPORT_PATH_STATISTICS = "reportPathStatistics";
+    private static final String OPTION_REPORT_FILE = "reportFile";
+    private static final String OPTION_REPORT_FORMAT = "reportFormat";
+    /** the context attribute containing the result cache key of the package (used to derive the keys of its sub packages) */
+    static final String ATTRIBUTE_RESULT_CACHE_KEY = "netcentric-aem-cloud.resultCacheKey";
 
     private static final Logger LOGGER = LoggerFactory.getLogger(AemCloudValidatorFactory.class);
 
+    /** the most recently compiled path rules (usually all packages are validated with the same options) */
+    private volatile @Nullable CompiledPathRules compiledPathRules;
+
     @Override
     public Validator createValidator(@NotNull ValidationContext context, @NotNull ValidatorSettings settings) {
         boolean allowReadOnlyMutablePaths = false;
@@ -51,7 +98,250 @@ public class AemCloudValidatorFactory implements ValidatorFactory {
         if (settings.getOptions().containsKey(OPTION_ALLOW_HOOKS_IN_MUTABLE_CONTENT)) {
             allowHooksInMutableContent = Boolean.parseBoolean(settings.getOptions().get(OPTION_ALLOW_HOOKS_IN_MUTABLE_CONTENT));
         }
-        return new AemCloudValidator(allowReadOnlyMutablePaths, allowLibsNode, allowHooksInMutableContent, context.getProperties().getPackageType(), context.getContainerValidationContext(), settings.getDefaultSeverity());
+        ViolationAggregator violationAggregator = null;
+        if (Boolean.parseBoolean(settings.getOptions().get(OPTION_AGGREGATE_VIOLATIONS))) {
+            int maxViolationSamples = getIntegerOption(settings, OPTION_MAX_VIOLATION_SAMPLES, DEFAULT_MAX_VIOLATION_SAMPLES);
+            violationAggregator = new ViolationAggregator(AemCloudValidator.NodePathViolationType.values().length, maxViolationSamples);
+        }
+        PathRules pathRules = getPathRules(settings);
+        String resultCacheDirectory = settings.getOptions().get(OPTION_RESULT_CACHE_DIRECTORY);
+        ValidationResultCache resultCache = null;
+        String resultCacheKey = null;
+        if (resultCacheDirectory != null && !resultCacheDirectory.isEmpty()) {
+            resultCache = ValidationResultCache.getInstance(Paths.get(resultCacheDirectory), getIntegerOption(settings, OPTION_RESULT_CACHE_MAX_ENTRIES, DEFAULT_RESULT_CACHE_MAX_ENTRIES));
+            resultCacheKey = getResultCacheKey(context, settings);
+            if (resultCacheKey != null) {
+                context.setAttribute(ATTRIBUTE_RESULT_CACHE_KEY, resultCacheKey);
+                List<ValidationMessage> cachedMessages = resultCache.get(resultCacheKey);
+                if (cachedMessages != null) {
+                    LOGGER.debug("Replaying {} cached validation message(s) for package {}", cachedMessages.size(), context.getPackageRootPath());
+                    ReportWriter reportWriter = acquireReportWriter(settings);
+                    if (reportWriter != null) {
+                        try {
+                            PackageId packageId = context.getProperties().getId();
+                            for (ValidationMessage message : cachedMessages) {
+                                ReportingValidator.report(reportWriter, message, packageId != null ? packageId.toString() : null, context.getPackageRootPath(), null, null);
+                            }
+                            reportWriter.flush();
+                        } finally {
+                            reportWriter.release();
+                        }
+                    }
+                    return new CachingValidator.ReplayingValidator(cachedMessages);
+                }
+            }
+        }
+        AemCloudValidator aemCloudValidator = new AemCloudValidator(allowReadOnlyMutablePaths, allowLibsNode, allowHooksInMutableContent, context.getProperties().getPackageType(), context.getContainerValidationContext(), settings.getDefaultSeverity(), AemCloudValidator.DEFAULT_PATH_CLASSIFIER, violationAggregator, pathRules);
+        List<Validator> validators = createOptionalValidators(context, settings);
+        if (pathRules != null) {
+            validators.add(new PathRuleValidator(pathRules, context.getProperties().getPackageType()));
+        }
+        validators.add(0, aemCloudValidator);
+        PackageValidator validator = aemCloudValidator;
+        String metricsDirectory = settings.getOptions().get(OPTION_METRICS_DIRECTORY);
+        if (metricsDirectory != null && !metricsDirectory.isEmpty()) {
+            InstrumentedValidator instrumentedValidator = new InstrumentedValidator(validators, context, Paths.get(metricsDirectory));
+            aemCloudValidator.setMetrics(instrumentedValidator.getMetrics());
+            validator = instrumentedValidator;
+        } else if (validators.size() > 1) {
+            validator = new CompositeValidator(validators);
+        }
+        // acquired last, as it is only released by the validator's done()
+        ReportWriter reportWriter = acquireReportWriter(settings);
+        if (reportWriter != null) {
+            validator = new ReportingValidator(validator, reportWriter, context);
+        }
+        if (resultCache != null && resultCacheKey != null) {
+            return new CachingValidator(validator, resultCache, resultCacheKey);
+        }
+        return validator;
+    }
+
+    /**
+     *
+     * @param settings the validator settings
+     * @return the acquired writer for the configured report file (must be released via {@link ReportWriter#release()}) or {@code null} in case no report file is configured
+     */
+    static @Nullable ReportWriter acquireReportWriter(@NotNull ValidatorSettings settings) {
+        String reportFile = settings.getOptions().get(OPTION_REPORT_FILE);
+        if (reportFile == null || reportFile.isEmpty()) {
+            return null;
+        }
+        String reportFormat = settings.getOptions().get(OPTION_REPORT_FORMAT);
+        return ReportWriter.acquire(Paths.get(reportFile), reportFormat != null ? ReportWriter.Format.fromId(reportFormat) : ReportWriter.Format.JSON_LINES);
+    }
+
+    /**
+     * The path rules are only compiled once per factory (as long as the options do not change) because compiling the automaton is expensive.
+     * @param settings the validator settings
+     * @return the path rules or {@code null} in case none are configured
+     */
+    @Nullable PathRules getPathRules(@NotNull ValidatorSettings settings) {
+        Map<String, String> pathRuleOptions = new TreeMap<>();
+        settings.getOptions().forEach((option, value) -> {
+            if (option.startsWith(PathRules.OPTION_PREFIX)) {
+                pathRuleOptions.put(option, value);
+            }
+        });
+        if (pathRuleOptions.isEmpty()) {
+            return null;
+        }
+        CompiledPathRules compiled = compiledPathRules;
+        if (compiled == null || !compiled.options.equals(pathRuleOptions) || compiled.defaultSeverity != settings.getDefaultSeverity()) {
+            compiled = new CompiledPathRules(pathRuleOptions, settings.getDefaultSeverity(), PathRules.fromOptions(pathRuleOptions, settings.getDefaultSeverity()));
+            compiledPathRules = compiled;
+        }
+        return compiled.pathRules;
+    }
+
+    /**
+     * Only packages given as file (and their sub packages) are cached, as for all other packages it is not possible to reliably detect modifications.
+     * Nothing is cached in case the classes of a snapshot version of this validator cannot be hashed, as they may change without changing the version.
+     * @param context the validation context
+     * @param settings the validator settings
+     * @return the result cache key or {@code null} in case the results for the given package should not be cached
+     */
+    static @Nullable String getResultCacheKey(@NotNull ValidationContext context, @NotNull ValidatorSettings settings) {
+        if (context.isIncremental() || ValidationResultCache.ValidatorVersion.CACHE_VERSION == null) {
+            return null;
+        }
+        ValidationContext containerContext = context.getContainerValidationContext();
+        if (containerContext != null) {
+            Object containerKey = containerContext.getAttribute(ATTRIBUTE_RESULT_CACHE_KEY);
+            if (containerKey instanceof String) {
+                return ValidationResultCache.createSubPackageKey((String) containerKey, context.getPackageRootPath(), settings);
+            }
+            return null;
+        }
+        if (Files.isRegularFile(context.getPackageRootPath())) {
+            return ValidationResultCache.createKey(context.getPackageRootPath(), settings);
+        }
+        return null;
+    }
+
+    /**
+     *
+     * @param context the validation context
+     * @param settings the validator settings
+     * @return the validators for all enabled optional checks (may be empty, in which case no additional overhead is introduced)
+     */
+    private static @NotNull List<Validator> createOptionalValidators(@NotNull ValidationContext context, @NotNull ValidatorSettings settings) {
+        List<Validator> validators = new ArrayList<>();
+        if (Boolean.parseBoolean(settings.getOptions().get(OPTION_ANALYZE_INDEX_DEFINITION_COSTS))) {
+            Map<IndexDefinitionCostValidator.Rule, ValidationMessageSeverity> severities = new EnumMap<>(IndexDefinitionCostValidator.Rule.class);
+            for (IndexDefinitionCostValidator.Rule rule : IndexDefinitionCostValidator.Rule.values()) {
+                severities.put(rule, ValidationMessageSeverity.WARN);
+            }
+            getSeveritiesOption(settings, OPTION_INDEX_DEFINITION_COST_SEVERITIES)
+                    .forEach((ruleId, severity) -> severities.put(IndexDefinitionCostValidator.Rule.fromId(ruleId), severity));
+            validators.add(new IndexDefinitionCostValidator(severities));
+        }
+        int maxChildNodes = getIntegerOption(settings, OPTION_MAX_CHILD_NODES, 0);
+        if (maxChildNodes > 0) {
+            validators.add(new FlatHierarchyValidator(maxChildNodes, getSeverityOption(settings, OPTION_MAX_CHILD_NODES_SEVERITY, ValidationMessageSeverity.WARN)));
+        }
+        if (Boolean.parseBoolean(settings.getOptions().get(OPTION_DETECT_DUPLICATE_INDEX_DEFINITIONS))) {
+            validators.add(new DuplicateIndexDefinitionValidator(context, getSeverityOption(settings, OPTION_DUPLICATE_INDEX_DEFINITIONS_SEVERITY, ValidationMessageSeverity.WARN)));
+        }
+        // same order as MutableContentVolumeValidator.Metric
+        long[] mutableContentBudgets = new long[] {
+                getLongOption(settings, OPTION_MAX_MUTABLE_NODES, -1),
+                getLongOption(settings, OPTION_MAX_MUTABLE_PROPERTIES, -1),
+                getLongOption(settings, OPTION_MAX_MUTABLE_BYTES, -1)
+        };
+        if (Arrays.stream(mutableContentBudgets).anyMatch(budget -> budget >= 0)) {
+            validators.add(new MutableContentVolumeValidator(AemCloudValidator.DEFAULT_PATH_CLASSIFIER, mutableContentBudgets,
+                    getSeverityOption(settings, OPTION_MUTABLE_CONTENT_BUDGET_SEVERITY, ValidationMessageSeverity.WARN)));
+        }
+        long maxPropertyValueSize = getLongOption(settings, OPTION_MAX_PROPERTY_VALUE_SIZE, -1);
+        int maxPropertyValues = getIntegerOption(settings, OPTION_MAX_PROPERTY_VALUES, -1);
+        if (maxPropertyValueSize >= 0 || maxPropertyValues >= 0) {
+            validators.add(new OversizedPropertyValidator(maxPropertyValueSize, maxPropertyValues,
+                    getSeverityOption(settings, OPTION_OVERSIZED_PROPERTIES_SEVERITY, ValidationMessageSeverity.WARN)));
+        }
+        int maxPathDepth = getIntegerOption(settings, OPTION_MAX_PATH_DEPTH, -1);
+        int maxPathLength = getIntegerOption(settings, OPTION_MAX_PATH_LENGTH, -1);
+        boolean isReportingPathStatistics = Boolean.parseBoolean(settings.getOptions().get(OPTION_REPORT_PATH_STATISTICS));
+        if (maxPathDepth >= 0 || maxPathLength >= 0 || isReportingPathStatistics) {
+            validators.add(new PathDepthValidator(maxPathDepth, maxPathLength, isReportingPathStatistics,
+                    getSeverityOption(settings, OPTION_PATH_DEPTH_SEVERITY, ValidationMessageSeverity.WARN)));
+        }
+        return validators;
+    }
+
+    /**
+     *
+     * @param settings the validator settings
+     * @param option the option name, its value must be a comma-separated list of {@code <id>=<severity>} entries
+     * @return the map of ids to severities (empty if the option is not set)
+     */
+    static @NotNull Map<String, ValidationMessageSeverity> getSeveritiesOption(@NotNull ValidatorSettings settings, @NotNull String option) {
+        String value = settings.getOptions().get(option);
+        if (value == null || value.trim().isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, ValidationMessageSeverity> severities = new LinkedHashMap<>();
+        for (String entry : value.split(",")) {
+            String[] parts = entry.split("=", 2);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Option '" + option + "' must be a comma-separated list of '<id>=<severity>' entries but contains '" + entry + "'");
+            }
+            try {
+                severities.put(parts[0].trim(), ValidationMessageSeverity.valueOf(parts[1].trim().toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Option '" + option + "' contains invalid severity '" + parts[1].trim() + "'", e);
+            }
+        }
+        return severities;
+    }
+
+    static @NotNull ValidationMessageSeverity getSeverityOption(@NotNull ValidatorSettings settings, @NotNull String option, @NotNull ValidationMessageSeverity defaultValue) {
+        String value = settings.getOptions().get(option);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return ValidationMessageSeverity.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Option '" + option + "' contains invalid severity '" + value.trim() + "'", e);
+        }
+    }
+
+    static int getIntegerOption(@NotNull ValidatorSettings settings, @NotNull String option, int defaultValue) {
+        String value = settings.getOptions().get(option);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Option '" + option + "' must be an integer but is '" + value + "'", e);
+        }
+    }
+
+    static long getLongOption(@NotNull ValidatorSettings settings, @NotNull String option, long defaultValue) {
+        String value = settings.getOptions().get(option);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Option '" + option + "' must be a long but is '" + value + "'", e);
+        }
+    }
+
+    /** The path rules compiled from the given options */
+    private static final class CompiledPathRules {
+        private final @NotNull Map<String, String> options;
+        private final @NotNull ValidationMessageSeverity defaultSeverity;
+        private final @Nullable PathRules pathRules;
+
+        CompiledPathRules(@NotNull Map<String, String> options, @NotNull ValidationMessageSeverity defaultSeverity, @Nullable PathRules pathRules) {
+            this.options = options;
+            this.defaultSeverity = defaultSeverity;
+            this.pathRules = pathRules;
+        }
     }
 
     @Override
@@ -0,0 +1,488 @@
+package biz.netcentric.filevault.validator.aem.cloud;
+
+/*-
+ * #%L
+ * AEM Cloud Validator
+ * %%
+ * Copyright (C) 2021 Netcentric - A Cognizant Digital Business
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.jackrabbit.vault.fs.io.Archive;
+import org.apache.jackrabbit.vault.fs.io.ZipNioArchive;
+import org.apache.jackrabbit.vault.util.Constants;
+import org.apache.jackrabbit.vault.validation.ValidationExecutor;
+import org.apache.jackrabbit.vault.validation.ValidationViolation;
+import org.apache.jackrabbit.vault.validation.context.ArchiveValidationContext;
+import org.apache.jackrabbit.vault.validation.context.DependencyResolver;
+import org.apache.jackrabbit.vault.validation.context.SubPackageInArchiveValidationContext;
+import org.apache.jackrabbit.vault.validation.spi.NodePathValidator;
+import org.apache.jackrabbit.vault.validation.spi.ValidationContext;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessage;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
+import org.apache.jackrabbit.vault.validation.spi.Validator;
+import org.apache.jackrabbit.vault.validation.spi.ValidatorFactory;
+import org.apache.jackrabbit.vault.validation.spi.ValidatorSettings;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Standalone command line entry point which validates all content packages (files with extension {@code .zip}) found in a directory tree
+ * with the {@link AemCloudValidator} (including all sub packages).
+ * Packages are validated in parallel on a {@link ForkJoinPool} and are read via {@link ZipNioArchive} (i.e. a NIO zip file system).
+ * The violations are streamed to a single report (as soon as a package has been validated) which ends with a throughput summary.
+ * <p>
+ * Usage: {@code java -cp <classpath> biz.netcentric.filevault.validator.aem.cloud.BatchValidator [-t <threads>] [-s <defaultSeverity>] [-r <reportFile>] [-o <option>=<value>]... <directory>}
+ */
+public class BatchValidator {
+
+    private static final String USAGE = "Usage: BatchValidator [-t <threads>] [-s <defaultSeverity>] [-r <reportFile>] [-o <option>=<value>]... <directory>";
+    private static final String PACKAGE_EXTENSION = ".zip";
+    private static final String DOT_CONTENT_XML = Constants.DOT_CONTENT_XML;
+    /** dependencies are not resolved, as they are not relevant for this validator */
+    private static final DependencyResolver NO_DEPENDENCIES_RESOLVER = (dependencies, dependencyLocations) -> Collections.emptyList();
+    /** the id of FileVault's validator which parses the document view XML files and calls the {@link org.apache.jackrabbit.vault.validation.spi.DocumentViewXmlValidator}s */
+    static final String DOCUMENT_VIEW_PARSER_ID = ValidatorFactory.ID_PREFIX_JACKRABBIT + "docviewparser";
+    /** the id of FileVault's validator which parses the {@code META-INF/vault/properties.xml} and calls the {@link org.apache.jackrabbit.vault.validation.spi.PropertiesValidator}s */
+    static final String PROPERTIES_PARSER_ID = ValidatorFactory.ID_PREFIX_JACKRABBIT + "properties";
+
+    private final @NotNull AemCloudValidatorFactory validatorFactory;
+    private final @NotNull ValidatorFactory documentViewParserFactory;
+    private final @NotNull ValidatorFactory propertiesParserFactory;
+    private final @NotNull ValidatorSettings validatorSettings;
+    private final int parallelism;
+
+    /**
+     *
+     * @param validatorSettings the settings for the validator
+     * @param parallelism the number of threads used for validating packages in parallel
+     */
+    public BatchValidator(@NotNull ValidatorSettings validatorSettings, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1 but is " + parallelism);
+        }
+        this.validatorFactory = new AemCloudValidatorFactory();
+        this.documentViewParserFactory = getValidatorFactory(DOCUMENT_VIEW_PARSER_ID);
+        this.propertiesParserFactory = getValidatorFactory(PROPERTIES_PARSER_ID);
+        this.validatorSettings = validatorSettings;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Validates all packages below a directory and writes the report either to the given file (and the summary to stdout) or to stdout.
+     * Exits with status {@code 1} in case at least one error has been found and with status {@code 2} in case of invalid arguments.
+     * @param args the arguments {@code [-t <threads>] [-s <defaultSeverity>] [-r <reportFile>] [-o <option>=<value>]... <directory>}
+     * @throws IOException in case the directory could not be traversed or the report could not be written
+     * @throws InterruptedException in case the current thread has been interrupted while waiting for the validation to finish
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        ValidationMessageSeverity defaultSeverity = ValidationMessageSeverity.ERROR;
+        Path reportFile = null;
+        Map<String, String> options = new HashMap<>();
+        Path directory = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-t":
+                        parallelism = Integer.parseInt(args[++i]);
+                        break;
+                    case "-s":
+                        defaultSeverity = ValidationMessageSeverity.valueOf(args[++i].toUpperCase(Locale.ROOT));
+                        break;
+                    case "-r":
+                        reportFile = Paths.get(args[++i]);
+                        break;
+                    case "-o":
+                        String[] option = args[++i].split("=", 2);
+                        if (option.length != 2) {
+                            throw new IllegalArgumentException("Option must be given as <name>=<value> but is '" + args[i] + "'");
+                        }
+                        options.put(option[0], option[1]);
+                        break;
+                    default:
+                        if (directory != null) {
+                            throw new IllegalArgumentException("Only one directory may be given");
+                        }
+                        directory = Paths.get(args[i]);
+                        break;
+                }
+            }
+            if (directory == null) {
+                throw new IllegalArgumentException("No directory given");
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println(e.getMessage() != null ? e.getMessage() : "Missing argument value");
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+        BatchValidator batchValidator = new BatchValidator(new Settings(defaultSeverity, options), parallelism);
+        final Summary summary;
+        if (reportFile != null) {
+            try (Writer writer = Files.newBufferedWriter(reportFile, StandardCharsets.UTF_8)) {
+                summary = batchValidator.validate(directory, writer);
+            }
+            System.out.println(summary);
+        } else {
+            Writer writer = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+            summary = batchValidator.validate(directory, writer);
+            writer.flush();
+        }
+        System.exit(summary.getNumErrors() > 0 ? 1 : 0);
+    }
+
+    /**
+     * Looks up the factory via the {@link ServiceLoader} as FileVault's validators are not part of its API.
+     * @param id the id of the validator factory
+     * @return the factory with the given id
+     * @throws IllegalStateException in case no factory with the given id is registered
+     */
+    static @NotNull ValidatorFactory getValidatorFactory(@NotNull String id) {
+        for (ValidatorFactory factory : ServiceLoader.load(ValidatorFactory.class, BatchValidator.class.getClassLoader())) {
+            if (id.equals(factory.getId())) {
+                return factory;
+            }
+        }
+        throw new IllegalStateException("Could not find validator factory with id " + id);
+    }
+
+    /**
+     * Validates all packages below the given directory.
+     * @param directory the directory to search for packages (recursively)
+     * @param report the writer to which the violations of each package are written (once the package has been validated) followed by the summary
+     * @return the summary
+     * @throws IOException in case the directory could not be traversed or the report could not be written
+     * @throws InterruptedException in case the current thread has been interrupted while waiting for the validation to finish
+     */
+    public @NotNull Summary validate(@NotNull Path directory, @NotNull Writer report) throws IOException, InterruptedException {
+        final List<Path> packages;
+        try (Stream<Path> files = Files.walk(directory)) {
+            packages = files.filter(file -> file.getFileName().toString().endsWith(PACKAGE_EXTENSION) && Files.isRegularFile(file))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        PrintWriter reportWriter = new PrintWriter(report);
+        // keeps the file of option reportFile open for the whole run, otherwise each package starting after all previous ones are done would overwrite it
+        ReportWriter sharedReportWriter = AemCloudValidatorFactory.acquireReportWriter(validatorSettings);
+        long startTime = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        List<Future<PackageResult>> futures = new ArrayList<>();
+        try {
+            for (Path packagePath : packages) {
+                futures.add(pool.submit(() -> {
+                    PackageResult result = validatePackage(packagePath);
+                    // stream the result as soon as it is available
+                    synchronized (reportWriter) {
+                        result.write(reportWriter, directory);
+                        reportWriter.flush();
+                    }
+                    return result;
+                }));
+            }
+            Summary summary = new Summary();
+            for (Future<PackageResult> future : futures) {
+                try {
+                    summary.add(future.get());
+                } catch (ExecutionException e) {
+                    throw new IOException("Could not validate package", e.getCause());
+                }
+            }
+            summary.setDuration(System.nanoTime() - startTime);
+            reportWriter.println(summary);
+            reportWriter.flush();
+            return summary;
+        } finally {
+            pool.shutdownNow();
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+            if (sharedReportWriter != null) {
+                sharedReportWriter.release();
+            }
+        }
+    }
+
+    @NotNull PackageResult validatePackage(@NotNull Path packagePath) {
+        PackageResult result = new PackageResult(packagePath);
+        try (Archive archive = new ZipNioArchive(packagePath)) {
+            archive.open(true);
+            ArchiveValidationContext context = new ArchiveValidationContext(archive, packagePath, NO_DEPENDENCIES_RESOLVER);
+            validateArchive(archive, context, result);
+        } catch (IOException | UncheckedIOException e) {
+            result.setException(e);
+        }
+        return result;
+    }
+
+    private void validateArchive(@NotNull Archive archive, @NotNull ArchiveValidationContext context, @NotNull PackageResult result) throws IOException {
+        NodeCounter nodeCounter = new NodeCounter();
+        ValidationExecutor executor = createValidationExecutor(context, nodeCounter);
+        validateEntry(archive, archive.getRoot(), Paths.get(""), context, executor, result);
+        result.addViolations(executor.done());
+        result.addNodes(nodeCounter.getNumNodes());
+    }
+
+    private @NotNull ValidationExecutor createValidationExecutor(@NotNull ValidationContext context, @NotNull NodeCounter nodeCounter) {
+        Map<String, Validator> validatorsById = new LinkedHashMap<>();
+        // the parsers are necessary to call the DocumentViewXmlValidator and PropertiesValidator methods
+        ValidatorSettings parserSettings = new Settings(ValidationMessageSeverity.ERROR, Collections.emptyMap());
+        validatorsById.put(DOCUMENT_VIEW_PARSER_ID, documentViewParserFactory.createValidator(context, parserSettings));
+        validatorsById.put(PROPERTIES_PARSER_ID, propertiesParserFactory.createValidator(context, parserSettings));
+        validatorsById.put(validatorFactory.getId(), validatorFactory.createValidator(context, validatorSettings));
+        validatorsById.put(NodeCounter.ID, nodeCounter);
+        return new ValidationExecutor(validatorsById);
+    }
+
+    private void validateEntry(@NotNull Archive archive, @NotNull Archive.Entry entry, @NotNull Path entryPath, @NotNull ArchiveValidationContext context,
+            @NotNull ValidationExecutor executor, @NotNull PackageResult result) throws IOException {
+        // .content.xml must be validated before all other children
+        List<Archive.Entry> children = new ArrayList<>(entry.getChildren());
+        children.sort(Comparator.comparing((Archive.Entry child) -> !DOT_CONTENT_XML.equals(child.getName())).thenComparing(Archive.Entry::getName));
+        for (Archive.Entry child : children) {
+            Path childPath = entryPath.resolve(child.getName());
+            if (child.isDirectory()) {
+                validateInputStream(null, childPath, context, executor, result);
+                validateEntry(archive, child, childPath, context, executor, result);
+            } else {
+                try (InputStream input = archive.openInputStream(child)) {
+                    validateInputStream(input, childPath, context, executor, result);
+                }
+                if (childPath.startsWith(Constants.ROOT_DIR) && child.getName().endsWith(PACKAGE_EXTENSION)) {
+                    validateSubPackage(archive, child, childPath, context, result);
+                }
+            }
+        }
+    }
+
+    private void validateInputStream(@Nullable InputStream input, @NotNull Path entryPath, @NotNull ArchiveValidationContext context,
+            @NotNull ValidationExecutor executor, @NotNull PackageResult result) throws IOException {
+        Path packagePath = context.getPackageRootPath();
+        if (entryPath.startsWith(Constants.META_INF)) {
+            result.addViolations(executor.validateMetaInf(input, Paths.get(Constants.META_INF).relativize(entryPath), packagePath.resolve(Constants.META_INF)));
+        } else if (entryPath.startsWith(Constants.ROOT_DIR)) {
+            result.addViolations(executor.validateJcrRoot(input, Paths.get(Constants.ROOT_DIR).relativize(entryPath), packagePath.resolve(Constants.ROOT_DIR)));
+        }
+    }
+
+    private void validateSubPackage(@NotNull Archive archive, @NotNull Archive.Entry entry, @NotNull Path entryPath, @NotNull ArchiveValidationContext containerContext,
+            @NotNull PackageResult result) throws IOException {
+        // nested zip file systems are not supported in Java 8, therefore extract to a temporary file first
+        Path subPackageFile = Files.createTempFile("subpackage", PACKAGE_EXTENSION);
+        try {
+            try (InputStream input = archive.openInputStream(entry)) {
+                Files.copy(input, subPackageFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            try (Archive subArchive = new ZipNioArchive(subPackageFile)) {
+                subArchive.open(true);
+                // only real content packages
+                if (subArchive.getJcrRoot() == null) {
+                    return;
+                }
+                SubPackageInArchiveValidationContext context = new SubPackageInArchiveValidationContext(containerContext, subArchive, entryPath, NO_DEPENDENCIES_RESOLVER);
+                validateArchive(subArchive, context, result);
+            }
+        } finally {
+            Files.deleteIfExists(subPackageFile);
+        }
+    }
+
+    /** The settings of an enabled validator */
+    static final class Settings implements ValidatorSettings {
+        private final @NotNull ValidationMessageSeverity defaultSeverity;
+        private final @NotNull Map<String, String> options;
+
+        Settings(@NotNull ValidationMessageSeverity defaultSeverity, @NotNull Map<String, String> options) {
+            this.defaultSeverity = defaultSeverity;
+            this.options = Collections.unmodifiableMap(new HashMap<>(options));
+        }
+
+        @Override
+        public ValidationMessageSeverity getDefaultSeverity() {
+            return defaultSeverity;
+        }
+
+        @Override
+        public Map<String, String> getOptions() {
+            return options;
+        }
+
+        @Override
+        public boolean isDisabled() {
+            return false;
+        }
+    }
+
+    /** Counts all distinct nodes except for the root node, i.e. the {@code jcr_root} folder (including the ones from sub packages) */
+    private static final class NodeCounter implements NodePathValidator {
+        static final String ID = "netcentric-aem-cloud-batch-node-counter";
+        private long numNodes;
+        /** FileVault passes the paths of folders with a {@code .content.xml} twice */
+        private final @NotNull RepeatedNodePathFilter repeatedPathFilter = new RepeatedNodePathFilter();
+
+        @Override
+        public @Nullable Collection<ValidationMessage> validate(@NotNull String nodePath) {
+            if (!repeatedPathFilter.isRepeated(nodePath) && nodePath.length() > 1) {
+                numNodes++;
+            }
+            return null;
+        }
+
+        @Override
+        public @Nullable Collection<ValidationMessage> done() {
+            return null;
+        }
+
+        long getNumNodes() {
+            return numNodes;
+        }
+    }
+
+    /** The result of validating a single package (including its sub packages) */
+    static final class PackageResult {
+        private final @NotNull Path packagePath;
+        private final @NotNull List<ValidationViolation> violations;
+        private long numNodes;
+        private @Nullable Exception exception;
+
+        PackageResult(@NotNull Path packagePath) {
+            this.packagePath = packagePath;
+            this.violations = new ArrayList<>();
+        }
+
+        void addViolations(@NotNull Collection<ValidationViolation> violations) {
+            // debug messages are only emitted by the executor itself
+            violations.stream().filter(violation -> violation.getSeverity() != ValidationMessageSeverity.DEBUG).forEach(this.violations::add);
+        }
+
+        void addNodes(long numNodes) {
+            this.numNodes += numNodes;
+        }
+
+        void setException(@NotNull Exception exception) {
+            this.exception = exception;
+        }
+
+        @NotNull List<ValidationViolation> getViolations() {
+            return violations;
+        }
+
+        long getNumNodes() {
+            return numNodes;
+        }
+
+        @Nullable Exception getException() {
+            return exception;
+        }
+
+        void write(@NotNull PrintWriter writer, @NotNull Path baseDirectory) {
+            writer.println("Package " + baseDirectory.relativize(packagePath) + ": " + violations.size() + " violation(s), " + numNodes + " node(s)");
+            if (exception != null) {
+                writer.println("  [ERROR] Could not read package: " + exception);
+            }
+            for (ValidationViolation violation : violations) {
+                writer.println("  [" + violation.getSeverity() + "] " + violation.getMessage()
+                        + (violation.getFilePath() != null ? ", filePath=" + violation.getFilePath() : "")
+                        + (violation.getNodePath() != null ? ", nodePath=" + violation.getNodePath() : ""));
+            }
+        }
+    }
+
+    /** The summary over all validated packages */
+    public static final class Summary {
+        private int numPackages;
+        private long numNodes;
+        private int numErrors;
+        private int numWarnings;
+        private long durationNanos;
+
+        void add(@NotNull PackageResult result) {
+            numPackages++;
+            numNodes += result.getNumNodes();
+            if (result.getException() != null) {
+                numErrors++;
+            }
+            for (ValidationViolation violation : result.getViolations()) {
+                if (violation.getSeverity() == ValidationMessageSeverity.ERROR) {
+                    numErrors++;
+                } else if (violation.getSeverity() == ValidationMessageSeverity.WARN) {
+                    numWarnings++;
+                }
+            }
+        }
+
+        void setDuration(long durationNanos) {
+            this.durationNanos = durationNanos;
+        }
+
+        /**
+         *
+         * @return the number of validated package files (their sub packages are not counted separately)
+         */
+        public int getNumPackages() {
+            return numPackages;
+        }
+
+        /**
+         *
+         * @return the number of distinct nodes in all validated packages including their sub packages (excluding the root nodes)
+         */
+        public long getNumNodes() {
+            return numNodes;
+        }
+
+        /**
+         *
+         * @return the number of violations with severity {@code ERROR} plus the number of packages which could not be read
+         */
+        public int getNumErrors() {
+            return numErrors;
+        }
+
+        /**
+         *
+         * @return the number of violations with severity {@code WARN}
+         */
+        public int getNumWarnings() {
+            return numWarnings;
+        }
+
+        @Override
+        public String toString() {
+            double seconds = Math.max(durationNanos, 1) / 1_000_000_000d;
+            return String.format(Locale.ROOT, "Validated %d package(s) with %d node(s) in %.3f s (%.1f packages/s, %.1f nodes/s): %d error(s), %d warning(s)",
+                    numPackages, numNodes, seconds, numPackages / seconds, numNodes / seconds, numErrors, numWarnings);
+        }
+    }
+}
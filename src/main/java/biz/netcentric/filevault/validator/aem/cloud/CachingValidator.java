@@ -0,0 +1,120 @@
+package biz.netcentric.filevault.validator.aem.cloud;
+
+/*-
+ * #%L
+ * AEM Cloud Validator
+ * %%
+ * Copyright (C) 2021 Netcentric - A Cognizant Digital Business
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.jackrabbit.vault.packaging.PackageProperties;
+import org.apache.jackrabbit.vault.util.DocViewNode2;
+import org.apache.jackrabbit.vault.validation.spi.NodeContext;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessage;
+import org.apache.jackrabbit.vault.validation.spi.Validator;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Delegates to a {@link PackageValidator} and records all its messages (enriched with the node and file path they refer to).
+ * Once validation is done the recorded messages are stored in the {@link ValidationResultCache}.
+ */
+final class CachingValidator implements PackageValidator {
+
+    private final @NotNull PackageValidator delegate;
+    private final @NotNull ValidationResultCache cache;
+    private final @NotNull String key;
+    /** synchronized, as the callbacks may be invoked concurrently */
+    private final @NotNull List<ValidationMessage> recordedMessages;
+
+    CachingValidator(@NotNull PackageValidator delegate, @NotNull ValidationResultCache cache, @NotNull String key) {
+        this.delegate = delegate;
+        this.cache = cache;
+        this.key = key;
+        this.recordedMessages = Collections.synchronizedList(new ArrayList<>());
+    }
+
+    @Override
+    public @Nullable Collection<ValidationMessage> validate(@NotNull String nodePath) {
+        Collection<ValidationMessage> messages = delegate.validate(nodePath);
+        if (messages != null) {
+            for (ValidationMessage message : messages) {
+                recordedMessages.add(new RuleValidationMessage(RuleValidationMessage.getRuleId(message), message.getSeverity(), message.getMessage(), nodePath, null, null, 0, 0, null));
+            }
+        }
+        return messages;
+    }
+
+    @Override
+    public @Nullable Collection<ValidationMessage> validateMetaInfPath(@NotNull Path filePath) {
+        Collection<ValidationMessage> messages = delegate.validateMetaInfPath(filePath);
+        if (messages != null) {
+            for (ValidationMessage message : messages) {
+                recordedMessages.add(new RuleValidationMessage(RuleValidationMessage.getRuleId(message), message.getSeverity(), message.getMessage(), null, filePath, null, 0, 0, null));
+            }
+        }
+        return messages;
+    }
+
+    @Override
+    public @Nullable Collection<ValidationMessage> validate(@NotNull DocViewNode2 node, @NotNull NodeContext nodeContext, boolean isRoot) {
+        Collection<ValidationMessage> messages = delegate.validate(node, nodeContext, isRoot);
+        if (messages != null) {
+            for (ValidationMessage message : messages) {
+                recordedMessages.add(new RuleValidationMessage(RuleValidationMessage.getRuleId(message), message.getSeverity(), message.getMessage(), nodeContext));
+            }
+        }
+        return messages;
+    }
+
+    @Override
+    public @Nullable Collection<ValidationMessage> validate(@NotNull PackageProperties properties) {
+        return record(delegate.validate(properties));
+    }
+
+    @Override
+    public @Nullable Collection<ValidationMessage> done() {
+        Collection<ValidationMessage> messages = record(delegate.done());
+        // iterating requires holding the lock
+        synchronized (recordedMessages) {
+            cache.put(key, recordedMessages);
+        }
+        return messages;
+    }
+
+    private @Nullable Collection<ValidationMessage> record(@Nullable Collection<ValidationMessage> messages) {
+        if (messages != null) {
+            recordedMessages.addAll(messages);
+        }
+        return messages;
+    }
+
+    /**
+     * Replays the messages from a previous validation of the same package (without validating anything).
+     */
+    static final class ReplayingValidator implements Validator {
+
+        private final @NotNull Collection<ValidationMessage> messages;
+
+        ReplayingValidator(@NotNull Collection<ValidationMessage> messages) {
+            this.messages = messages;
+        }
+
+        @Override
+        public @Nullable Collection<ValidationMessage> done() {
+            return messages;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package biz.netcentric.filevault.validator.aem.cloud;
+
+/*-
+ * #%L
+ * AEM Cloud Validator
+ * %%
+ * Copyright (C) 2021 Netcentric - A Cognizant Digital Business
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Counts the child nodes per parent node path.
+ * Uses an open addressing hash table with parallel primitive arrays. Each parent path is only stored once (as a single string)
+ * and lookups work on the given child path directly, so that counting does not allocate anything for already known parents.
+ * <p>
+ * As the same node path may be passed multiple times in a row (e.g. once for its folder and once for its {@code .content.xml})
+ * the last counted child path is kept per parent to not count such duplicates. Its name's hash is kept as well to only compare the names in case the hashes are equal.
+ */
+final class ChildNodeCounter {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private String[] parentPaths;
+    private int[] childCounts;
+    /** the full paths given to {@link #countChild(String)}, i.e. references to existing strings */
+    private String[] lastChildPaths;
+    private int[] lastChildNameHashes;
+    private int[] values;
+    private int size;
+
+    ChildNodeCounter() {
+        parentPaths = new String[INITIAL_CAPACITY];
+        childCounts = new int[INITIAL_CAPACITY];
+        lastChildPaths = new String[INITIAL_CAPACITY];
+        lastChildNameHashes = new int[INITIAL_CAPACITY];
+        values = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Counts the given node path as child of its parent.
+     * @param nodePath the absolute node path
+     * @return the slot of the parent or {@code -1} for the root node
+     */
+    int countChild(@NotNull String nodePath) {
+        int lastSlash = nodePath.lastIndexOf('/');
+        if (lastSlash < 0 || nodePath.length() == 1) {
+            return -1;
+        }
+        int parentLength = lastSlash == 0 ? 1 : lastSlash;
+        int slot = getOrAddSlot(nodePath, parentLength);
+        int childNameHash = hash(nodePath, lastSlash + 1, nodePath.length());
+        if (childCounts[slot] == 0 || lastChildNameHashes[slot] != childNameHash || !isSameChildName(lastChildPaths[slot], nodePath, lastSlash + 1)) {
+            childCounts[slot]++;
+            lastChildPaths[slot] = nodePath;
+            lastChildNameHashes[slot] = childNameHash;
+        }
+        return slot;
+    }
+
+    /**
+     *
+     * @param childPath a child path
+     * @param otherChildPath another child path of the same parent
+     * @param nameIndex the index of the child names in both paths
+     * @return {@code true} in case both paths have the same name
+     */
+    private static boolean isSameChildName(@NotNull String childPath, @NotNull String otherChildPath, int nameIndex) {
+        return childPath.length() == otherChildPath.length() && childPath.regionMatches(nameIndex, otherChildPath, nameIndex, childPath.length() - nameIndex);
+    }
+
+    /**
+     *
+     * @param path the path
+     * @return the slot of the given path or {@code -1} if the path has not been counted as parent (yet)
+     */
+    int getSlot(@NotNull String path) {
+        int mask = parentPaths.length - 1;
+        for (int slot = hash(path, 0, path.length()) & mask;; slot = (slot + 1) & mask) {
+            String parentPath = parentPaths[slot];
+            if (parentPath == null) {
+                return -1;
+            }
+            if (parentPath.equals(path)) {
+                return slot;
+            }
+        }
+    }
+
+    private int getOrAddSlot(@NotNull String nodePath, int parentLength) {
+        int mask = parentPaths.length - 1;
+        int slot = hash(nodePath, 0, parentLength) & mask;
+        for (;; slot = (slot + 1) & mask) {
+            String parentPath = parentPaths[slot];
+            if (parentPath == null) {
+                break;
+            }
+            if (parentPath.length() == parentLength && nodePath.regionMatches(0, parentPath, 0, parentLength)) {
+                return slot;
+            }
+        }
+        String newParentPath = nodePath.substring(0, parentLength);
+        parentPaths[slot] = newParentPath;
+        size++;
+        // keep load factor below 0.5
+        if (size * 2 > parentPaths.length) {
+            grow();
+            return getSlot(newParentPath);
+        }
+        return slot;
+    }
+
+    private void grow() {
+        String[] oldParentPaths = parentPaths;
+        int[] oldChildCounts = childCounts;
+        String[] oldLastChildPaths = lastChildPaths;
+        int[] oldLastChildNameHashes = lastChildNameHashes;
+        int[] oldValues = values;
+        int capacity = oldParentPaths.length * 2;
+        parentPaths = new String[capacity];
+        childCounts = new int[capacity];
+        lastChildPaths = new String[capacity];
+        lastChildNameHashes = new int[capacity];
+        values = new int[capacity];
+        int mask = capacity - 1;
+        for (int oldSlot = 0; oldSlot < oldParentPaths.length; oldSlot++) {
+            String parentPath = oldParentPaths[oldSlot];
+            if (parentPath != null) {
+                int slot = hash(parentPath, 0, parentPath.length()) & mask;
+                while (parentPaths[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                parentPaths[slot] = parentPath;
+                childCounts[slot] = oldChildCounts[oldSlot];
+                lastChildPaths[slot] = oldLastChildPaths[oldSlot];
+                lastChildNameHashes[slot] = oldLastChildNameHashes[oldSlot];
+                values[slot] = oldValues[oldSlot];
+            }
+        }
+    }
+
+    /** Based on {@link String#hashCode()} for the given substring, but without allocating it. */
+    private static int hash(@NotNull String value, int beginIndex, int endIndex) {
+        int hash = 0;
+        for (int i = beginIndex; i < endIndex; i++) {
+            hash = 31 * hash + value.charAt(i);
+        }
+        // spread the higher bits
+        return hash ^ (hash >>> 16);
+    }
+
+    int capacity() {
+        return parentPaths.length;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     *
+     * @param slot the slot
+     * @return the parent path stored in the given slot or {@code null} if the slot is empty
+     */
+    @Nullable String getParentPath(int slot) {
+        return parentPaths[slot];
+    }
+
+    int getChildCount(int slot) {
+        return childCounts[slot];
+    }
+
+    /**
+     *
+     * @param slot the slot
+     * @return an arbitrary int value attached to the parent in the given slot (0 by default)
+     */
+    int getValue(int slot) {
+        return values[slot];
+    }
+
+    void setValue(int slot, int value) {
+        values[slot] = value;
+    }
+}
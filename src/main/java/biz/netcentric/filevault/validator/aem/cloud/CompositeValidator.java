@@ -0,0 +1,114 @@
+package biz.netcentric.filevault.validator.aem.cloud;
+
+/*-
+ * #%L
+ * AEM Cloud Validator
+ * %%
+ * Copyright (C) 2021 Netcentric - A Cognizant Digital Business
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.jackrabbit.vault.packaging.PackageProperties;
+import org.apache.jackrabbit.vault.util.DocViewNode2;
+import org.apache.jackrabbit.vault.validation.spi.DocumentViewXmlValidator;
+import org.apache.jackrabbit.vault.validation.spi.MetaInfPathValidator;
+import org.apache.jackrabbit.vault.validation.spi.NodeContext;
+import org.apache.jackrabbit.vault.validation.spi.NodePathValidator;
+import org.apache.jackrabbit.vault.validation.spi.PropertiesValidator;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessage;
+import org.apache.jackrabbit.vault.validation.spi.Validator;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Combines the {@link AemCloudValidator} with the optional checks (each implemented as separate {@link Validator})
+ * so that all of them can be returned by {@link AemCloudValidatorFactory} under the same id.
+ * Each callback is only forwarded to the validators implementing the according interface and the messages of all of them are concatenated.
+ */
+final class CompositeValidator implements PackageValidator {
+
+    private final @NotNull Validator[] validators;
+    private final @NotNull NodePathValidator[] nodePathValidators;
+    private final @NotNull MetaInfPathValidator[] metaInfPathValidators;
+    private final @NotNull DocumentViewXmlValidator[] documentViewXmlValidators;
+    private final @NotNull PropertiesValidator[] propertiesValidators;
+
+    CompositeValidator(@NotNull List<? extends Validator> validators) {
+        this.validators = validators.toArray(new Validator[0]);
+        this.nodePathValidators = validators.stream().filter(NodePathValidator.class::isInstance).toArray(NodePathValidator[]::new);
+        this.metaInfPathValidators = validators.stream().filter(MetaInfPathValidator.class::isInstance).toArray(MetaInfPathValidator[]::new);
+        this.documentViewXmlValidators = validators.stream().filter(DocumentViewXmlValidator.class::isInstance).toArray(DocumentViewXmlValidator[]::new);
+        this.propertiesValidators = validators.stream().filter(PropertiesValidator.class::isInstance).toArray(PropertiesValidator[]::new);
+    }
+
+    @Override
+    public @Nullable Collection<ValidationMessage> validate(@NotNull String nodePath) {
+        Collection<ValidationMessage> messages = null;
+        for (NodePathValidator validator : nodePathValidators) {
+            messages = addMessages(messages, validator.validate(nodePath));
+        }
+        return messages;
+    }
+
+    @Override
+    public @Nullable Collection<ValidationMessage> validateMetaInfPath(@NotNull Path filePath) {
+        Collection<ValidationMessage> messages = null;
+        for (MetaInfPathValidator validator : metaInfPathValidators) {
+            messages = addMessages(messages, validator.validateMetaInfPath(filePath));
+        }
+        return messages;
+    }
+
+    @Override
+    public @Nullable Collection<ValidationMessage> validate(@NotNull DocViewNode2 node, @NotNull NodeContext nodeContext, boolean isRoot) {
+        Collection<ValidationMessage> messages = null;
+        for (DocumentViewXmlValidator validator : documentViewXmlValidators) {
+            messages = addMessages(messages, validator.validate(node, nodeContext, isRoot));
+        }
+        return messages;
+    }
+
+    @Override
+    public @Nullable Collection<ValidationMessage> validate(@NotNull PackageProperties properties) {
+        Collection<ValidationMessage> messages = null;
+        for (PropertiesValidator validator : propertiesValidators) {
+            messages = addMessages(messages, validator.validate(properties));
+        }
+        return messages;
+    }
+
+    @Override
+    public @Nullable Collection<ValidationMessage> done() {
+        Collection<ValidationMessage> messages = null;
+        for (Validator validator : validators) {
+            messages = addMessages(messages, validator.done());
+        }
+        return messages;
+    }
+
+    /**
+     * Only allocates a new collection if messages from more than one validator need to be combined.
+     */
+    private static @Nullable Collection<ValidationMessage> addMessages(@Nullable Collection<ValidationMessage> messages, @Nullable Collection<ValidationMessage> newMessages) {
+        if (newMessages == null || newMessages.isEmpty()) {
+            return messages;
+        }
+        if (messages == null || messages.isEmpty()) {
+            return newMessages;
+        }
+        List<ValidationMessage> combinedMessages = new ArrayList<>(messages.size() + newMessages.size());
+        combinedMessages.addAll(messages);
+        combinedMessages.addAll(newMessages);
+        return combinedMessages;
+    }
+}
@@ -0,0 +1,230 @@
+package biz.netcentric.filevault.validator.aem.cloud;
+
+/*-
+ * #%L
+ * AEM Cloud Validator
+ * %%
+ * Copyright (C) 2021 Netcentric - A Cognizant Digital Business
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.spi.commons.name.NameFactoryImpl;
+import org.apache.jackrabbit.util.Text;
+import org.apache.jackrabbit.vault.packaging.PackageId;
+import org.apache.jackrabbit.vault.util.DocViewNode2;
+import org.apache.jackrabbit.vault.validation.spi.DocumentViewXmlValidator;
+import org.apache.jackrabbit.vault.validation.spi.NodeContext;
+import org.apache.jackrabbit.vault.validation.spi.ValidationContext;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessage;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Detects Oak index definitions which are contained multiple times or in multiple custom versions in the outermost container package and all its sub packages.
+ * Each validator registers the index definitions of its own package in the {@link Registry} of the outermost package which is evaluated
+ * once the outermost package is done (as that happens after all its sub packages are done).
+ */
+final class DuplicateIndexDefinitionValidator implements DocumentViewXmlValidator {
+
+    static final String VIOLATION_MESSAGE_DUPLICATE_INDEX_DEFINITION = "The index definition '%s' is contained in multiple packages (%s), therefore it is indexed multiple times during deployment.";
+    static final String VIOLATION_MESSAGE_CONFLICTING_INDEX_DEFINITION = "The index definition '%s' is contained in multiple packages (%s) with differing properties (%s), therefore the outcome depends on the installation order.";
+    static final String VIOLATION_MESSAGE_SUPERSEDED_INDEX_DEFINITION = "The index definition '%s' (in %s) is superseded by '%s' (in %s), therefore it is only causing additional indexing work. Rather remove it.";
+    static final String RULE_ID_DUPLICATE = "duplicateIndexDefinition";
+    static final String RULE_ID_CONFLICTING = "conflictingIndexDefinition";
+    static final String RULE_ID_SUPERSEDED = "supersededIndexDefinition";
+
+    /** the context attribute of the outermost package containing the {@link Registry} */
+    static final String ATTRIBUTE_INDEX_DEFINITION_REGISTRY = "netcentric-aem-cloud.indexDefinitionRegistry";
+
+    /** splits names complying with {@code [<prefix>.]<indexName>-<productVersion>-custom-<customVersion>} */
+    private static final Pattern INDEX_DEFINITION_NAME_PATTERN = Pattern.compile("(.*)-(\\d++)-custom-(\\d++)");
+    /** the properties of an index definition which are compared for duplicates */
+    private static final Collection<Name> KEY_PROPERTY_NAMES = Arrays.asList("type", "async", "compatVersion", "includedPaths", "excludedPaths", "queryPaths",
+            "evaluatePathRestrictions", "tags", "selectionPolicy").stream()
+            .map(name -> NameFactoryImpl.getInstance().create(Name.NS_DEFAULT_URI, name))
+            .collect(Collectors.toList());
+
+    private final @NotNull ValidationMessageSeverity severity;
+    private final @NotNull String packageLabel;
+    private final @NotNull Registry registry;
+    private final boolean isOutermostPackage;
+
+    DuplicateIndexDefinitionValidator(@NotNull ValidationContext context, @NotNull ValidationMessageSeverity severity) {
+        this.severity = severity;
+        PackageId packageId = context.getProperties().getId();
+        this.packageLabel = packageId != null ? packageId.toString() : context.getPackageRootPath().toString();
+        ValidationContext outermostContext = context;
+        while (outermostContext.getContainerValidationContext() != null) {
+            outermostContext = outermostContext.getContainerValidationContext();
+        }
+        this.isOutermostPackage = outermostContext == context;
+        Registry existingRegistry = (Registry) outermostContext.getAttribute(ATTRIBUTE_INDEX_DEFINITION_REGISTRY);
+        if (existingRegistry == null || isOutermostPackage) {
+            // the outermost package is always validated first
+            existingRegistry = new Registry();
+            outermostContext.setAttribute(ATTRIBUTE_INDEX_DEFINITION_REGISTRY, existingRegistry);
+        }
+        this.registry = existingRegistry;
+    }
+
+    @Override
+    public @Nullable Collection<ValidationMessage> validate(@NotNull DocViewNode2 node, @NotNull NodeContext nodeContext, boolean isRoot) {
+        if (AemCloudValidator.INDEX_DEFINITION_PRIMARY_TYPE.equals(node.getPrimaryType().orElse(""))) {
+            Map<String, String> keyProperties = new TreeMap<>();
+            for (Name propertyName : KEY_PROPERTY_NAMES) {
+                node.getProperty(propertyName).ifPresent(property -> keyProperties.put(propertyName.getLocalName(), property.formatValue()));
+            }
+            registry.add(new IndexDefinition(nodeContext.getNodePath(), packageLabel, keyProperties));
+        }
+        return null;
+    }
+
+    @Override
+    public @Nullable Collection<ValidationMessage> done() {
+        if (!isOutermostPackage) {
+            return null;
+        }
+        return registry.evaluate(severity);
+    }
+
+    /** An index definition found in one package */
+    static final class IndexDefinition {
+        private final @NotNull String path;
+        private final @NotNull String packageLabel;
+        private final @NotNull Map<String, String> keyProperties;
+
+        IndexDefinition(@NotNull String path, @NotNull String packageLabel, @NotNull Map<String, String> keyProperties) {
+            this.path = path;
+            this.packageLabel = packageLabel;
+            this.keyProperties = keyProperties;
+        }
+    }
+
+    /**
+     * All index definitions of the outermost container package and its sub packages.
+     * Thread-safe, as sub packages may be validated concurrently.
+     */
+    static final class Registry {
+        private final @NotNull Queue<IndexDefinition> indexDefinitions;
+
+        Registry() {
+            this.indexDefinitions = new ConcurrentLinkedQueue<>();
+        }
+
+        void add(@NotNull IndexDefinition indexDefinition) {
+            indexDefinitions.add(indexDefinition);
+        }
+
+        @Nullable Collection<ValidationMessage> evaluate(@NotNull ValidationMessageSeverity severity) {
+            Collection<ValidationMessage> messages = null;
+            // same path in multiple packages
+            Map<String, List<IndexDefinition>> indexDefinitionsByPath = indexDefinitions.stream()
+                    .collect(Collectors.groupingBy(indexDefinition -> indexDefinition.path, TreeMap::new, Collectors.toList()));
+            for (Map.Entry<String, List<IndexDefinition>> entry : indexDefinitionsByPath.entrySet()) {
+                List<IndexDefinition> duplicates = entry.getValue();
+                if (duplicates.size() > 1) {
+                    String packageLabels = duplicates.stream().map(indexDefinition -> indexDefinition.packageLabel).collect(Collectors.joining(", "));
+                    String differingProperties = getDifferingProperties(duplicates);
+                    final ValidationMessage message;
+                    if (differingProperties.isEmpty()) {
+                        message = new RuleValidationMessage(RULE_ID_DUPLICATE, severity, String.format(VIOLATION_MESSAGE_DUPLICATE_INDEX_DEFINITION, entry.getKey(), packageLabels),
+                                entry.getKey(), null, null, 0, 0, null);
+                    } else {
+                        message = new RuleValidationMessage(RULE_ID_CONFLICTING, severity, String.format(VIOLATION_MESSAGE_CONFLICTING_INDEX_DEFINITION, entry.getKey(), packageLabels, differingProperties),
+                                entry.getKey(), null, null, 0, 0, null);
+                    }
+                    messages = AemCloudValidator.addMessage(messages, message);
+                }
+            }
+            // multiple versions of the same index (the one with the highest product and custom version is the effective one)
+            Map<String, List<VersionedIndexDefinition>> versionsByIndex = new TreeMap<>();
+            for (Map.Entry<String, List<IndexDefinition>> entry : indexDefinitionsByPath.entrySet()) {
+                VersionedIndexDefinition versionedIndexDefinition = VersionedIndexDefinition.fromIndexDefinition(entry.getValue().get(0));
+                if (versionedIndexDefinition != null) {
+                    versionsByIndex.computeIfAbsent(versionedIndexDefinition.unversionedPath, path -> new ArrayList<>()).add(versionedIndexDefinition);
+                }
+            }
+            for (List<VersionedIndexDefinition> versions : versionsByIndex.values()) {
+                if (versions.size() > 1) {
+                    versions.sort(VersionedIndexDefinition.VERSION_COMPARATOR);
+                    VersionedIndexDefinition effective = versions.get(versions.size() - 1);
+                    for (VersionedIndexDefinition superseded : versions.subList(0, versions.size() - 1)) {
+                        String message = String.format(VIOLATION_MESSAGE_SUPERSEDED_INDEX_DEFINITION, superseded.indexDefinition.path, superseded.indexDefinition.packageLabel,
+                                effective.indexDefinition.path, effective.indexDefinition.packageLabel);
+                        messages = AemCloudValidator.addMessage(messages, new RuleValidationMessage(RULE_ID_SUPERSEDED, severity, message, superseded.indexDefinition.path, null, null, 0, 0, null));
+                    }
+                }
+            }
+            return messages;
+        }
+
+        private static @NotNull String getDifferingProperties(@NotNull List<IndexDefinition> indexDefinitions) {
+            Map<String, String> firstKeyProperties = indexDefinitions.get(0).keyProperties;
+            return indexDefinitions.stream()
+                    .flatMap(indexDefinition -> indexDefinition.keyProperties.keySet().stream())
+                    .distinct()
+                    .filter(propertyName -> indexDefinitions.stream().anyMatch(indexDefinition -> !Objects.equals(firstKeyProperties.get(propertyName), indexDefinition.keyProperties.get(propertyName))))
+                    .sorted()
+                    .collect(Collectors.joining(", "));
+        }
+    }
+
+    /** An index definition whose name complies with the naming policy */
+    static final class VersionedIndexDefinition {
+        static final Comparator<VersionedIndexDefinition> VERSION_COMPARATOR = Comparator.comparingLong((VersionedIndexDefinition definition) -> definition.productVersion)
+                .thenComparingLong(definition -> definition.customVersion);
+
+        private final @NotNull IndexDefinition indexDefinition;
+        /** the path with the name stripped of its product and custom version */
+        private final @NotNull String unversionedPath;
+        private final long productVersion;
+        private final long customVersion;
+
+        private VersionedIndexDefinition(@NotNull IndexDefinition indexDefinition, @NotNull String unversionedPath, long productVersion, long customVersion) {
+            this.indexDefinition = indexDefinition;
+            this.unversionedPath = unversionedPath;
+            this.productVersion = productVersion;
+            this.customVersion = customVersion;
+        }
+
+        /**
+         *
+         * @param indexDefinition the index definition
+         * @return the versioned index definition or {@code null} in case the name does not follow the naming policy (which is reported by {@link AemCloudValidator})
+         */
+        static @Nullable VersionedIndexDefinition fromIndexDefinition(@NotNull IndexDefinition indexDefinition) {
+            Matcher matcher = INDEX_DEFINITION_NAME_PATTERN.matcher(Text.getName(indexDefinition.path));
+            if (!matcher.matches()) {
+                return null;
+            }
+            try {
+                return new VersionedIndexDefinition(indexDefinition, Text.getRelativeParent(indexDefinition.path, 1) + "/" + matcher.group(1),
+                        Long.parseLong(matcher.group(2)), Long.parseLong(matcher.group(3)));
+            } catch (NumberFormatException e) {
+                // versions exceeding long
+                return null;
+            }
+        }
+    }
+}
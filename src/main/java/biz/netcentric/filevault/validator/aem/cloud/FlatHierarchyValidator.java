@@ -0,0 +1,149 @@
+package biz.netcentric.filevault.validator.aem.cloud;
+
+/*-
+ * #%L
+ * AEM Cloud Validator
+ * %%
+ * Copyright (C) 2021 Netcentric - A Cognizant Digital Business
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.jackrabbit.vault.util.DocViewNode2;
+import org.apache.jackrabbit.vault.validation.spi.DocumentViewXmlValidator;
+import org.apache.jackrabbit.vault.validation.spi.NodeContext;
+import org.apache.jackrabbit.vault.validation.spi.NodePathValidator;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessage;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Detects flat hierarchies, i.e. parent nodes with more child nodes than the given threshold.
+ * Those are reported once the package is done, together with the primary type of the parent (if known from its document view node).
+ */
+final class FlatHierarchyValidator implements NodePathValidator, DocumentViewXmlValidator {
+
+    static final String VIOLATION_MESSAGE_TOO_MANY_CHILD_NODES = "Node '%s' (primary type '%s') has %d child nodes which exceeds the limit of %d. Large flat (especially orderable) hierarchies lead to slow installations and queries, rather introduce intermediate nodes.";
+    static final String RULE_ID = "tooManyChildNodes";
+    static final String UNKNOWN_PRIMARY_TYPE = "unknown";
+
+    private final int maxChildNodes;
+    private final @NotNull ValidationMessageSeverity severity;
+    private final @NotNull ChildNodeCounter childNodeCounter;
+    /** all distinct primary types (their index + 1 is stored as value in the {@link ChildNodeCounter}) */
+    private final @NotNull List<String> primaryTypes;
+    private final @NotNull Map<String, Integer> primaryTypeIndexes;
+    /** the path and primary type index of the last document view node per depth (i.e. of all ancestors of the current document view node) */
+    private String[] docViewPathsByDepth;
+    private int[] docViewPrimaryTypesByDepth;
+
+    FlatHierarchyValidator(int maxChildNodes, @NotNull ValidationMessageSeverity severity) {
+        if (maxChildNodes < 1) {
+            throw new IllegalArgumentException("The maximum number of child nodes must be at least 1 but is " + maxChildNodes);
+        }
+        this.maxChildNodes = maxChildNodes;
+        this.severity = severity;
+        this.childNodeCounter = new ChildNodeCounter();
+        this.primaryTypes = new ArrayList<>();
+        this.primaryTypeIndexes = new HashMap<>();
+        this.docViewPathsByDepth = new String[16];
+        this.docViewPrimaryTypesByDepth = new int[16];
+    }
+
+    @Override
+    public @Nullable Collection<ValidationMessage> validate(@NotNull String nodePath) {
+        int slot = childNodeCounter.countChild(nodePath);
+        if (slot >= 0 && childNodeCounter.getValue(slot) == 0 && childNodeCounter.getChildCount(slot) == 1) {
+            // newly added parent, look up the primary type from the ancestors of the last document view node
+            String parentPath = childNodeCounter.getParentPath(slot);
+            int depth = getDepth(parentPath);
+            if (depth < docViewPathsByDepth.length && parentPath.equals(docViewPathsByDepth[depth])) {
+                childNodeCounter.setValue(slot, docViewPrimaryTypesByDepth[depth]);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public @Nullable Collection<ValidationMessage> validate(@NotNull DocViewNode2 node, @NotNull NodeContext nodeContext, boolean isRoot) {
+        String primaryType = node.getPrimaryType().orElse(null);
+        if (primaryType == null) {
+            return null;
+        }
+        String nodePath = nodeContext.getNodePath();
+        int primaryTypeValue = primaryTypeIndexes.computeIfAbsent(primaryType, type -> {
+            primaryTypes.add(type);
+            return primaryTypes.size();
+        });
+        int depth = getDepth(nodePath);
+        if (depth >= docViewPathsByDepth.length) {
+            docViewPathsByDepth = Arrays.copyOf(docViewPathsByDepth, depth * 2);
+            docViewPrimaryTypesByDepth = Arrays.copyOf(docViewPrimaryTypesByDepth, depth * 2);
+        }
+        docViewPathsByDepth[depth] = nodePath;
+        docViewPrimaryTypesByDepth[depth] = primaryTypeValue;
+        // the parent may already have been counted before (e.g. if its .content.xml is processed after the folders of its child nodes)
+        int slot = childNodeCounter.getSlot(nodePath);
+        if (slot >= 0) {
+            childNodeCounter.setValue(slot, primaryTypeValue);
+        }
+        return null;
+    }
+
+    @Override
+    public @Nullable Collection<ValidationMessage> done() {
+        List<Integer> violatingSlots = new ArrayList<>();
+        for (int slot = 0; slot < childNodeCounter.capacity(); slot++) {
+            if (childNodeCounter.getParentPath(slot) != null && childNodeCounter.getChildCount(slot) > maxChildNodes) {
+                violatingSlots.add(slot);
+            }
+        }
+        if (violatingSlots.isEmpty()) {
+            return null;
+        }
+        // the largest ones first
+        violatingSlots.sort(Comparator.comparingInt((Integer slot) -> childNodeCounter.getChildCount(slot)).reversed()
+                .thenComparing(slot -> childNodeCounter.getParentPath(slot)));
+        List<ValidationMessage> messages = new ArrayList<>(violatingSlots.size());
+        for (int slot : violatingSlots) {
+            String parentPath = childNodeCounter.getParentPath(slot);
+            int primaryTypeValue = childNodeCounter.getValue(slot);
+            String primaryType = primaryTypeValue > 0 ? primaryTypes.get(primaryTypeValue - 1) : UNKNOWN_PRIMARY_TYPE;
+            messages.add(new RuleValidationMessage(RULE_ID, severity,
+                    String.format(VIOLATION_MESSAGE_TOO_MANY_CHILD_NODES, parentPath, primaryType, childNodeCounter.getChildCount(slot), maxChildNodes),
+                    parentPath, null, null, 0, 0, null));
+        }
+        return messages;
+    }
+
+    /**
+     *
+     * @param path an absolute path
+     * @return the number of path segments (0 for the root node)
+     */
+    private static int getDepth(@NotNull String path) {
+        if (path.length() == 1) {
+            return 0;
+        }
+        int depth = 0;
+        for (int i = 0; i < path.length(); i++) {
+            if (path.charAt(i) == '/') {
+                depth++;
+            }
+        }
+        return depth;
+    }
+}
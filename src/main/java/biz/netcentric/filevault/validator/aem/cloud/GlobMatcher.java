@@ -0,0 +1,266 @@
+package biz.netcentric.filevault.validator.aem.cloud;
+
+/*-
+ * #%L
+ * AEM Cloud Validator
+ * %%
+ * Copyright (C) 2021 Netcentric - A Cognizant Digital Business
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Matches repository paths against many glob patterns at once.
+ * All globs are compiled into one deterministic finite automaton, so the costs of {@link #match(String)} only depend on the length of the given path
+ * but not on the number of globs. Matching does not allocate any objects.
+ * <p>
+ * The following wildcards are supported:
+ * <ul>
+ * <li>{@code ?} matches exactly one character except {@code /}</li>
+ * <li>{@code *} matches any number of characters except {@code /} (i.e. within one path segment)</li>
+ * <li>{@code **} matches any number of characters including {@code /} (i.e. across path segments)</li>
+ * </ul>
+ * Each glob matches the path itself and all its descendants (i.e. {@code /conf/*} matches {@code /conf/site} and {@code /conf/site/settings} but not {@code /conf}).
+ * Instances are immutable and therefore thread-safe.
+ */
+final class GlobMatcher {
+
+    /** the maximum number of states of the automaton to prevent excessive memory consumption for pathological globs */
+    static final int MAX_STATES = 100_000;
+
+    private static final int[] NO_MATCHES = new int[0];
+    private static final int DEAD_STATE = 0;
+    /** the character class of all characters not explicitly contained in any glob (except {@code /}) */
+    private static final int OTHER_CLASS = 0;
+
+    /** all characters explicitly contained in the globs (sorted ascending), index + 1 is the character class */
+    private final char[] alphabet;
+    private final int slashClass;
+    private final int startState;
+    /** the target state per state and character class */
+    private final int[][] transitions;
+    /** the indices of the matching globs per state */
+    private final int[][] matches;
+
+    /**
+     *
+     * @param globs the globs, each must be absolute
+     * @throws IllegalArgumentException in case one of the globs is invalid or the resulting automaton would be too large
+     */
+    GlobMatcher(@NotNull List<String> globs) {
+        Nfa nfa = new Nfa();
+        TreeSet<Character> characters = new TreeSet<>();
+        characters.add('/');
+        for (int i = 0; i < globs.size(); i++) {
+            nfa.add(globs.get(i), i, characters);
+        }
+        alphabet = new char[characters.size()];
+        int n = 0;
+        for (char c : characters) {
+            alphabet[n++] = c;
+        }
+        slashClass = getCharacterClass('/');
+        int numClasses = alphabet.length + 1;
+
+        // subset construction (the dead state is always the first one)
+        List<BitSet> states = new ArrayList<>();
+        Map<BitSet, Integer> stateIndexes = new HashMap<>();
+        BitSet deadState = new BitSet();
+        states.add(deadState);
+        stateIndexes.put(deadState, DEAD_STATE);
+        BitSet startNfaStates = nfa.closure(nfa.startStates());
+        startState = stateIndexes.computeIfAbsent(startNfaStates, nfaStates -> {
+            states.add(nfaStates);
+            return states.size() - 1;
+        });
+        List<int[]> transitionList = new ArrayList<>();
+        for (int state = 0; state < states.size(); state++) {
+            BitSet nfaStates = states.get(state);
+            int[] stateTransitions = new int[numClasses];
+            for (int characterClass = 0; characterClass < numClasses; characterClass++) {
+                BitSet targetNfaStates = nfa.closure(nfa.step(nfaStates, characterClass, this));
+                Integer targetState = stateIndexes.get(targetNfaStates);
+                if (targetState == null) {
+                    if (states.size() >= MAX_STATES) {
+                        throw new IllegalArgumentException("The globs " + globs + " lead to an automaton with more than " + MAX_STATES + " states");
+                    }
+                    targetState = states.size();
+                    states.add(targetNfaStates);
+                    stateIndexes.put(targetNfaStates, targetState);
+                }
+                stateTransitions[characterClass] = targetState;
+            }
+            transitionList.add(stateTransitions);
+        }
+        transitions = transitionList.toArray(new int[0][]);
+        matches = new int[states.size()][];
+        for (int state = 0; state < states.size(); state++) {
+            matches[state] = nfa.getMatches(states.get(state));
+        }
+    }
+
+    /**
+     *
+     * @param path the absolute repository path
+     * @return the indices of all globs matching the given path (sorted ascending), an empty array if none is matching. Must not be modified.
+     */
+    @NotNull int[] match(@NotNull String path) {
+        int state = startState;
+        final int length = path.length();
+        for (int i = 0; i < length; i++) {
+            state = transitions[state][getCharacterClass(path.charAt(i))];
+            if (state == DEAD_STATE) {
+                return NO_MATCHES;
+            }
+        }
+        return matches[state];
+    }
+
+    int getNumStates() {
+        return transitions.length;
+    }
+
+    private int getCharacterClass(char c) {
+        int index = Arrays.binarySearch(alphabet, c);
+        return index >= 0 ? index + 1 : OTHER_CLASS;
+    }
+
+    /** Nondeterministic automaton only used during construction */
+    private static final class Nfa {
+        /** the character consumed by the transition of each literal state ({@code 0} for all other states) */
+        private final List<Character> literals = new ArrayList<>();
+        private final List<TokenType> tokenTypes = new ArrayList<>();
+        /** the index of the glob accepted in a state or {@code -1} */
+        private final List<Integer> acceptedGlobs = new ArrayList<>();
+        private final List<Integer> startStates = new ArrayList<>();
+
+        private enum TokenType {
+            /** consumes the literal and moves to the next state */
+            LITERAL,
+            /** consumes one character except slash and moves to the next state */
+            ANY_CHARACTER_IN_SEGMENT,
+            /** epsilon to next state, consumes any character except slash and stays */
+            ANY_CHARACTERS_IN_SEGMENT,
+            /** epsilon to next state, consumes any character and stays */
+            ANY_CHARACTERS,
+            /** final state of a glob, consumes slash and moves to next state */
+            END,
+            /** accepts descendants, consumes any character and stays */
+            DESCENDANTS
+        }
+
+        void add(@NotNull String glob, int globIndex, @NotNull TreeSet<Character> characters) {
+            if (!glob.startsWith("/")) {
+                throw new IllegalArgumentException("Glob '" + glob + "' must be absolute");
+            }
+            startStates.add(literals.size());
+            for (int i = 0; i < glob.length(); i++) {
+                char c = glob.charAt(i);
+                if (c == '*') {
+                    if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                        addState(TokenType.ANY_CHARACTERS, (char) 0, -1);
+                        i++;
+                    } else {
+                        addState(TokenType.ANY_CHARACTERS_IN_SEGMENT, (char) 0, -1);
+                    }
+                } else if (c == '?') {
+                    addState(TokenType.ANY_CHARACTER_IN_SEGMENT, (char) 0, -1);
+                } else {
+                    addState(TokenType.LITERAL, c, -1);
+                    characters.add(c);
+                }
+            }
+            addState(TokenType.END, (char) 0, globIndex);
+            addState(TokenType.DESCENDANTS, (char) 0, globIndex);
+        }
+
+        private void addState(@NotNull TokenType tokenType, char literal, int acceptedGlob) {
+            tokenTypes.add(tokenType);
+            literals.add(literal);
+            acceptedGlobs.add(acceptedGlob);
+        }
+
+        @NotNull BitSet startStates() {
+            BitSet states = new BitSet();
+            startStates.forEach(states::set);
+            return states;
+        }
+
+        /** adds all states reachable via epsilon transitions */
+        @NotNull BitSet closure(@NotNull BitSet states) {
+            BitSet closure = (BitSet) states.clone();
+            for (int state = states.nextSetBit(0); state >= 0; state = states.nextSetBit(state + 1)) {
+                int current = state;
+                while (tokenTypes.get(current) == TokenType.ANY_CHARACTERS_IN_SEGMENT || tokenTypes.get(current) == TokenType.ANY_CHARACTERS) {
+                    current++;
+                    closure.set(current);
+                }
+            }
+            return closure;
+        }
+
+        @NotNull BitSet step(@NotNull BitSet states, int characterClass, @NotNull GlobMatcher matcher) {
+            BitSet targets = new BitSet();
+            boolean isSlash = characterClass == matcher.slashClass;
+            for (int state = states.nextSetBit(0); state >= 0; state = states.nextSetBit(state + 1)) {
+                switch (tokenTypes.get(state)) {
+                    case LITERAL:
+                        if (characterClass != OTHER_CLASS && matcher.alphabet[characterClass - 1] == literals.get(state)) {
+                            targets.set(state + 1);
+                        }
+                        break;
+                    case ANY_CHARACTER_IN_SEGMENT:
+                        if (!isSlash) {
+                            targets.set(state + 1);
+                        }
+                        break;
+                    case ANY_CHARACTERS_IN_SEGMENT:
+                        if (!isSlash) {
+                            targets.set(state);
+                        }
+                        break;
+                    case ANY_CHARACTERS:
+                    case DESCENDANTS:
+                        targets.set(state);
+                        break;
+                    case END:
+                        if (isSlash) {
+                            targets.set(state + 1);
+                        }
+                        break;
+                    default:
+                        throw new IllegalStateException("Unexpected token type " + tokenTypes.get(state));
+                }
+            }
+            return targets;
+        }
+
+        @NotNull int[] getMatches(@NotNull BitSet states) {
+            TreeSet<Integer> globIndexes = new TreeSet<>();
+            for (int state = states.nextSetBit(0); state >= 0; state = states.nextSetBit(state + 1)) {
+                int acceptedGlob = acceptedGlobs.get(state);
+                if (acceptedGlob >= 0) {
+                    globIndexes.add(acceptedGlob);
+                }
+            }
+            if (globIndexes.isEmpty()) {
+                return NO_MATCHES;
+            }
+            return globIndexes.stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package biz.netcentric.filevault.validator.aem.cloud;
+
+/*-
+ * #%L
+ * AEM Cloud Validator
+ * %%
+ * Copyright (C) 2021 Netcentric - A Cognizant Digital Business
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.spi.commons.name.NameFactoryImpl;
+import org.apache.jackrabbit.util.Text;
+import org.apache.jackrabbit.vault.util.DocViewNode2;
+import org.apache.jackrabbit.vault.validation.spi.DocumentViewXmlValidator;
+import org.apache.jackrabbit.vault.validation.spi.NodeContext;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessage;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Detects patterns in Oak lucene index definitions which lead to long reindexing times or huge indexes.
+ * Analyzes the index definition node itself and all nodes below it (i.e. {@code indexRules}, their {@code properties} and {@code aggregates}).
+ * This relies on the document view nodes being passed in document order (i.e. each index definition node before its descendants).
+ */
+final class IndexDefinitionCostValidator implements DocumentViewXmlValidator {
+
+    static final String VIOLATION_MESSAGE_MISSING_INCLUDED_PATHS = "The index definition '%s' neither restricts the indexed content via 'includedPaths' nor the queries via 'queryPaths', therefore the whole repository needs to be traversed during reindexing.";
+    static final String VIOLATION_MESSAGE_MISSING_ASYNC = "The index definition '%s' does not set 'async', therefore it is updated synchronously with every commit.";
+    static final String VIOLATION_MESSAGE_MISSING_EVALUATE_PATH_RESTRICTIONS = "The index definition '%s' does not set 'evaluatePathRestrictions' to 'true', therefore path restrictions of queries need to be evaluated by traversing all index results.";
+    static final String VIOLATION_MESSAGE_NT_BASE_RULE = "The index rule '%s' applies to the catch-all node type 'nt:base', therefore all nodes in the indexed paths are indexed. Rather use a more specific node type.";
+    static final String VIOLATION_MESSAGE_REGEX_PROPERTY_FULLTEXT = "The regular expression property definition '%s' enables '%s', therefore the full text of all matching properties is indexed. Rather restrict the property definition to explicit property names.";
+
+    /**
+     * The detected cost patterns, each with its own severity.
+     */
+    enum Rule {
+        MISSING_INCLUDED_PATHS("indexWithoutIncludedPaths"),
+        MISSING_ASYNC("indexWithoutAsync"),
+        MISSING_EVALUATE_PATH_RESTRICTIONS("indexWithoutEvaluatePathRestrictions"),
+        NT_BASE_RULE("indexRuleForNtBase"),
+        REGEX_PROPERTY_FULLTEXT("regexPropertyWithFulltext");
+
+        private final @NotNull String id;
+
+        Rule(@NotNull String id) {
+            this.id = id;
+        }
+
+        @NotNull String getId() {
+            return id;
+        }
+
+        static @NotNull Rule fromId(@NotNull String id) {
+            for (Rule rule : values()) {
+                if (rule.id.equals(id)) {
+                    return rule;
+                }
+            }
+            throw new IllegalArgumentException("Unknown index definition cost rule '" + id + "'");
+        }
+    }
+
+    private static final String OAK_INDEX_SEGMENT = "/oak:index/";
+    private static final String NT_BASE = "nt:base";
+    private static final String NN_INDEX_RULES = "indexRules";
+    private static final String NN_PROPERTIES = "properties";
+    private static final String NN_AGGREGATES = "aggregates";
+    private static final Name PN_TYPE = NameFactoryImpl.getInstance().create(Name.NS_DEFAULT_URI, "type");
+    private static final Name PN_INCLUDED_PATHS = NameFactoryImpl.getInstance().create(Name.NS_DEFAULT_URI, "includedPaths");
+    private static final Name PN_QUERY_PATHS = NameFactoryImpl.getInstance().create(Name.NS_DEFAULT_URI, "queryPaths");
+    private static final Name PN_ASYNC = NameFactoryImpl.getInstance().create(Name.NS_DEFAULT_URI, "async");
+    private static final Name PN_EVALUATE_PATH_RESTRICTIONS = NameFactoryImpl.getInstance().create(Name.NS_DEFAULT_URI, "evaluatePathRestrictions");
+    private static final Name PN_IS_REGEXP = NameFactoryImpl.getInstance().create(Name.NS_DEFAULT_URI, "isRegexp");
+    private static final Name PN_NODE_SCOPE_INDEX = NameFactoryImpl.getInstance().create(Name.NS_DEFAULT_URI, "nodeScopeIndex");
+    private static final Name PN_ANALYZED = NameFactoryImpl.getInstance().create(Name.NS_DEFAULT_URI, "analyzed");
+
+    private final @NotNull Map<Rule, ValidationMessageSeverity> severities;
+    /** the paths of all lucene index definitions seen so far */
+    private final @NotNull Set<String> indexDefinitionPaths;
+
+    /**
+     *
+     * @param severities the severity per rule, rules without a severity are not evaluated
+     */
+    IndexDefinitionCostValidator(@NotNull Map<Rule, ValidationMessageSeverity> severities) {
+        this.severities = new EnumMap<>(Rule.class);
+        this.severities.putAll(severities);
+        this.indexDefinitionPaths = new HashSet<>();
+    }
+
+    @Override
+    public @Nullable Collection<ValidationMessage> validate(@NotNull DocViewNode2 node, @NotNull NodeContext nodeContext, boolean isRoot) {
+        String nodePath = nodeContext.getNodePath();
+        if (AemCloudValidator.INDEX_DEFINITION_PRIMARY_TYPE.equals(node.getPrimaryType().orElse(""))) {
+            // all other types are already reported by AemCloudValidator
+            if (!"lucene".equals(node.getPropertyValue(PN_TYPE).orElse(""))) {
+                return null;
+            }
+            indexDefinitionPaths.add(nodePath);
+            return validateIndexDefinition(node, nodePath);
+        }
+        String indexDefinitionPath = getIndexDefinitionPath(nodePath);
+        if (indexDefinitionPath != null) {
+            return validateIndexDefinitionChild(node, nodePath, nodePath.substring(indexDefinitionPath.length() + 1));
+        }
+        return null;
+    }
+
+    private @Nullable Collection<ValidationMessage> validateIndexDefinition(@NotNull DocViewNode2 node, @NotNull String nodePath) {
+        Collection<ValidationMessage> messages = null;
+        if (!node.hasProperty(PN_INCLUDED_PATHS) && !node.hasProperty(PN_QUERY_PATHS)) {
+            messages = addMessage(messages, Rule.MISSING_INCLUDED_PATHS, String.format(VIOLATION_MESSAGE_MISSING_INCLUDED_PATHS, nodePath));
+        }
+        if (!node.hasProperty(PN_ASYNC)) {
+            messages = addMessage(messages, Rule.MISSING_ASYNC, String.format(VIOLATION_MESSAGE_MISSING_ASYNC, nodePath));
+        }
+        if (!Boolean.parseBoolean(node.getPropertyValue(PN_EVALUATE_PATH_RESTRICTIONS).orElse(""))) {
+            messages = addMessage(messages, Rule.MISSING_EVALUATE_PATH_RESTRICTIONS, String.format(VIOLATION_MESSAGE_MISSING_EVALUATE_PATH_RESTRICTIONS, nodePath));
+        }
+        return messages;
+    }
+
+    /**
+     *
+     * @param node the node below an index definition
+     * @param nodePath the absolute node path
+     * @param relativePath the node path relative to the index definition
+     * @return the messages or {@code null}
+     */
+    private @Nullable Collection<ValidationMessage> validateIndexDefinitionChild(@NotNull DocViewNode2 node, @NotNull String nodePath, @NotNull String relativePath) {
+        String[] segments = Text.explode(relativePath, '/');
+        // indexRules/<nodeType> or aggregates/<nodeType>
+        if (segments.length == 2 && (NN_INDEX_RULES.equals(segments[0]) || NN_AGGREGATES.equals(segments[0])) && NT_BASE.equals(segments[1])) {
+            return addMessage(null, Rule.NT_BASE_RULE, String.format(VIOLATION_MESSAGE_NT_BASE_RULE, nodePath));
+        }
+        // indexRules/<nodeType>/properties/<propertyDefinition>
+        if (segments.length == 4 && NN_INDEX_RULES.equals(segments[0]) && NN_PROPERTIES.equals(segments[2])
+                && Boolean.parseBoolean(node.getPropertyValue(PN_IS_REGEXP).orElse(""))) {
+            Collection<ValidationMessage> messages = null;
+            if (Boolean.parseBoolean(node.getPropertyValue(PN_NODE_SCOPE_INDEX).orElse(""))) {
+                messages = addMessage(messages, Rule.REGEX_PROPERTY_FULLTEXT, String.format(VIOLATION_MESSAGE_REGEX_PROPERTY_FULLTEXT, nodePath, PN_NODE_SCOPE_INDEX.getLocalName()));
+            }
+            if (Boolean.parseBoolean(node.getPropertyValue(PN_ANALYZED).orElse(""))) {
+                messages = addMessage(messages, Rule.REGEX_PROPERTY_FULLTEXT, String.format(VIOLATION_MESSAGE_REGEX_PROPERTY_FULLTEXT, nodePath, PN_ANALYZED.getLocalName()));
+            }
+            return messages;
+        }
+        return null;
+    }
+
+    /**
+     *
+     * @param nodePath a node path
+     * @return the path of the index definition containing the given node or {@code null} if the node is not below an index definition
+     */
+    private @Nullable String getIndexDefinitionPath(@NotNull String nodePath) {
+        // cheap pre-check as index definitions are always located below an oak:index node
+        if (indexDefinitionPaths.isEmpty() || !nodePath.contains(OAK_INDEX_SEGMENT)) {
+            return null;
+        }
+        for (String parent = Text.getRelativeParent(nodePath, 1); parent.length() > 1; parent = Text.getRelativeParent(parent, 1)) {
+            if (indexDefinitionPaths.contains(parent)) {
+                return parent;
+            }
+        }
+        return null;
+    }
+
+    private @Nullable Collection<ValidationMessage> addMessage(@Nullable Collection<ValidationMessage> messages, @NotNull Rule rule, @NotNull String message) {
+        ValidationMessageSeverity severity = severities.get(rule);
+        if (severity == null) {
+            return messages;
+        }
+        return AemCloudValidator.addMessage(messages, new RuleValidationMessage(rule.getId(), severity, message));
+    }
+
+    @Override
+    public @Nullable Collection<ValidationMessage> done() {
+        return null;
+    }
+}
@@ -0,0 +1,262 @@
+package biz.netcentric.filevault.validator.aem.cloud;
+
+/*-
+ * #%L
+ * AEM Cloud Validator
+ * %%
+ * Copyright (C) 2021 Netcentric - A Cognizant Digital Business
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.apache.jackrabbit.vault.packaging.PackageId;
+import org.apache.jackrabbit.vault.packaging.PackageProperties;
+import org.apache.jackrabbit.vault.util.DocViewNode2;
+import org.apache.jackrabbit.vault.validation.spi.DocumentViewXmlValidator;
+import org.apache.jackrabbit.vault.validation.spi.MetaInfPathValidator;
+import org.apache.jackrabbit.vault.validation.spi.NodeContext;
+import org.apache.jackrabbit.vault.validation.spi.NodePathValidator;
+import org.apache.jackrabbit.vault.validation.spi.PropertiesValidator;
+import org.apache.jackrabbit.vault.validation.spi.ValidationContext;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessage;
+import org.apache.jackrabbit.vault.validation.spi.Validator;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import biz.netcentric.filevault.validator.aem.cloud.ValidatorMetrics.Callback;
+import biz.netcentric.filevault.validator.aem.cloud.ValidatorMetrics.CallbackTimers;
+
+/**
+ * Delegates to multiple validators (like {@link CompositeValidator}) and measures the number of invocations and the time spent in each callback per validator.
+ * Only used if metrics are enabled, so there is no overhead otherwise.
+ * The split into mutable and immutable nodes is recorded by the {@link AemCloudValidator} itself (see {@link AemCloudValidator#setMetrics(ValidatorMetrics)}) as it classifies all paths anyway.
+ * <p>
+ * The metrics of all sub packages are summed up in the outermost container package. Once the outermost package is done
+ * a JSON summary with the metrics of the package itself, of each sub package and the total is written to the metrics directory.
+ */
+final class InstrumentedValidator implements PackageValidator {
+
+    /** the context attribute of the outermost package containing the {@link ContainerMetrics} */
+    static final String ATTRIBUTE_CONTAINER_METRICS = "netcentric-aem-cloud.containerMetrics";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(InstrumentedValidator.class);
+
+    private final @NotNull PackageValidator delegate;
+    private final @NotNull ValidatorMetrics metrics;
+    private final @Nullable PackageId packageId;
+    private final @NotNull Path packageRootPath;
+    private final @NotNull ContainerMetrics containerMetrics;
+    private final boolean isOutermostPackage;
+
+    /**
+     *
+     * @param validators the validators to delegate to, each one is timed separately
+     * @param context the validation context of the package
+     * @param metricsDirectory the directory to which the metrics are written once the outermost package is done
+     */
+    InstrumentedValidator(@NotNull List<? extends Validator> validators, @NotNull ValidationContext context, @NotNull Path metricsDirectory) {
+        this.metrics = new ValidatorMetrics();
+        List<TimedValidator> timedValidators = new ArrayList<>(validators.size());
+        for (Validator validator : validators) {
+            timedValidators.add(new TimedValidator(validator, metrics.getTimers(validator.getClass().getSimpleName())));
+        }
+        this.delegate = new CompositeValidator(timedValidators);
+        this.packageId = context.getProperties().getId();
+        this.packageRootPath = context.getPackageRootPath();
+        ValidationContext outermostContext = context;
+        while (outermostContext.getContainerValidationContext() != null) {
+            outermostContext = outermostContext.getContainerValidationContext();
+        }
+        this.isOutermostPackage = outermostContext == context;
+        ContainerMetrics existingContainerMetrics = (ContainerMetrics) outermostContext.getAttribute(ATTRIBUTE_CONTAINER_METRICS);
+        if (existingContainerMetrics == null || isOutermostPackage) {
+            // the outermost package is always validated first
+            existingContainerMetrics = new ContainerMetrics(metricsDirectory);
+            outermostContext.setAttribute(ATTRIBUTE_CONTAINER_METRICS, existingContainerMetrics);
+        }
+        this.containerMetrics = existingContainerMetrics;
+    }
+
+    @Override
+    public @Nullable Collection<ValidationMessage> validate(@NotNull String nodePath) {
+        metrics.recordInvocation(Callback.NODE_PATH);
+        metrics.nodes.increment();
+        return countMessages(delegate.validate(nodePath));
+    }
+
+    @Override
+    public @Nullable Collection<ValidationMessage> validate(@NotNull DocViewNode2 node, @NotNull NodeContext nodeContext, boolean isRoot) {
+        metrics.recordInvocation(Callback.DOCVIEW_NODE);
+        metrics.docViewNodes.increment();
+        if (AemCloudValidator.INDEX_DEFINITION_PRIMARY_TYPE.equals(node.getPrimaryType().orElse(""))) {
+            metrics.indexDefinitions.increment();
+        }
+        return countMessages(delegate.validate(node, nodeContext, isRoot));
+    }
+
+    @Override
+    public @Nullable Collection<ValidationMessage> validateMetaInfPath(@NotNull Path filePath) {
+        metrics.recordInvocation(Callback.META_INF_PATH);
+        metrics.metaInfPaths.increment();
+        return countMessages(delegate.validateMetaInfPath(filePath));
+    }
+
+    @Override
+    public @Nullable Collection<ValidationMessage> validate(@NotNull PackageProperties properties) {
+        metrics.recordInvocation(Callback.PACKAGE_PROPERTIES);
+        return countMessages(delegate.validate(properties));
+    }
+
+    @Override
+    public @Nullable Collection<ValidationMessage> done() {
+        metrics.recordInvocation(Callback.DONE);
+        Collection<ValidationMessage> messages = countMessages(delegate.done());
+        String packageSummary = toJson(new StringBuilder()).toString();
+        containerMetrics.total.add(metrics);
+        if (isOutermostPackage) {
+            containerMetrics.write(packageId, packageSummary);
+        } else {
+            containerMetrics.subPackageSummaries.add(packageSummary);
+        }
+        return messages;
+    }
+
+    private @Nullable Collection<ValidationMessage> countMessages(@Nullable Collection<ValidationMessage> messages) {
+        if (messages != null) {
+            metrics.messages.add(messages.size());
+        }
+        return messages;
+    }
+
+    @NotNull ValidatorMetrics getMetrics() {
+        return metrics;
+    }
+
+    private @NotNull StringBuilder toJson(@NotNull StringBuilder json) {
+        json.append("{\"package\":");
+        Json.appendString(json, packageId != null ? packageId.toString() : null);
+        json.append(",\"packageRootPath\":");
+        Json.appendString(json, packageRootPath.toString());
+        json.append(",\"metrics\":");
+        return metrics.toJson(json).append('}');
+    }
+
+    /**
+     * Measures the callbacks of a single validator. Callbacks of interfaces not implemented by the validator are neither forwarded nor measured.
+     */
+    static final class TimedValidator implements PackageValidator {
+
+        private final @NotNull Validator validator;
+        private final @Nullable NodePathValidator nodePathValidator;
+        private final @Nullable DocumentViewXmlValidator documentViewXmlValidator;
+        private final @Nullable MetaInfPathValidator metaInfPathValidator;
+        private final @Nullable PropertiesValidator propertiesValidator;
+        private final @NotNull CallbackTimers timers;
+
+        TimedValidator(@NotNull Validator validator, @NotNull CallbackTimers timers) {
+            this.validator = validator;
+            this.nodePathValidator = validator instanceof NodePathValidator ? (NodePathValidator) validator : null;
+            this.documentViewXmlValidator = validator instanceof DocumentViewXmlValidator ? (DocumentViewXmlValidator) validator : null;
+            this.metaInfPathValidator = validator instanceof MetaInfPathValidator ? (MetaInfPathValidator) validator : null;
+            this.propertiesValidator = validator instanceof PropertiesValidator ? (PropertiesValidator) validator : null;
+            this.timers = timers;
+        }
+
+        @Override
+        public @Nullable Collection<ValidationMessage> validate(@NotNull String nodePath) {
+            if (nodePathValidator == null) {
+                return null;
+            }
+            long start = System.nanoTime();
+            Collection<ValidationMessage> messages = nodePathValidator.validate(nodePath);
+            timers.recordInvocation(Callback.NODE_PATH, System.nanoTime() - start);
+            return messages;
+        }
+
+        @Override
+        public @Nullable Collection<ValidationMessage> validate(@NotNull DocViewNode2 node, @NotNull NodeContext nodeContext, boolean isRoot) {
+            if (documentViewXmlValidator == null) {
+                return null;
+            }
+            long start = System.nanoTime();
+            Collection<ValidationMessage> messages = documentViewXmlValidator.validate(node, nodeContext, isRoot);
+            timers.recordInvocation(Callback.DOCVIEW_NODE, System.nanoTime() - start);
+            return messages;
+        }
+
+        @Override
+        public @Nullable Collection<ValidationMessage> validateMetaInfPath(@NotNull Path filePath) {
+            if (metaInfPathValidator == null) {
+                return null;
+            }
+            long start = System.nanoTime();
+            Collection<ValidationMessage> messages = metaInfPathValidator.validateMetaInfPath(filePath);
+            timers.recordInvocation(Callback.META_INF_PATH, System.nanoTime() - start);
+            return messages;
+        }
+
+        @Override
+        public @Nullable Collection<ValidationMessage> validate(@NotNull PackageProperties properties) {
+            if (propertiesValidator == null) {
+                return null;
+            }
+            long start = System.nanoTime();
+            Collection<ValidationMessage> messages = propertiesValidator.validate(properties);
+            timers.recordInvocation(Callback.PACKAGE_PROPERTIES, System.nanoTime() - start);
+            return messages;
+        }
+
+        @Override
+        public @Nullable Collection<ValidationMessage> done() {
+            long start = System.nanoTime();
+            Collection<ValidationMessage> messages = validator.done();
+            timers.recordInvocation(Callback.DONE, System.nanoTime() - start);
+            return messages;
+        }
+    }
+
+    /** The metrics of the outermost container package and all its sub packages */
+    static final class ContainerMetrics {
+        private final @NotNull Path directory;
+        final @NotNull ValidatorMetrics total;
+        final @NotNull Queue<String> subPackageSummaries;
+
+        ContainerMetrics(@NotNull Path directory) {
+            this.directory = directory;
+            this.total = new ValidatorMetrics();
+            this.subPackageSummaries = new ConcurrentLinkedQueue<>();
+        }
+
+        void write(@Nullable PackageId packageId, @NotNull String packageSummary) {
+            StringBuilder json = new StringBuilder("{\"package\":").append(packageSummary).append(",\"subPackages\":[");
+            json.append(String.join(",", subPackageSummaries));
+            json.append("],\"total\":");
+            total.toJson(json).append("}\n");
+            String fileName = (packageId != null ? packageId.toString() : "unknown").replaceAll("[^A-Za-z0-9._-]", "_") + "-metrics.json";
+            Path file = directory.resolve(fileName);
+            try {
+                Files.createDirectories(directory);
+                Files.write(file, json.toString().getBytes(StandardCharsets.UTF_8));
+                LOGGER.info("Written validator metrics to {}", file);
+            } catch (IOException e) {
+                LOGGER.warn("Could not write validator metrics to {}", file, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package biz.netcentric.filevault.validator.aem.cloud;
+
+/*-
+ * #%L
+ * AEM Cloud Validator
+ * %%
+ * Copyright (C) 2021 Netcentric - A Cognizant Digital Business
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+
+import org.apache.jackrabbit.vault.util.DocViewNode2;
+import org.apache.jackrabbit.vault.util.DocViewProperty2;
+import org.apache.jackrabbit.vault.validation.spi.DocumentViewXmlValidator;
+import org.apache.jackrabbit.vault.validation.spi.NodeContext;
+import org.apache.jackrabbit.vault.validation.spi.NodePathValidator;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessage;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Measures the volume of mutable content in a package (number of nodes, number of properties and approximate inline bytes) per top-level path
+ * and reports each exceeded budget once the package is done.
+ * Mutable content is installed on AEMaaCS publish via the Sling Content Distribution journal, therefore huge volumes block the replication queue.
+ * <p>
+ * The byte volume only covers the properties serialized in document view XML files (measured as the number of characters of the property names and values),
+ * as the content of binary files is not exposed to validators.
+ */
+final class MutableContentVolumeValidator implements NodePathValidator, DocumentViewXmlValidator {
+
+    static final String VIOLATION_MESSAGE_BUDGET_EXCEEDED = "The package contains %d mutable %s which exceeds the budget of %d (by top-level path: %s). Huge volumes of mutable content block the content distribution queue on publish, rather create the content via repoinit scripts or a migration job.";
+    static final String RULE_ID = "mutableContentBudget";
+
+    /** The measured volume metrics */
+    enum Metric {
+        NODES("nodes", volume -> volume.nodes),
+        PROPERTIES("properties", volume -> volume.properties),
+        BYTES("bytes", volume -> volume.bytes);
+
+        private final @NotNull String label;
+        private final @NotNull ToLongFunction<Volume> getter;
+
+        Metric(@NotNull String label, @NotNull ToLongFunction<Volume> getter) {
+            this.label = label;
+            this.getter = getter;
+        }
+
+        long get(@NotNull Volume volume) {
+            return getter.applyAsLong(volume);
+        }
+    }
+
+    private final @NotNull PathClassifier pathClassifier;
+    /** the budget per metric, negative values mean no budget */
+    private final long[] budgets;
+    private final @NotNull ValidationMessageSeverity severity;
+    private final @NotNull Map<String, Volume> volumesByTopLevelPath;
+    /** the volume of the last accessed top-level path (as most subsequent nodes share the same one) */
+    private @Nullable Volume lastVolume;
+    /** FileVault passes the paths of folders with a {@code .content.xml} twice */
+    private final @NotNull RepeatedNodePathFilter repeatedPathFilter;
+
+    /**
+     *
+     * @param pathClassifier the classifier to distinguish mutable from immutable paths
+     * @param budgets the budget for each {@link Metric} (in the order of the enum constants), negative values mean no budget
+     * @param severity the severity to use for exceeded budgets
+     */
+    MutableContentVolumeValidator(@NotNull PathClassifier pathClassifier, long[] budgets, @NotNull ValidationMessageSeverity severity) {
+        if (budgets.length != Metric.values().length) {
+            throw new IllegalArgumentException("Exactly " + Metric.values().length + " budgets required but got " + budgets.length);
+        }
+        this.pathClassifier = pathClassifier;
+        this.budgets = budgets.clone();
+        this.severity = severity;
+        this.volumesByTopLevelPath = new HashMap<>();
+        this.repeatedPathFilter = new RepeatedNodePathFilter();
+    }
+
+    @Override
+    public @Nullable Collection<ValidationMessage> validate(@NotNull String nodePath) {
+        if (repeatedPathFilter.isRepeated(nodePath)) {
+            return null;
+        }
+        Volume volume = getMutableVolume(nodePath);
+        if (volume != null) {
+            volume.nodes++;
+        }
+        return null;
+    }
+
+    @Override
+    public @Nullable Collection<ValidationMessage> validate(@NotNull DocViewNode2 node, @NotNull NodeContext nodeContext, boolean isRoot) {
+        Volume volume = getMutableVolume(nodeContext.getNodePath());
+        if (volume != null) {
+            for (DocViewProperty2 property : node.getProperties()) {
+                volume.properties++;
+                volume.bytes += property.getName().getLocalName().length();
+                for (String value : property.getStringValues()) {
+                    volume.bytes += value.length();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     *
+     * @param nodePath the node path
+     * @return the volume of the top-level path containing the given path or {@code null} in case the path is not mutable
+     */
+    private @Nullable Volume getMutableVolume(@NotNull String nodePath) {
+        if (nodePath.length() <= 1 || !PathClassifier.isMutable(pathClassifier.classify(nodePath))) {
+            return null;
+        }
+        Volume volume = lastVolume;
+        if (volume != null && isSameOrDescendant(nodePath, volume.topLevelPath)) {
+            return volume;
+        }
+        int end = nodePath.indexOf('/', 1);
+        String topLevelPath = end < 0 ? nodePath : nodePath.substring(0, end);
+        volume = volumesByTopLevelPath.computeIfAbsent(topLevelPath, Volume::new);
+        lastVolume = volume;
+        return volume;
+    }
+
+    private static boolean isSameOrDescendant(@NotNull String path, @NotNull String ancestorPath) {
+        return path.startsWith(ancestorPath) && (path.length() == ancestorPath.length() || path.charAt(ancestorPath.length()) == '/');
+    }
+
+    @Override
+    public @Nullable Collection<ValidationMessage> done() {
+        Collection<ValidationMessage> messages = null;
+        for (Metric metric : Metric.values()) {
+            long budget = budgets[metric.ordinal()];
+            if (budget < 0) {
+                continue;
+            }
+            long total = volumesByTopLevelPath.values().stream().mapToLong(metric::get).sum();
+            if (total > budget) {
+                String breakdown = volumesByTopLevelPath.values().stream()
+                        .sorted(Comparator.comparingLong(metric::get).reversed().thenComparing(volume -> volume.topLevelPath))
+                        .map(Volume::toString)
+                        .collect(Collectors.joining(", "));
+                messages = AemCloudValidator.addMessage(messages, new RuleValidationMessage(RULE_ID, severity,
+                        String.format(VIOLATION_MESSAGE_BUDGET_EXCEEDED, total, metric.label, budget, breakdown)));
+            }
+        }
+        return messages;
+    }
+
+    /** The mutable volume below one top-level path */
+    static final class Volume {
+        private final @NotNull String topLevelPath;
+        private long nodes;
+        private long properties;
+        private long bytes;
+
+        Volume(@NotNull String topLevelPath) {
+            this.topLevelPath = topLevelPath;
+        }
+
+        @Override
+        public String toString() {
+            return topLevelPath + ": " + nodes + " nodes, " + properties + " properties, " + bytes + " bytes";
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package biz.netcentric.filevault.validator.aem.cloud;
+
+/*-
+ * #%L
+ * AEM Cloud Validator
+ * %%
+ * Copyright (C) 2021 Netcentric - A Cognizant Digital Business
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+
+import java.util.Collection;
+import java.util.List;
+
+import javax.jcr.PropertyType;
+
+import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.vault.util.DocViewNode2;
+import org.apache.jackrabbit.vault.util.DocViewProperty2;
+import org.apache.jackrabbit.vault.validation.spi.DocumentViewXmlValidator;
+import org.apache.jackrabbit.vault.validation.spi.NodeContext;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessage;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Detects oversized properties serialized inline in document view XML files, i.e. properties whose values exceed a given size (e.g. base64 encoded binaries)
+ * or multi-value properties with too many values.
+ * The sizes are calculated from the string values of the parsed properties without copying or decoding them.
+ */
+final class OversizedPropertyValidator implements DocumentViewXmlValidator {
+
+    static final String VIOLATION_MESSAGE_OVERSIZED_PROPERTY_VALUE = "Property '%s' (type '%s') of node '%s' has inline value(s) of approximately %d bytes which exceeds the limit of %d bytes. Large inline values slow down parsing, installation and replication, rather move the data into a separate binary file or a DAM asset.";
+    static final String VIOLATION_MESSAGE_TOO_MANY_PROPERTY_VALUES = "Multi-value property '%s' (type '%s') of node '%s' has %d values which exceeds the limit of %d. Huge multi-value properties slow down parsing, installation and replication, rather move the data into a separate binary file or a DAM asset.";
+    static final String RULE_ID_OVERSIZED_PROPERTY_VALUE = "oversizedPropertyValue";
+    static final String RULE_ID_TOO_MANY_PROPERTY_VALUES = "tooManyPropertyValues";
+
+    /** the limit in bytes, {@code -1} for no limit */
+    private final long maxValueSize;
+    /** the limit of values per multi-value property, {@code -1} for no limit */
+    private final int maxNumValues;
+    private final @NotNull ValidationMessageSeverity severity;
+
+    /**
+     *
+     * @param maxValueSize the maximum approximate size in bytes of all values of a property (binaries are measured decoded), {@code -1} for no limit
+     * @param maxNumValues the maximum number of values of a multi-value property, {@code -1} for no limit
+     * @param severity the severity of violations
+     */
+    OversizedPropertyValidator(long maxValueSize, int maxNumValues, @NotNull ValidationMessageSeverity severity) {
+        this.maxValueSize = maxValueSize;
+        this.maxNumValues = maxNumValues;
+        this.severity = severity;
+    }
+
+    @Override
+    public @Nullable Collection<ValidationMessage> validate(@NotNull DocViewNode2 node, @NotNull NodeContext nodeContext, boolean isRoot) {
+        Collection<ValidationMessage> messages = null;
+        for (DocViewProperty2 property : node.getProperties()) {
+            // the list is not copied by the getter
+            List<String> values = property.getStringValues();
+            if (maxNumValues >= 0 && values.size() > maxNumValues) {
+                messages = AemCloudValidator.addMessage(messages, new RuleValidationMessage(RULE_ID_TOO_MANY_PROPERTY_VALUES, severity, String.format(VIOLATION_MESSAGE_TOO_MANY_PROPERTY_VALUES,
+                        getName(property.getName()), PropertyType.nameFromValue(property.getType()), nodeContext.getNodePath(), values.size(), maxNumValues)));
+            }
+            if (maxValueSize >= 0) {
+                long size = getSize(property.getType(), values);
+                if (size > maxValueSize) {
+                    messages = AemCloudValidator.addMessage(messages, new RuleValidationMessage(RULE_ID_OVERSIZED_PROPERTY_VALUE, severity, String.format(VIOLATION_MESSAGE_OVERSIZED_PROPERTY_VALUE,
+                            getName(property.getName()), PropertyType.nameFromValue(property.getType()), nodeContext.getNodePath(), size, maxValueSize)));
+                }
+            }
+        }
+        return messages;
+    }
+
+    @Override
+    public @Nullable Collection<ValidationMessage> done() {
+        return null;
+    }
+
+    /**
+     *
+     * @param type the property type
+     * @param values the string values
+     * @return the approximate size in bytes of all values (for binaries the decoded size, for all other types the number of characters)
+     */
+    static long getSize(int type, @NotNull List<String> values) {
+        long size = 0;
+        for (String value : values) {
+            size += value.length();
+        }
+        if (type == PropertyType.BINARY) {
+            // each 4 base64 characters encode 3 bytes
+            size = size / 4 * 3;
+        }
+        return size;
+    }
+
+    /**
+     *
+     * @param name the property name
+     * @return the local name for names without namespace, otherwise the expanded name
+     */
+    private static @NotNull String getName(@NotNull Name name) {
+        return name.getNamespaceURI().isEmpty() ? name.getLocalName() : name.toString();
+    }
+}
@@ -0,0 +1,26 @@
+package biz.netcentric.filevault.validator.aem.cloud;
+
+/*-
+ * #%L
+ * AEM Cloud Validator
+ * %%
+ * Copyright (C) 2021 Netcentric - A Cognizant Digital Business
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+
+import org.apache.jackrabbit.vault.validation.spi.DocumentViewXmlValidator;
+import org.apache.jackrabbit.vault.validation.spi.MetaInfPathValidator;
+import org.apache.jackrabbit.vault.validation.spi.NodePathValidator;
+import org.apache.jackrabbit.vault.validation.spi.PropertiesValidator;
+
+/**
+ * Combines all validator interfaces implemented by {@link AemCloudValidator}.
+ * Allows to decorate the validator without losing any of its callbacks.
+ */
+interface PackageValidator extends NodePathValidator, MetaInfPathValidator, DocumentViewXmlValidator, PropertiesValidator {
+}
@@ -0,0 +1,183 @@
+package biz.netcentric.filevault.validator.aem.cloud;
+
+/*-
+ * #%L
+ * AEM Cloud Validator
+ * %%
+ * Copyright (C) 2021 Netcentric - A Cognizant Digital Business
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Classifies repository paths with a single pass over their characters.
+ * All configured path prefixes are compiled into one character trie, so the costs of {@link #classify(String)} only depend on the length of the given path
+ * but not on the number of configured prefixes. Classification does not allocate any objects.
+ * <p>
+ * Two kinds of prefixes are supported:
+ * <ul>
+ * <li>subtree prefixes match the path itself and all its descendants (i.e. {@code /apps} matches {@code /apps} and {@code /apps/test} but not {@code /appsfoo}).</li>
+ * <li>plain prefixes match all paths starting with the given string (i.e. {@code /libs} matches {@code /libs} and {@code /libsfoo}).</li>
+ * </ul>
+ * Each prefix is associated with a bit mask of flags. The result of a classification is the bitwise OR of the flags of all matching prefixes.
+ * Instances are immutable and therefore thread-safe.
+ */
+final class PathClassifier {
+
+    /** Flag for paths which are immutable in AEMaaCS */
+    static final int IMMUTABLE = 1;
+    /** Flag for paths which are writable by the service user used by the Content Distribution Journal Importer on AEMaaCS publish */
+    static final int WRITABLE_BY_DISTRIBUTION_IMPORTER = 1 << 1;
+    /** Flag for paths starting with {@code /libs} */
+    static final int LIBS = 1 << 2;
+
+    private static final int NO_STATE = -1;
+
+    /** the outgoing edge labels per state (sorted ascending) */
+    private final char[][] labels;
+    /** the target states per state (same order as {@link #labels}) */
+    private final int[][] targets;
+    /** the flags of subtree prefixes ending in a state, only applied at a segment boundary */
+    private final int[] subtreeFlags;
+    /** the flags of plain prefixes ending in a state, applied as soon as the state is reached */
+    private final int[] prefixFlags;
+
+    /**
+     *
+     * @param subtreePrefixes the subtree prefixes with their flags
+     * @param plainPrefixes the plain prefixes with their flags
+     */
+    PathClassifier(@NotNull Map<String, Integer> subtreePrefixes, @NotNull Map<String, Integer> plainPrefixes) {
+        TrieNode root = new TrieNode();
+        for (Map.Entry<String, Integer> entry : subtreePrefixes.entrySet()) {
+            root.add(entry.getKey()).subtreeFlags |= entry.getValue();
+        }
+        for (Map.Entry<String, Integer> entry : plainPrefixes.entrySet()) {
+            root.add(entry.getKey()).prefixFlags |= entry.getValue();
+        }
+        // flatten the trie into arrays (breadth first)
+        List<TrieNode> nodes = new ArrayList<>();
+        nodes.add(root);
+        for (int i = 0; i < nodes.size(); i++) {
+            TrieNode node = nodes.get(i);
+            node.state = i;
+            nodes.addAll(node.children.values());
+        }
+        int numStates = nodes.size();
+        labels = new char[numStates][];
+        targets = new int[numStates][];
+        subtreeFlags = new int[numStates];
+        prefixFlags = new int[numStates];
+        for (TrieNode node : nodes) {
+            int numChildren = node.children.size();
+            char[] stateLabels = new char[numChildren];
+            int[] stateTargets = new int[numChildren];
+            int n = 0;
+            for (Map.Entry<Character, TrieNode> child : node.children.entrySet()) {
+                stateLabels[n] = child.getKey();
+                stateTargets[n] = child.getValue().state;
+                n++;
+            }
+            labels[node.state] = stateLabels;
+            targets[node.state] = stateTargets;
+            subtreeFlags[node.state] = node.subtreeFlags;
+            prefixFlags[node.state] = node.prefixFlags;
+        }
+    }
+
+    /**
+     *
+     * @param path the absolute repository path
+     * @return the bitwise OR of the flags of all prefixes matching the given path
+     */
+    int classify(@NotNull String path) {
+        int flags = 0;
+        int state = 0;
+        final int length = path.length();
+        for (int i = 0; i < length; i++) {
+            char c = path.charAt(i);
+            if (c == '/') {
+                flags |= subtreeFlags[state];
+            }
+            state = next(state, c);
+            if (state == NO_STATE) {
+                return flags;
+            }
+            flags |= prefixFlags[state];
+        }
+        return flags | subtreeFlags[state];
+    }
+
+    private int next(int state, char c) {
+        int index = Arrays.binarySearch(labels[state], c);
+        return index >= 0 ? targets[state][index] : NO_STATE;
+    }
+
+    static boolean isMutable(int flags) {
+        return (flags & IMMUTABLE) == 0;
+    }
+
+    static boolean isWritableByDistributionImporter(int flags) {
+        return (flags & WRITABLE_BY_DISTRIBUTION_IMPORTER) != 0;
+    }
+
+    static boolean isLibs(int flags) {
+        return (flags & LIBS) != 0;
+    }
+
+    /**
+     * 
+     * @param prefixes the prefixes
+     * @param flags the flags to assign to each of the prefixes
+     * @return a new map which assigns the given flags to each of the given prefixes
+     */
+    static @NotNull Map<String, Integer> toFlags(@NotNull Collection<String> prefixes, int flags) {
+        Map<String, Integer> result = new TreeMap<>();
+        for (String prefix : prefixes) {
+            result.put(prefix, flags);
+        }
+        return result;
+    }
+
+    /**
+     * 
+     * @param target the map to merge into
+     * @param source the map to merge from
+     * @return the target map with all flags from the source map being merged via bitwise OR
+     */
+    static @NotNull Map<String, Integer> mergeFlags(@NotNull Map<String, Integer> target, @NotNull Map<String, Integer> source) {
+        for (Map.Entry<String, Integer> entry : source.entrySet()) {
+            target.merge(entry.getKey(), entry.getValue(), (a, b) -> a | b);
+        }
+        return target;
+    }
+
+    /** Mutable trie node only used during construction */
+    private static final class TrieNode {
+        private final Map<Character, TrieNode> children = new TreeMap<>();
+        private int subtreeFlags;
+        private int prefixFlags;
+        private int state;
+
+        TrieNode add(String prefix) {
+            TrieNode node = this;
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node.children.computeIfAbsent(prefix.charAt(i), c -> new TrieNode());
+            }
+            return node;
+        }
+    }
+}
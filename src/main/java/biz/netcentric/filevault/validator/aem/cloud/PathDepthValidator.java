@@ -0,0 +1,249 @@
+package biz.netcentric.filevault.validator.aem.cloud;
+
+/*-
+ * #%L
+ * AEM Cloud Validator
+ * %%
+ * Copyright (C) 2021 Netcentric - A Cognizant Digital Business
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.function.IntPredicate;
+import java.util.stream.Collectors;
+
+import org.apache.jackrabbit.vault.validation.spi.NodePathValidator;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessage;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Analyzes the depth (number of path segments) and length (number of characters) of all node paths per top-level path.
+ * Reports the top-level paths containing nodes exceeding the given limits and optionally a histogram of depths and lengths once the package is done.
+ * Only counters and the {@link #MAX_NUM_WORST_OFFENDERS} deepest and longest paths are kept per top-level path, i.e. the memory consumption does not depend on the number of nodes.
+ */
+final class PathDepthValidator implements NodePathValidator {
+
+    static final String VIOLATION_MESSAGE_TOO_DEEP = "%d node(s) below '%s' exceed the maximum depth of %d (deepest: %s). Very deep hierarchies slow down repository traversals and index updates, rather flatten the structure.";
+    static final String VIOLATION_MESSAGE_TOO_LONG = "%d node(s) below '%s' exceed the maximum path length of %d characters (longest: %s). Very long paths slow down repository traversals and index updates and get close to the repository's path and name limits, rather use shorter node names.";
+    static final String MESSAGE_PATH_STATISTICS = "Path statistics of the %d node(s) below '%s': depth histogram %s, length histogram %s, deepest: %s, longest: %s";
+    static final String RULE_ID_TOO_DEEP = "pathTooDeep";
+    static final String RULE_ID_TOO_LONG = "pathTooLong";
+    static final String RULE_ID_STATISTICS = "pathStatistics";
+    static final int MAX_NUM_WORST_OFFENDERS = 5;
+    /** the number of characters covered by one bucket of the length histogram */
+    static final int LENGTH_BUCKET_SIZE = 100;
+
+    /** the maximum depth, {@code -1} for no limit */
+    private final int maxDepth;
+    /** the maximum length, {@code -1} for no limit */
+    private final int maxLength;
+    private final boolean isReportingStatistics;
+    private final @NotNull ValidationMessageSeverity severity;
+    private final @NotNull Map<String, PathStatistics> statisticsByTopLevelPath;
+    /** the statistics of the last accessed top-level path (as most subsequent nodes share the same one) */
+    private @Nullable PathStatistics lastStatistics;
+    /** FileVault passes the paths of folders with a {@code .content.xml} twice */
+    private final @NotNull RepeatedNodePathFilter repeatedPathFilter;
+
+    /**
+     *
+     * @param maxDepth the maximum depth, {@code -1} for no limit
+     * @param maxLength the maximum path length, {@code -1} for no limit
+     * @param isReportingStatistics {@code true} to report the histograms and the worst offenders per top-level path with severity {@code INFO}
+     * @param severity the severity of exceeded limits
+     */
+    PathDepthValidator(int maxDepth, int maxLength, boolean isReportingStatistics, @NotNull ValidationMessageSeverity severity) {
+        this.maxDepth = maxDepth;
+        this.maxLength = maxLength;
+        this.isReportingStatistics = isReportingStatistics;
+        this.severity = severity;
+        this.statisticsByTopLevelPath = new TreeMap<>();
+        this.repeatedPathFilter = new RepeatedNodePathFilter();
+    }
+
+    @Override
+    public @Nullable Collection<ValidationMessage> validate(@NotNull String nodePath) {
+        if (nodePath.length() <= 1 || repeatedPathFilter.isRepeated(nodePath)) {
+            return null;
+        }
+        PathStatistics statistics = getStatistics(nodePath);
+        int depth = getDepth(nodePath);
+        int length = nodePath.length();
+        statistics.numNodes++;
+        statistics.depthHistogram = increment(statistics.depthHistogram, depth);
+        statistics.lengthHistogram = increment(statistics.lengthHistogram, length / LENGTH_BUCKET_SIZE);
+        statistics.deepestPaths.add(nodePath, depth);
+        statistics.longestPaths.add(nodePath, length);
+        if (maxDepth >= 0 && depth > maxDepth) {
+            statistics.numTooDeep++;
+        }
+        if (maxLength >= 0 && length > maxLength) {
+            statistics.numTooLong++;
+        }
+        return null;
+    }
+
+    private @NotNull PathStatistics getStatistics(@NotNull String nodePath) {
+        PathStatistics statistics = lastStatistics;
+        if (statistics != null && nodePath.startsWith(statistics.topLevelPath)
+                && (nodePath.length() == statistics.topLevelPath.length() || nodePath.charAt(statistics.topLevelPath.length()) == '/')) {
+            return statistics;
+        }
+        int end = nodePath.indexOf('/', 1);
+        String topLevelPath = end < 0 ? nodePath : nodePath.substring(0, end);
+        statistics = statisticsByTopLevelPath.computeIfAbsent(topLevelPath, PathStatistics::new);
+        lastStatistics = statistics;
+        return statistics;
+    }
+
+    private static long[] increment(long[] histogram, int bucket) {
+        if (bucket >= histogram.length) {
+            histogram = Arrays.copyOf(histogram, Math.max(bucket + 1, histogram.length * 2));
+        }
+        histogram[bucket]++;
+        return histogram;
+    }
+
+    /**
+     *
+     * @param path an absolute path
+     * @return the number of path segments (0 for the root node)
+     */
+    static int getDepth(@NotNull String path) {
+        if (path.length() == 1) {
+            return 0;
+        }
+        int depth = 0;
+        for (int i = 0; i < path.length(); i++) {
+            if (path.charAt(i) == '/') {
+                depth++;
+            }
+        }
+        return depth;
+    }
+
+    @Override
+    public @Nullable Collection<ValidationMessage> done() {
+        Collection<ValidationMessage> messages = null;
+        for (PathStatistics statistics : statisticsByTopLevelPath.values()) {
+            if (statistics.numTooDeep > 0) {
+                messages = AemCloudValidator.addMessage(messages, new RuleValidationMessage(RULE_ID_TOO_DEEP, severity, String.format(VIOLATION_MESSAGE_TOO_DEEP,
+                        statistics.numTooDeep, statistics.topLevelPath, maxDepth, statistics.deepestPaths.format(depth -> depth > maxDepth)),
+                        statistics.topLevelPath, null, null, 0, 0, null));
+            }
+            if (statistics.numTooLong > 0) {
+                messages = AemCloudValidator.addMessage(messages, new RuleValidationMessage(RULE_ID_TOO_LONG, severity, String.format(VIOLATION_MESSAGE_TOO_LONG,
+                        statistics.numTooLong, statistics.topLevelPath, maxLength, statistics.longestPaths.format(length -> length > maxLength)),
+                        statistics.topLevelPath, null, null, 0, 0, null));
+            }
+            if (isReportingStatistics) {
+                messages = AemCloudValidator.addMessage(messages, new RuleValidationMessage(RULE_ID_STATISTICS, ValidationMessageSeverity.INFO, String.format(MESSAGE_PATH_STATISTICS,
+                        statistics.numNodes, statistics.topLevelPath, formatHistogram(statistics.depthHistogram, 1), formatHistogram(statistics.lengthHistogram, LENGTH_BUCKET_SIZE),
+                        statistics.deepestPaths.format(depth -> true), statistics.longestPaths.format(length -> true)),
+                        statistics.topLevelPath, null, null, 0, 0, null));
+            }
+        }
+        return messages;
+    }
+
+    /**
+     *
+     * @param histogram the histogram
+     * @param bucketSize the size of each bucket
+     * @return the non-empty buckets, e.g. {@code {2: 10, 3: 25}} for a bucket size of 1 or {@code {0-99: 30, 100-199: 5}} for a bucket size of 100
+     */
+    static @NotNull String formatHistogram(long[] histogram, int bucketSize) {
+        List<String> buckets = new ArrayList<>();
+        for (int bucket = 0; bucket < histogram.length; bucket++) {
+            if (histogram[bucket] > 0) {
+                String label = bucketSize == 1 ? Integer.toString(bucket) : (bucket * bucketSize) + "-" + ((bucket + 1) * bucketSize - 1);
+                buckets.add(label + ": " + histogram[bucket]);
+            }
+        }
+        return buckets.stream().collect(Collectors.joining(", ", "{", "}"));
+    }
+
+    /** The statistics of all paths below one top-level path */
+    private static final class PathStatistics {
+        private final @NotNull String topLevelPath;
+        private long numNodes;
+        private long numTooDeep;
+        private long numTooLong;
+        /** the number of nodes per depth */
+        private long[] depthHistogram;
+        /** the number of nodes per length bucket */
+        private long[] lengthHistogram;
+        private final @NotNull TopPaths deepestPaths;
+        private final @NotNull TopPaths longestPaths;
+
+        PathStatistics(@NotNull String topLevelPath) {
+            this.topLevelPath = topLevelPath;
+            this.depthHistogram = new long[16];
+            this.lengthHistogram = new long[4];
+            this.deepestPaths = new TopPaths("depth %d");
+            this.longestPaths = new TopPaths("%d characters");
+        }
+    }
+
+    /** The {@link PathDepthValidator#MAX_NUM_WORST_OFFENDERS} paths with the highest values (the first one wins in case of equal values) */
+    private static final class TopPaths {
+        private final @NotNull String valueFormat;
+        /** the path with the lowest value (or the latest one in case of equal values) is the head */
+        private final @NotNull PriorityQueue<PathWithValue> paths;
+        private long numAdded;
+
+        TopPaths(@NotNull String valueFormat) {
+            this.valueFormat = valueFormat;
+            this.paths = new PriorityQueue<>(MAX_NUM_WORST_OFFENDERS + 1, PathWithValue.ASCENDING);
+        }
+
+        void add(@NotNull String path, int value) {
+            // only allocate for new candidates
+            if (paths.size() >= MAX_NUM_WORST_OFFENDERS && paths.peek().value >= value) {
+                return;
+            }
+            paths.add(new PathWithValue(path, value, numAdded++));
+            if (paths.size() > MAX_NUM_WORST_OFFENDERS) {
+                paths.poll();
+            }
+        }
+
+        @NotNull String format(@NotNull IntPredicate filter) {
+            return paths.stream()
+                    .filter(path -> filter.test(path.value))
+                    .sorted(PathWithValue.ASCENDING.reversed())
+                    .map(path -> path.path + " (" + String.format(valueFormat, path.value) + ")")
+                    .collect(Collectors.joining(", "));
+        }
+    }
+
+    private static final class PathWithValue {
+        /** by value and then by reversed insertion order */
+        static final Comparator<PathWithValue> ASCENDING = Comparator.comparingInt((PathWithValue path) -> path.value)
+                .thenComparing(Comparator.comparingLong((PathWithValue path) -> path.index).reversed());
+
+        private final @NotNull String path;
+        private final int value;
+        private final long index;
+
+        PathWithValue(@NotNull String path, int value, long index) {
+            this.path = path;
+            this.value = value;
+            this.index = index;
+        }
+    }
+}
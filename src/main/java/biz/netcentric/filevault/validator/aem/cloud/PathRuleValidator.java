@@ -0,0 +1,87 @@
+package biz.netcentric.filevault.validator.aem.cloud;
+
+/*-
+ * #%L
+ * AEM Cloud Validator
+ * %%
+ * Copyright (C) 2021 Netcentric - A Cognizant Digital Business
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.jackrabbit.vault.packaging.PackageType;
+import org.apache.jackrabbit.vault.validation.spi.NodePathValidator;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessage;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import biz.netcentric.filevault.validator.aem.cloud.PathRules.PathRule;
+
+/**
+ * Reports node paths matching user-defined deny {@link PathRules} (unless they also match an allow rule).
+ * Emits at most {@link #MAX_NUM_VIOLATIONS_PER_RULE} messages per rule, the number of further violations is reported once the package is done.
+ * Paths which are passed repeatedly (as FileVault validates some nodes twice) only violate each rule once, see {@link RepeatedNodePathFilter}.
+ */
+final class PathRuleValidator implements NodePathValidator {
+
+    static final String VIOLATION_MESSAGE_FURTHER_VIOLATIONS = "Path rule '%s' is violated by %d further node(s) not reported individually: %s";
+    static final int MAX_NUM_VIOLATIONS_PER_RULE = 5;
+
+    private final @NotNull PathRules pathRules;
+    private final @Nullable PackageType packageType;
+    private final long[] numViolationsPerRule;
+    /** only fed with the paths violating the respective rule */
+    private final RepeatedNodePathFilter[] repeatedPathFilters;
+
+    PathRuleValidator(@NotNull PathRules pathRules, @Nullable PackageType packageType) {
+        this.pathRules = pathRules;
+        this.packageType = packageType;
+        this.numViolationsPerRule = new long[pathRules.getRules().size()];
+        this.repeatedPathFilters = new RepeatedNodePathFilter[numViolationsPerRule.length];
+        for (int ruleIndex = 0; ruleIndex < repeatedPathFilters.length; ruleIndex++) {
+            repeatedPathFilters[ruleIndex] = new RepeatedNodePathFilter();
+        }
+    }
+
+    @Override
+    public @Nullable Collection<ValidationMessage> validate(@NotNull String nodePath) {
+        int[] matchingRules = pathRules.match(nodePath);
+        if (matchingRules.length == 0 || pathRules.isAllowed(matchingRules, packageType)) {
+            return null;
+        }
+        Collection<ValidationMessage> messages = null;
+        List<PathRule> rules = pathRules.getRules();
+        for (int ruleIndex : matchingRules) {
+            PathRule rule = rules.get(ruleIndex);
+            if (!rule.appliesTo(packageType) || repeatedPathFilters[ruleIndex].isRepeated(nodePath)) {
+                continue;
+            }
+            if (numViolationsPerRule[ruleIndex]++ < MAX_NUM_VIOLATIONS_PER_RULE) {
+                messages = AemCloudValidator.addMessage(messages, new RuleValidationMessage(rule.getRuleId(), rule.getSeverity(), rule.getMessage()));
+            }
+        }
+        return messages;
+    }
+
+    @Override
+    public @Nullable Collection<ValidationMessage> done() {
+        Collection<ValidationMessage> messages = null;
+        List<PathRule> rules = pathRules.getRules();
+        for (int ruleIndex = 0; ruleIndex < rules.size(); ruleIndex++) {
+            long numFurtherViolations = numViolationsPerRule[ruleIndex] - MAX_NUM_VIOLATIONS_PER_RULE;
+            if (numFurtherViolations > 0) {
+                PathRule rule = rules.get(ruleIndex);
+                messages = AemCloudValidator.addMessage(messages, new RuleValidationMessage(rule.getRuleId(), rule.getSeverity(),
+                        String.format(VIOLATION_MESSAGE_FURTHER_VIOLATIONS, rule.getId(), numFurtherViolations, rule.getMessage())));
+            }
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,225 @@
+package biz.netcentric.filevault.validator.aem.cloud;
+
+/*-
+ * #%L
+ * AEM Cloud Validator
+ * %%
+ * Copyright (C) 2021 Netcentric - A Cognizant Digital Business
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import org.apache.jackrabbit.vault.packaging.PackageType;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * User-defined rules which either forbid or allow certain node paths. All rules are matched at once via a single {@link GlobMatcher}.
+ * Each rule is configured via validator options with prefix {@value #OPTION_PREFIX}:
+ * <ul>
+ * <li>{@code pathRule.<id>}: the glob (mandatory)</li>
+ * <li>{@code pathRule.<id>.type}: either {@code deny} (default) or {@code allow}</li>
+ * <li>{@code pathRule.<id>.severity}: the severity of violations (only for deny rules)</li>
+ * <li>{@code pathRule.<id>.message}: the message of violations (only for deny rules)</li>
+ * <li>{@code pathRule.<id>.packageTypes}: comma-separated list of package types to which the rule applies (all by default)</li>
+ * </ul>
+ * Allow rules take precedence over deny rules and also exempt the matching paths from the check for read-only mutable paths.
+ * Instances are immutable and therefore thread-safe.
+ */
+final class PathRules {
+
+    static final String OPTION_PREFIX = "pathRule.";
+    static final String DEFAULT_VIOLATION_MESSAGE = "Node path matches forbidden path pattern '%s'.";
+
+    private static final String SUFFIX_TYPE = "type";
+    private static final String SUFFIX_SEVERITY = "severity";
+    private static final String SUFFIX_MESSAGE = "message";
+    private static final String SUFFIX_PACKAGE_TYPES = "packageTypes";
+
+    /** A single path rule */
+    static final class PathRule {
+        private final @NotNull String id;
+        private final @NotNull String ruleId;
+        private final @NotNull String glob;
+        private final boolean isAllow;
+        private final @NotNull ValidationMessageSeverity severity;
+        private final @NotNull String message;
+        /** empty means the rule applies to all package types */
+        private final @NotNull Set<PackageType> packageTypes;
+
+        PathRule(@NotNull String id, @NotNull String glob, boolean isAllow, @NotNull ValidationMessageSeverity severity, @Nullable String message, @NotNull Set<PackageType> packageTypes) {
+            this.id = id;
+            this.ruleId = OPTION_PREFIX + id;
+            this.glob = glob;
+            this.isAllow = isAllow;
+            this.severity = severity;
+            this.message = message != null ? message : String.format(DEFAULT_VIOLATION_MESSAGE, glob);
+            this.packageTypes = packageTypes;
+        }
+
+        @NotNull String getId() {
+            return id;
+        }
+
+        /**
+         *
+         * @return the id used in reports, i.e. the id prefixed with {@value PathRules#OPTION_PREFIX}
+         */
+        @NotNull String getRuleId() {
+            return ruleId;
+        }
+
+        boolean isAllow() {
+            return isAllow;
+        }
+
+        @NotNull ValidationMessageSeverity getSeverity() {
+            return severity;
+        }
+
+        @NotNull String getMessage() {
+            return message;
+        }
+
+        boolean appliesTo(@Nullable PackageType packageType) {
+            return packageTypes.isEmpty() || packageTypes.contains(packageType);
+        }
+    }
+
+    private final @NotNull List<PathRule> rules;
+    private final @NotNull GlobMatcher matcher;
+
+    PathRules(@NotNull List<PathRule> rules) {
+        this.rules = Collections.unmodifiableList(new ArrayList<>(rules));
+        this.matcher = new GlobMatcher(rules.stream().map(rule -> rule.glob).collect(Collectors.toList()));
+    }
+
+    /**
+     *
+     * @param options the validator options
+     * @param defaultSeverity the severity of deny rules without explicit severity
+     * @return the path rules or {@code null} in case no path rule is configured
+     * @throws IllegalArgumentException in case the options contain invalid path rules
+     */
+    static @Nullable PathRules fromOptions(@NotNull Map<String, String> options, @NotNull ValidationMessageSeverity defaultSeverity) {
+        // rule id to (suffix to value), the glob has the empty suffix
+        Map<String, Map<String, String>> ruleOptions = new TreeMap<>();
+        for (Map.Entry<String, String> option : options.entrySet()) {
+            if (!option.getKey().startsWith(OPTION_PREFIX)) {
+                continue;
+            }
+            String idAndSuffix = option.getKey().substring(OPTION_PREFIX.length());
+            int separator = idAndSuffix.indexOf('.');
+            String id = separator < 0 ? idAndSuffix : idAndSuffix.substring(0, separator);
+            String suffix = separator < 0 ? "" : idAndSuffix.substring(separator + 1);
+            if (id.isEmpty()) {
+                throw new IllegalArgumentException("Option '" + option.getKey() + "' does not contain a path rule id");
+            }
+            ruleOptions.computeIfAbsent(id, key -> new TreeMap<>()).put(suffix, option.getValue());
+        }
+        if (ruleOptions.isEmpty()) {
+            return null;
+        }
+        List<PathRule> rules = new ArrayList<>();
+        for (Map.Entry<String, Map<String, String>> entry : ruleOptions.entrySet()) {
+            rules.add(createRule(entry.getKey(), entry.getValue(), defaultSeverity));
+        }
+        return new PathRules(rules);
+    }
+
+    private static @NotNull PathRule createRule(@NotNull String id, @NotNull Map<String, String> ruleOptions, @NotNull ValidationMessageSeverity defaultSeverity) {
+        String glob = null;
+        boolean isAllow = false;
+        ValidationMessageSeverity severity = defaultSeverity;
+        String message = null;
+        Set<PackageType> packageTypes = EnumSet.noneOf(PackageType.class);
+        for (Map.Entry<String, String> ruleOption : ruleOptions.entrySet()) {
+            String value = ruleOption.getValue().trim();
+            switch (ruleOption.getKey()) {
+                case "":
+                    glob = value;
+                    break;
+                case SUFFIX_TYPE:
+                    if ("allow".equalsIgnoreCase(value)) {
+                        isAllow = true;
+                    } else if (!"deny".equalsIgnoreCase(value)) {
+                        throw new IllegalArgumentException("Path rule '" + id + "' has invalid type '" + value + "', must be either 'deny' or 'allow'");
+                    }
+                    break;
+                case SUFFIX_SEVERITY:
+                    try {
+                        severity = ValidationMessageSeverity.valueOf(value.toUpperCase(Locale.ROOT));
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("Path rule '" + id + "' has invalid severity '" + value + "'", e);
+                    }
+                    break;
+                case SUFFIX_MESSAGE:
+                    message = value;
+                    break;
+                case SUFFIX_PACKAGE_TYPES:
+                    for (String packageType : value.split(",")) {
+                        try {
+                            packageTypes.add(PackageType.valueOf(packageType.trim().toUpperCase(Locale.ROOT)));
+                        } catch (IllegalArgumentException e) {
+                            throw new IllegalArgumentException("Path rule '" + id + "' has invalid package type '" + packageType.trim() + "'", e);
+                        }
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Path rule '" + id + "' has unknown option '" + OPTION_PREFIX + id + "." + ruleOption.getKey() + "'");
+            }
+        }
+        if (glob == null || glob.isEmpty()) {
+            throw new IllegalArgumentException("Path rule '" + id + "' does not define a glob via option '" + OPTION_PREFIX + id + "'");
+        }
+        return new PathRule(id, glob, isAllow, severity, message, packageTypes);
+    }
+
+    @NotNull List<PathRule> getRules() {
+        return rules;
+    }
+
+    /**
+     *
+     * @param path the node path
+     * @return the indices of all rules matching the given path (sorted ascending), an empty array if none is matching. Must not be modified.
+     */
+    @NotNull int[] match(@NotNull String path) {
+        return matcher.match(path);
+    }
+
+    /**
+     *
+     * @param path the node path
+     * @param packageType the type of the package containing the node
+     * @return {@code true} in case an allow rule applicable to the given package type matches the given path
+     */
+    boolean isAllowed(@NotNull String path, @Nullable PackageType packageType) {
+        return isAllowed(match(path), packageType);
+    }
+
+    boolean isAllowed(@NotNull int[] matchingRules, @Nullable PackageType packageType) {
+        for (int ruleIndex : matchingRules) {
+            PathRule rule = rules.get(ruleIndex);
+            if (rule.isAllow && rule.appliesTo(packageType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
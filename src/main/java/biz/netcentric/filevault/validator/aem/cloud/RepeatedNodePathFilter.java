@@ -0,0 +1,62 @@
+package biz.netcentric.filevault.validator.aem.cloud;
+
+/*-
+ * #%L
+ * AEM Cloud Validator
+ * %%
+ * Copyright (C) 2021 Netcentric - A Cognizant Digital Business
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Detects node paths which are passed repeatedly to {@link org.apache.jackrabbit.vault.validation.spi.NodePathValidator#validate(String)}.
+ * FileVault's validation executor calls it once for a folder and once more for the root node of its {@code .content.xml},
+ * the latter only after all nodes contained in that {@code .content.xml} (and all entries being processed before it), which are all descendants of the folder.
+ * Therefore the ancestor chain of the last path is kept and every path being part of it is considered a repetition.
+ * The memory consumption is limited by the depth of the paths.
+ * <p>
+ * Not thread-safe. In case paths from different threads are interleaved some repetitions may not be detected, but distinct paths are never considered repeated.
+ */
+final class RepeatedNodePathFilter {
+
+    /** the last path and its ancestors which have been passed before, ordered from top to bottom */
+    private final @NotNull List<String> ancestorsOrSelf;
+
+    RepeatedNodePathFilter() {
+        ancestorsOrSelf = new ArrayList<>();
+    }
+
+    /**
+     *
+     * @param nodePath the absolute node path
+     * @return {@code true} in case the given path has been passed before, {@code false} for a new path
+     */
+    boolean isRepeated(@NotNull String nodePath) {
+        int last = ancestorsOrSelf.size() - 1;
+        while (last >= 0 && !isAncestorOrSelf(ancestorsOrSelf.get(last), nodePath)) {
+            ancestorsOrSelf.remove(last--);
+        }
+        if (last >= 0 && ancestorsOrSelf.get(last).length() == nodePath.length()) {
+            return true;
+        }
+        ancestorsOrSelf.add(nodePath);
+        return false;
+    }
+
+    static boolean isAncestorOrSelf(@NotNull String ancestorPath, @NotNull String path) {
+        if (!path.startsWith(ancestorPath)) {
+            return false;
+        }
+        return path.length() == ancestorPath.length() || path.charAt(ancestorPath.length()) == '/' || ancestorPath.length() == 1;
+    }
+}
@@ -0,0 +1,292 @@
+package biz.netcentric.filevault.validator.aem.cloud;
+
+/*-
+ * #%L
+ * AEM Cloud Validator
+ * %%
+ * Copyright (C) 2021 Netcentric - A Cognizant Digital Business
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessage;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streams validation messages to a report file, either in <a href="https://jsonlines.org/">JSON Lines</a> or in
+ * <a href="https://docs.oasis-open.org/sarif/sarif/v2.1.0/sarif-v2.1.0.html">SARIF 2.1.0</a> format.
+ * Messages are buffered in memory and written once the buffer exceeds {@link #MAX_BUFFER_SIZE} or on {@link #flush()}.
+ * In SARIF format the closing brackets are rewritten after each write, so that the file is always a valid SARIF document.
+ * <p>
+ * There is only one open instance per file and JVM, which is shared by all validators (also those running concurrently).
+ * Each validator acquires the instance via {@link #acquire(Path, Format)} and releases it once it is done. The file is closed once the last reference has been released
+ * (usually when the outermost package is done). The file is only overwritten the first time it is opened in the JVM,
+ * afterwards (e.g. for further outermost packages of the same build) new messages are appended to it.
+ * All methods are thread-safe.
+ */
+final class ReportWriter {
+
+    /** The supported report formats */
+    enum Format {
+        JSON_LINES("jsonl"),
+        SARIF("sarif");
+
+        private final @NotNull String id;
+
+        Format(@NotNull String id) {
+            this.id = id;
+        }
+
+        static @NotNull Format fromId(@NotNull String id) {
+            for (Format format : values()) {
+                if (format.id.equalsIgnoreCase(id.trim())) {
+                    return format;
+                }
+            }
+            throw new IllegalArgumentException("Unknown report format '" + id + "', must be either 'jsonl' or 'sarif'");
+        }
+    }
+
+    static final int MAX_BUFFER_SIZE = 64 * 1024;
+
+    private static final String SARIF_HEADER = "{\"$schema\":\"https://json.schemastore.org/sarif-2.1.0.json\",\"version\":\"2.1.0\",\"runs\":[{\"tool\":{\"driver\":"
+            + "{\"name\":\"aem-cloud-validator\",\"informationUri\":\"https://github.com/Netcentric/aem-cloud-validator\",\"version\":";
+    private static final String SARIF_FOOTER = "]}]}\n";
+    private static final ConcurrentMap<Path, ReportWriter> WRITERS = new ConcurrentHashMap<>();
+    /** the state of all files which have been closed already, only modified while holding the lock of the according entry in {@link #WRITERS} */
+    private static final ConcurrentMap<Path, ClosedReport> CLOSED_REPORTS = new ConcurrentHashMap<>();
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReportWriter.class);
+
+    private final @NotNull Path file;
+    private final @NotNull Format format;
+    private final @NotNull StringBuilder buffer;
+    private final @NotNull FileChannel channel;
+    private long numResults;
+    /** the number of validators using this instance, only modified while holding the lock of the entry in {@link #WRITERS} */
+    private int numReferences;
+
+    ReportWriter(@NotNull Path file, @NotNull Format format) throws IOException {
+        this(file, format, null);
+    }
+
+    /**
+     *
+     * @param file the report file
+     * @param format the format
+     * @param closedReport the state of the given file when it has been closed before (in this JVM) or {@code null}
+     * @throws IOException in case the file cannot be opened
+     */
+    private ReportWriter(@NotNull Path file, @NotNull Format format, @Nullable ClosedReport closedReport) throws IOException {
+        this.file = file;
+        this.format = format;
+        this.buffer = new StringBuilder();
+        if (closedReport != null && closedReport.format == format && Files.isRegularFile(file)) {
+            // append (in SARIF format the footer is overwritten with the next flush)
+            this.channel = FileChannel.open(file, StandardOpenOption.WRITE);
+            channel.position(channel.size());
+            this.numResults = closedReport.numResults;
+            return;
+        }
+        Path parent = file.getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        if (format == Format.SARIF) {
+            StringBuilder header = new StringBuilder(SARIF_HEADER);
+            Json.appendString(header, ValidationResultCache.ValidatorVersion.VALUE).append("}},\"results\":[");
+            write(header.append(SARIF_FOOTER));
+        }
+    }
+
+    /**
+     * Each call must be followed by exactly one call of {@link #release()}.
+     * @param file the report file
+     * @param format the format
+     * @return the writer shared by all validators writing to the given file
+     * @throws IllegalArgumentException in case the file is already used with another format
+     * @throws UncheckedIOException in case the file cannot be created
+     */
+    static @NotNull ReportWriter acquire(@NotNull Path file, @NotNull Format format) {
+        return WRITERS.compute(file.toAbsolutePath().normalize(), (f, writer) -> {
+            if (writer == null) {
+                try {
+                    writer = new ReportWriter(f, format, CLOSED_REPORTS.get(f));
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Could not create report file " + f, e);
+                }
+            } else if (writer.format != format) {
+                throw new IllegalArgumentException("Report file " + file + " is already used with format " + writer.format.id);
+            }
+            writer.numReferences++;
+            return writer;
+        });
+    }
+
+    /**
+     * Releases a reference acquired via {@link #acquire(Path, Format)}. The last release writes all buffered messages and closes the file.
+     */
+    void release() {
+        WRITERS.computeIfPresent(file, (f, writer) -> {
+            if (writer != this || --writer.numReferences > 0) {
+                return writer;
+            }
+            writer.close();
+            CLOSED_REPORTS.put(f, new ClosedReport(writer.format, writer.getNumResults()));
+            return null;
+        });
+    }
+
+    private synchronized long getNumResults() {
+        return numResults;
+    }
+
+    /**
+     *
+     * @param message the message to report
+     * @param ruleId the id of the violated rule
+     * @param packageId the coordinates of the package
+     * @param packageRootPath the root path of the package
+     * @param nodePath the node path to use in case the message does not contain one
+     * @param filePath the file path to use in case the message does not contain one
+     */
+    void report(@NotNull ValidationMessage message, @NotNull String ruleId, @Nullable String packageId, @NotNull Path packageRootPath, @Nullable String nodePath, @Nullable Path filePath) {
+        String effectiveNodePath = message.getNodePath() != null ? message.getNodePath() : nodePath;
+        Path effectiveFilePath = message.getFilePath() != null ? message.getFilePath() : filePath;
+        synchronized (this) {
+            if (format == Format.SARIF) {
+                appendSarifResult(message, ruleId, packageId, packageRootPath, effectiveNodePath, effectiveFilePath);
+            } else {
+                appendJsonLine(message, ruleId, packageId, packageRootPath, effectiveNodePath, effectiveFilePath);
+            }
+            numResults++;
+            if (buffer.length() > MAX_BUFFER_SIZE) {
+                flush();
+            }
+        }
+    }
+
+    private void appendJsonLine(@NotNull ValidationMessage message, @NotNull String ruleId, @Nullable String packageId, @NotNull Path packageRootPath,
+            @Nullable String nodePath, @Nullable Path filePath) {
+        buffer.append("{\"ruleId\":");
+        Json.appendString(buffer, ruleId).append(",\"severity\":");
+        Json.appendString(buffer, message.getSeverity().name()).append(",\"message\":");
+        Json.appendString(buffer, message.getMessage()).append(",\"nodePath\":");
+        Json.appendString(buffer, nodePath).append(",\"filePath\":");
+        Json.appendString(buffer, filePath != null ? filePath.toString() : null).append(",\"line\":").append(message.getLine()).append(",\"package\":");
+        Json.appendString(buffer, packageId).append(",\"packageRootPath\":");
+        Json.appendString(buffer, packageRootPath.toString()).append("}\n");
+    }
+
+    private void appendSarifResult(@NotNull ValidationMessage message, @NotNull String ruleId, @Nullable String packageId, @NotNull Path packageRootPath,
+            @Nullable String nodePath, @Nullable Path filePath) {
+        if (numResults > 0) {
+            buffer.append(',');
+        }
+        buffer.append("{\"ruleId\":");
+        Json.appendString(buffer, ruleId).append(",\"level\":");
+        Json.appendString(buffer, toSarifLevel(message.getSeverity())).append(",\"message\":{\"text\":");
+        Json.appendString(buffer, message.getMessage()).append("},\"locations\":[{");
+        if (filePath != null) {
+            buffer.append("\"physicalLocation\":{\"artifactLocation\":{\"uri\":");
+            Json.appendString(buffer, filePath.toString().replace('\\', '/')).append('}');
+            if (message.getLine() > 0) {
+                buffer.append(",\"region\":{\"startLine\":").append(message.getLine()).append('}');
+            }
+            buffer.append('}');
+            if (nodePath != null) {
+                buffer.append(',');
+            }
+        }
+        if (nodePath != null) {
+            buffer.append("\"logicalLocations\":[{\"kind\":\"object\",\"fullyQualifiedName\":");
+            Json.appendString(buffer, nodePath).append("}]");
+        }
+        buffer.append("}],\"properties\":{\"package\":");
+        Json.appendString(buffer, packageId).append(",\"packageRootPath\":");
+        Json.appendString(buffer, packageRootPath.toString()).append("}}");
+    }
+
+    private static @NotNull String toSarifLevel(@NotNull ValidationMessageSeverity severity) {
+        switch (severity) {
+            case ERROR:
+                return "error";
+            case WARN:
+                return "warning";
+            case INFO:
+                return "note";
+            default:
+                return "none";
+        }
+    }
+
+    /**
+     * Writes all buffered messages to the file.
+     */
+    synchronized void flush() {
+        if (buffer.length() == 0) {
+            return;
+        }
+        try {
+            if (format == Format.SARIF) {
+                // overwrite the footer
+                channel.position(channel.size() - SARIF_FOOTER.length());
+                buffer.append(SARIF_FOOTER);
+            }
+            write(buffer);
+        } catch (IOException e) {
+            LOGGER.warn("Could not write to report file {}", file, e);
+        } finally {
+            buffer.setLength(0);
+        }
+    }
+
+    /**
+     * Writes all buffered messages to the file and closes it.
+     */
+    synchronized void close() {
+        flush();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.warn("Could not close report file {}", file, e);
+        }
+    }
+
+    private void write(@NotNull CharSequence value) throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(value.toString().getBytes(StandardCharsets.UTF_8));
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+
+    /** The state of a closed report file required to append to it */
+    private static final class ClosedReport {
+        private final @NotNull Format format;
+        private final long numResults;
+
+        ClosedReport(@NotNull Format format, long numResults) {
+            this.format = format;
+            this.numResults = numResults;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package biz.netcentric.filevault.validator.aem.cloud;
+
+/*-
+ * #%L
+ * AEM Cloud Validator
+ * %%
+ * Copyright (C) 2021 Netcentric - A Cognizant Digital Business
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+
+import java.nio.file.Path;
+import java.util.Collection;
+
+import org.apache.jackrabbit.vault.packaging.PackageId;
+import org.apache.jackrabbit.vault.packaging.PackageProperties;
+import org.apache.jackrabbit.vault.util.DocViewNode2;
+import org.apache.jackrabbit.vault.validation.spi.NodeContext;
+import org.apache.jackrabbit.vault.validation.spi.ValidationContext;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessage;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Delegates to a {@link PackageValidator} and streams all returned messages to a {@link ReportWriter} (in addition to returning them).
+ * Only used if a report file is configured, so there is no overhead otherwise.
+ */
+final class ReportingValidator implements PackageValidator {
+
+    private final @NotNull PackageValidator delegate;
+    private final @NotNull ReportWriter reportWriter;
+    private final @Nullable String packageId;
+    private final @NotNull Path packageRootPath;
+
+    ReportingValidator(@NotNull PackageValidator delegate, @NotNull ReportWriter reportWriter, @NotNull ValidationContext context) {
+        this.delegate = delegate;
+        this.reportWriter = reportWriter;
+        PackageId id = context.getProperties().getId();
+        this.packageId = id != null ? id.toString() : null;
+        this.packageRootPath = context.getPackageRootPath();
+    }
+
+    @Override
+    public @Nullable Collection<ValidationMessage> validate(@NotNull String nodePath) {
+        return report(delegate.validate(nodePath), nodePath, null);
+    }
+
+    @Override
+    public @Nullable Collection<ValidationMessage> validate(@NotNull DocViewNode2 node, @NotNull NodeContext nodeContext, boolean isRoot) {
+        return report(delegate.validate(node, nodeContext, isRoot), nodeContext.getNodePath(), nodeContext.getFilePath());
+    }
+
+    @Override
+    public @Nullable Collection<ValidationMessage> validateMetaInfPath(@NotNull Path filePath) {
+        return report(delegate.validateMetaInfPath(filePath), null, filePath);
+    }
+
+    @Override
+    public @Nullable Collection<ValidationMessage> validate(@NotNull PackageProperties properties) {
+        return report(delegate.validate(properties), null, null);
+    }
+
+    @Override
+    public @Nullable Collection<ValidationMessage> done() {
+        try {
+            Collection<ValidationMessage> messages = report(delegate.done(), null, null);
+            reportWriter.flush();
+            return messages;
+        } finally {
+            // closes the report file once the outermost package is done
+            reportWriter.release();
+        }
+    }
+
+    private @Nullable Collection<ValidationMessage> report(@Nullable Collection<ValidationMessage> messages, @Nullable String nodePath, @Nullable Path filePath) {
+        if (messages != null) {
+            for (ValidationMessage message : messages) {
+                report(reportWriter, message, packageId, packageRootPath, nodePath, filePath);
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Reports the given message with the rule id of the given {@link RuleValidationMessage} (or {@link RuleValidationMessage#UNKNOWN_RULE_ID} for other messages).
+     */
+    static void report(@NotNull ReportWriter reportWriter, @NotNull ValidationMessage message, @Nullable String packageId,
+            @NotNull Path packageRootPath, @Nullable String nodePath, @Nullable Path filePath) {
+        reportWriter.report(message, RuleValidationMessage.getRuleId(message), packageId, packageRootPath, nodePath, filePath);
+    }
+}
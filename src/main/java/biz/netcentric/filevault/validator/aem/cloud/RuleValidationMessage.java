@@ -0,0 +1,86 @@
+package biz.netcentric.filevault.validator.aem.cloud;
+
+/*-
+ * #%L
+ * AEM Cloud Validator
+ * %%
+ * Copyright (C) 2021 Netcentric - A Cognizant Digital Business
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+
+import java.nio.file.Path;
+import java.util.Objects;
+
+import org.apache.jackrabbit.vault.validation.spi.NodeContext;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessage;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A {@link ValidationMessage} carrying the id of the violated rule (e.g. for machine-readable reports).
+ * All messages emitted by the validators of this package are instances of this class.
+ * <p>
+ * Instances are never equal to a plain {@link ValidationMessage} with the same fields, as {@link ValidationMessage#equals(Object)} compares the classes
+ * and equality must be symmetric. Therefore messages emitted by this validator must be compared with instances of this class (including the rule id).
+ */
+final class RuleValidationMessage extends ValidationMessage {
+
+    /** the rule id of messages not emitted by this validator */
+    static final String UNKNOWN_RULE_ID = "unknown";
+
+    private final @NotNull String ruleId;
+
+    RuleValidationMessage(@NotNull String ruleId, @NotNull ValidationMessageSeverity severity, @NotNull String message) {
+        super(severity, message);
+        this.ruleId = ruleId;
+    }
+
+    RuleValidationMessage(@NotNull String ruleId, @NotNull ValidationMessageSeverity severity, @NotNull String message, @NotNull NodeContext nodeContext) {
+        super(severity, message, nodeContext);
+        this.ruleId = ruleId;
+    }
+
+    RuleValidationMessage(@NotNull String ruleId, @NotNull ValidationMessageSeverity severity, @NotNull String message, @Nullable String nodePath, @Nullable Path filePath,
+            @Nullable Path basePath, int line, int column, @Nullable Throwable throwable) {
+        super(severity, message, nodePath, filePath, basePath, line, column, throwable);
+        this.ruleId = ruleId;
+    }
+
+    @NotNull String getRuleId() {
+        return ruleId;
+    }
+
+    /**
+     *
+     * @param message a message
+     * @return the rule id of the given message or {@link #UNKNOWN_RULE_ID} in case it is no {@link RuleValidationMessage}
+     */
+    static @NotNull String getRuleId(@NotNull ValidationMessage message) {
+        return message instanceof RuleValidationMessage ? ((RuleValidationMessage) message).ruleId : UNKNOWN_RULE_ID;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * super.hashCode() + ruleId.hashCode();
+    }
+
+    /**
+     * Also compares the rule id. Only equal to other instances of this class.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        // the super class also compares the classes
+        return super.equals(obj) && Objects.equals(ruleId, ((RuleValidationMessage) obj).ruleId);
+    }
+
+    @Override
+    public String toString() {
+        return "RuleValidationMessage [ruleId=" + ruleId + ", " + super.toString() + "]";
+    }
+}
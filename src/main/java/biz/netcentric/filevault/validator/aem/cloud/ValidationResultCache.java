@@ -0,0 +1,401 @@
+package biz.netcentric.filevault.validator.aem.cloud;
+
+/*-
+ * #%L
+ * AEM Cloud Validator
+ * %%
+ * Copyright (C) 2021 Netcentric - A Cognizant Digital Business
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessage;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
+import org.apache.jackrabbit.vault.validation.spi.ValidatorSettings;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent cache for the validation messages of a package, stored in a directory with one file per cache key.
+ * The least recently used entries are evicted once the number of entries exceeds the given maximum, until only {@link #EVICTION_TARGET_RATIO} of the maximum are left.
+ * The number of entries is tracked in memory, so that the directory only needs to be listed when evicting (and once initially).
+ * Entries written by other processes are therefore only taken into account with the next listing.
+ * All operations are safe to be called concurrently from multiple threads and even multiple processes, as entries are written atomically
+ * and entries vanishing concurrently are treated as cache misses.
+ */
+final class ValidationResultCache {
+
+    /** increase whenever the serialization format changes */
+    private static final int FORMAT_VERSION = 2;
+    private static final String ENTRY_EXTENSION = ".cache";
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    private static final String POM_PROPERTIES = "/META-INF/maven/biz.netcentric.filevault.validator/aem-cloud-validator/pom.properties";
+    private static final String UNKNOWN_VERSION = "unknown";
+    private static final String SNAPSHOT_VERSION_SUFFIX = "-SNAPSHOT";
+    /** the ratio of the maximum number of entries which is left after eviction, leaves room for new entries before the next eviction */
+    static final double EVICTION_TARGET_RATIO = 0.9;
+
+    private static final ConcurrentMap<Path, ValidationResultCache> CACHES = new ConcurrentHashMap<>();
+    private static final Logger LOGGER = LoggerFactory.getLogger(ValidationResultCache.class);
+
+    private final @NotNull Path directory;
+    private final int maxEntries;
+    /** the number of entries in the directory, {@code -1} until initially listed, guarded by this */
+    private int numEntries;
+
+    ValidationResultCache(@NotNull Path directory, int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("The maximum number of cache entries must be at least 1 but is " + maxEntries);
+        }
+        this.directory = directory;
+        this.maxEntries = maxEntries;
+        this.numEntries = -1;
+    }
+
+    /**
+     * Returns the cache for the given directory which is shared by all validators in the same JVM.
+     * @param directory the cache directory
+     * @param maxEntries the maximum number of entries (only considered when the cache is requested for the first time)
+     * @return the cache
+     */
+    static @NotNull ValidationResultCache getInstance(@NotNull Path directory, int maxEntries) {
+        return CACHES.computeIfAbsent(directory.toAbsolutePath().normalize(), d -> new ValidationResultCache(d, maxEntries));
+    }
+
+    /**
+     *
+     * @param key the cache key
+     * @return the cached messages or {@code null} in case there is no entry for the given key
+     */
+    @Nullable List<ValidationMessage> get(@NotNull String key) {
+        Path entry = directory.resolve(key + ENTRY_EXTENSION);
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(entry)))) {
+            List<ValidationMessage> messages = readMessages(input);
+            // mark as recently used
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            return messages;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | IllegalArgumentException e) {
+            LOGGER.warn("Could not read validation result cache entry {}, ignoring it", entry, e);
+            return null;
+        }
+    }
+
+    void put(@NotNull String key, @NotNull Collection<ValidationMessage> messages) {
+        try {
+            Files.createDirectories(directory);
+            Path tmpFile = Files.createTempFile(directory, key, ".tmp");
+            try {
+                try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile)))) {
+                    writeMessages(output, messages);
+                }
+                Path entry = directory.resolve(key + ENTRY_EXTENSION);
+                boolean isNewEntry = !Files.exists(entry);
+                try {
+                    Files.move(tmpFile, entry, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tmpFile, entry, StandardCopyOption.REPLACE_EXISTING);
+                }
+                if (isNewEntry) {
+                    entryAdded();
+                }
+            } finally {
+                Files.deleteIfExists(tmpFile);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Could not write validation result cache entry {} to {}", key, directory, e);
+        }
+    }
+
+    /** Updates the number of entries and evicts entries in case the maximum number of entries is exceeded. */
+    private synchronized void entryAdded() throws IOException {
+        if (numEntries < 0) {
+            numEntries = listEntries().size();
+        } else {
+            numEntries++;
+        }
+        if (numEntries > maxEntries) {
+            evict();
+        }
+    }
+
+    /** Removes the least recently used entries until only {@link #EVICTION_TARGET_RATIO} of the maximum number of entries are left. */
+    private synchronized void evict() throws IOException {
+        List<Path> entries = listEntries();
+        int targetNumEntries = (int) Math.ceil(maxEntries * EVICTION_TARGET_RATIO);
+        if (entries.size() > maxEntries) {
+            Map<Path, Long> lastModifiedTimes = new HashMap<>();
+            for (Path entry : entries) {
+                lastModifiedTimes.put(entry, getLastModifiedTime(entry));
+            }
+            entries.sort(Comparator.comparing(lastModifiedTimes::get));
+            for (Path entry : entries.subList(0, entries.size() - targetNumEntries)) {
+                Files.deleteIfExists(entry);
+            }
+            numEntries = targetNumEntries;
+        } else {
+            numEntries = entries.size();
+        }
+    }
+
+    private @NotNull List<Path> listEntries() throws IOException {
+        List<Path> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + ENTRY_EXTENSION)) {
+            stream.forEach(entries::add);
+        }
+        return entries;
+    }
+
+    private static long getLastModifiedTime(@NotNull Path entry) {
+        try {
+            return Files.getLastModifiedTime(entry).toMillis();
+        } catch (IOException e) {
+            // removed concurrently
+            return Long.MIN_VALUE;
+        }
+    }
+
+    static void writeMessages(@NotNull DataOutputStream output, @NotNull Collection<ValidationMessage> messages) throws IOException {
+        output.writeInt(FORMAT_VERSION);
+        output.writeInt(messages.size());
+        for (ValidationMessage message : messages) {
+            output.writeUTF(RuleValidationMessage.getRuleId(message));
+            output.writeUTF(message.getSeverity().name());
+            output.writeUTF(message.getMessage());
+            writeNullableString(output, message.getNodePath());
+            writeNullableString(output, message.getFilePath() != null ? message.getFilePath().toString() : null);
+            writeNullableString(output, message.getBasePath() != null ? message.getBasePath().toString() : null);
+            output.writeInt(message.getLine());
+            output.writeInt(message.getColumn());
+        }
+    }
+
+    static @NotNull List<ValidationMessage> readMessages(@NotNull DataInputStream input) throws IOException {
+        int formatVersion = input.readInt();
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IOException("Unsupported format version " + formatVersion);
+        }
+        int numMessages = input.readInt();
+        List<ValidationMessage> messages = new ArrayList<>(numMessages);
+        for (int i = 0; i < numMessages; i++) {
+            String ruleId = input.readUTF();
+            ValidationMessageSeverity severity = ValidationMessageSeverity.valueOf(input.readUTF());
+            String message = input.readUTF();
+            String nodePath = readNullableString(input);
+            String filePath = readNullableString(input);
+            String basePath = readNullableString(input);
+            int line = input.readInt();
+            int column = input.readInt();
+            messages.add(new RuleValidationMessage(ruleId, severity, message, nodePath, filePath != null ? Paths.get(filePath) : null,
+                    basePath != null ? Paths.get(basePath) : null, line, column, null));
+        }
+        return messages;
+    }
+
+    private static void writeNullableString(@NotNull DataOutputStream output, @Nullable String value) throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) {
+            output.writeUTF(value);
+        }
+    }
+
+    private static @Nullable String readNullableString(@NotNull DataInputStream input) throws IOException {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+
+    /**
+     * Calculates the cache key for a package file.
+     * Only the names and contents of the zip entries (sorted by name) are part of the key, but neither their order nor timestamps or other zip metadata,
+     * so that a rebuilt package with the same content leads to the same key.
+     * @param packageFile the package file
+     * @param settings the validator settings (all options and the default severity are part of the key)
+     * @return the cache key or {@code null} in case the package file cannot be read as zip file
+     */
+    static @Nullable String createKey(@NotNull Path packageFile, @NotNull ValidatorSettings settings) {
+        MessageDigest digest = createDigest(settings);
+        try (ZipFile zipFile = new ZipFile(packageFile.toFile())) {
+            List<ZipEntry> entries = new ArrayList<>(Collections.list(zipFile.entries()));
+            entries.sort(Comparator.comparing(ZipEntry::getName));
+            byte[] buffer = new byte[64 * 1024];
+            for (ZipEntry entry : entries) {
+                // the size separates the name from the content of the entry
+                digest.update((entry.getName() + '\n' + entry.getSize() + '\n').getBytes(StandardCharsets.UTF_8));
+                try (InputStream input = zipFile.getInputStream(entry)) {
+                    updateDigest(digest, input, buffer);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Not caching results of package {} as it cannot be read", packageFile, e);
+            return null;
+        }
+        return toHex(digest.digest());
+    }
+
+    private static void updateDigest(@NotNull MessageDigest digest, @NotNull Path file, byte[] buffer) throws IOException {
+        try (InputStream input = Files.newInputStream(file)) {
+            updateDigest(digest, input, buffer);
+        }
+    }
+
+    private static void updateDigest(@NotNull MessageDigest digest, @NotNull InputStream input, byte[] buffer) throws IOException {
+        int length;
+        while ((length = input.read(buffer)) != -1) {
+            digest.update(buffer, 0, length);
+        }
+    }
+
+    /**
+     * Calculates the cache key for a sub package. As the sub package is contained in the container package its content is already
+     * covered by the container package's key.
+     * @param containerKey the cache key of the container package
+     * @param subPackagePath the path of the sub package within the container package
+     * @param settings the validator settings (all options and the default severity are part of the key)
+     * @return the cache key
+     */
+    static @NotNull String createSubPackageKey(@NotNull String containerKey, @NotNull Path subPackagePath, @NotNull ValidatorSettings settings) {
+        MessageDigest digest = createDigest(settings);
+        digest.update(containerKey.getBytes(StandardCharsets.UTF_8));
+        digest.update(subPackagePath.toString().replace('\\', '/').getBytes(StandardCharsets.UTF_8));
+        return toHex(digest.digest());
+    }
+
+    private static @NotNull MessageDigest createDigest(@NotNull ValidatorSettings settings) {
+        MessageDigest digest = createDigest();
+        StringBuilder prefix = new StringBuilder();
+        prefix.append(FORMAT_VERSION).append('\n').append(ValidatorVersion.CACHE_VERSION).append('\n').append(settings.getDefaultSeverity()).append('\n');
+        // sorted to be independent of the map's iteration order
+        new TreeMap<>(settings.getOptions()).forEach((name, value) -> prefix.append(name).append('=').append(value).append('\n'));
+        digest.update(prefix.toString().getBytes(StandardCharsets.UTF_8));
+        return digest;
+    }
+
+    private static @NotNull MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Digest algorithm " + DIGEST_ALGORITHM + " is not supported", e);
+        }
+    }
+
+    private static @NotNull String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /** Lazily loads the version of this validator (only once) */
+    static final class ValidatorVersion {
+        static final String VALUE = loadVersion();
+        /**
+         * The version used in cache keys. For snapshot (and unknown) versions it includes the digest of the validator's jar (or classes directory)
+         * as the same version may be rebuilt with different code. {@code null} in case results must not be cached, because the classes cannot be hashed.
+         */
+        static final @Nullable String CACHE_VERSION = getCacheVersion(VALUE, getCodeSource());
+
+        /**
+         *
+         * @param version the version of the validator
+         * @param codeSource the jar file or classes directory of the validator, {@code null} if unknown
+         * @return the version to use in cache keys or {@code null} in case results must not be cached
+         */
+        static @Nullable String getCacheVersion(@NotNull String version, @Nullable Path codeSource) {
+            if (!version.endsWith(SNAPSHOT_VERSION_SUFFIX) && !UNKNOWN_VERSION.equals(version)) {
+                return version;
+            }
+            if (codeSource == null) {
+                LOGGER.info("Not caching results with validator version {} as its classes cannot be located", version);
+                return null;
+            }
+            MessageDigest digest = createDigest();
+            byte[] buffer = new byte[64 * 1024];
+            try {
+                if (Files.isDirectory(codeSource)) {
+                    final List<Path> files;
+                    try (Stream<Path> stream = Files.walk(codeSource)) {
+                        files = stream.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+                    }
+                    for (Path file : files) {
+                        digest.update(codeSource.relativize(file).toString().replace('\\', '/').getBytes(StandardCharsets.UTF_8));
+                        updateDigest(digest, file, buffer);
+                    }
+                } else {
+                    updateDigest(digest, codeSource, buffer);
+                }
+            } catch (IOException e) {
+                LOGGER.warn("Not caching results with validator version {} as its classes at {} cannot be hashed", version, codeSource, e);
+                return null;
+            }
+            return version + "-" + toHex(digest.digest());
+        }
+
+        private static @Nullable Path getCodeSource() {
+            try {
+                CodeSource codeSource = ValidationResultCache.class.getProtectionDomain().getCodeSource();
+                if (codeSource != null && codeSource.getLocation() != null) {
+                    return Paths.get(codeSource.getLocation().toURI());
+                }
+            } catch (URISyntaxException | IllegalArgumentException | FileSystemNotFoundException | SecurityException e) {
+                LOGGER.debug("Could not locate the classes of the validator", e);
+            }
+            return null;
+        }
+
+        private static @NotNull String loadVersion() {
+            try (InputStream input = ValidationResultCache.class.getResourceAsStream(POM_PROPERTIES)) {
+                if (input != null) {
+                    Properties properties = new Properties();
+                    properties.load(input);
+                    return properties.getProperty("version", UNKNOWN_VERSION);
+                }
+            } catch (IOException e) {
+                LOGGER.warn("Could not read version from {}", POM_PROPERTIES, e);
+            }
+            return UNKNOWN_VERSION;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package biz.netcentric.filevault.validator.aem.cloud;
+
+/*-
+ * #%L
+ * AEM Cloud Validator
+ * %%
+ * Copyright (C) 2021 Netcentric - A Cognizant Digital Business
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Counters and timers collected by {@link InstrumentedValidator}.
+ * All of them are based on {@link LongAdder} so that the metrics of multiple packages can be summed up concurrently (e.g. for sub packages validated in parallel).
+ * The time spent in each callback is measured separately per validator, the totals are the sums of all validators.
+ */
+final class ValidatorMetrics {
+
+    /**
+     * The instrumented callbacks of the package validator, each one forwarded to all validators implementing it.
+     */
+    enum Callback {
+        NODE_PATH("nodePath"),
+        DOCVIEW_NODE("docViewNode"),
+        META_INF_PATH("metaInfPath"),
+        PACKAGE_PROPERTIES("packageProperties"),
+        DONE("done");
+
+        private final @NotNull String name;
+
+        Callback(@NotNull String name) {
+            this.name = name;
+        }
+    }
+
+    final LongAdder nodes = new LongAdder();
+    final LongAdder mutableNodes = new LongAdder();
+    final LongAdder immutableNodes = new LongAdder();
+    final LongAdder docViewNodes = new LongAdder();
+    final LongAdder indexDefinitions = new LongAdder();
+    final LongAdder metaInfPaths = new LongAdder();
+    final LongAdder messages = new LongAdder();
+    /** the invocations of the package validator per callback */
+    private final LongAdder[] invocations;
+    /** sorted by validator name to write them in a stable order */
+    private final ConcurrentMap<String, CallbackTimers> timersByValidator;
+
+    ValidatorMetrics() {
+        invocations = newAdders();
+        timersByValidator = new ConcurrentSkipListMap<>();
+    }
+
+    private static LongAdder[] newAdders() {
+        LongAdder[] adders = new LongAdder[Callback.values().length];
+        for (int i = 0; i < adders.length; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    void recordInvocation(@NotNull Callback callback) {
+        invocations[callback.ordinal()].increment();
+    }
+
+    /**
+     *
+     * @param validatorName the name of a validator
+     * @return the timers of the given validator
+     */
+    @NotNull CallbackTimers getTimers(@NotNull String validatorName) {
+        return timersByValidator.computeIfAbsent(validatorName, name -> new CallbackTimers());
+    }
+
+    long getInvocations(@NotNull Callback callback) {
+        return invocations[callback.ordinal()].sum();
+    }
+
+    /**
+     *
+     * @param callback the callback
+     * @return the nanoseconds spent in the given callback by all validators
+     */
+    long getNanos(@NotNull Callback callback) {
+        long nanos = 0;
+        for (CallbackTimers timers : timersByValidator.values()) {
+            nanos += timers.getNanos(callback);
+        }
+        return nanos;
+    }
+
+    /**
+     * Adds all values of the given metrics to this one.
+     * @param other the metrics to add
+     */
+    void add(@NotNull ValidatorMetrics other) {
+        nodes.add(other.nodes.sum());
+        mutableNodes.add(other.mutableNodes.sum());
+        immutableNodes.add(other.immutableNodes.sum());
+        docViewNodes.add(other.docViewNodes.sum());
+        indexDefinitions.add(other.indexDefinitions.sum());
+        metaInfPaths.add(other.metaInfPaths.sum());
+        messages.add(other.messages.sum());
+        for (int i = 0; i < invocations.length; i++) {
+            invocations[i].add(other.invocations[i].sum());
+        }
+        for (Map.Entry<String, CallbackTimers> entry : other.timersByValidator.entrySet()) {
+            getTimers(entry.getKey()).add(entry.getValue());
+        }
+    }
+
+    /**
+     * Writes the metrics as JSON object.
+     * @param json the builder to append to
+     * @return the given builder
+     */
+    @NotNull StringBuilder toJson(@NotNull StringBuilder json) {
+        json.append("{\"nodes\":").append(nodes.sum())
+            .append(",\"mutableNodes\":").append(mutableNodes.sum())
+            .append(",\"immutableNodes\":").append(immutableNodes.sum())
+            .append(",\"docViewNodes\":").append(docViewNodes.sum())
+            .append(",\"indexDefinitions\":").append(indexDefinitions.sum())
+            .append(",\"metaInfPaths\":").append(metaInfPaths.sum())
+            .append(",\"messages\":").append(messages.sum())
+            .append(",\"callbacks\":{");
+        for (Callback callback : Callback.values()) {
+            appendCallback(json, callback, getInvocations(callback), getNanos(callback));
+        }
+        json.append("},\"validators\":{");
+        boolean isFirst = true;
+        for (Map.Entry<String, CallbackTimers> entry : timersByValidator.entrySet()) {
+            if (!isFirst) {
+                json.append(',');
+            }
+            isFirst = false;
+            Json.appendString(json, entry.getKey()).append(":{");
+            for (Callback callback : Callback.values()) {
+                appendCallback(json, callback, entry.getValue().getInvocations(callback), entry.getValue().getNanos(callback));
+            }
+            json.append('}');
+        }
+        return json.append("}}");
+    }
+
+    private static void appendCallback(@NotNull StringBuilder json, @NotNull Callback callback, long numInvocations, long totalNanos) {
+        if (callback.ordinal() > 0) {
+            json.append(',');
+        }
+        json.append('"').append(callback.name).append("\":{\"invocations\":").append(numInvocations)
+            .append(",\"totalNanos\":").append(totalNanos)
+            .append(",\"nanosPerInvocation\":").append(numInvocations > 0 ? totalNanos / numInvocations : 0)
+            .append('}');
+    }
+
+    /** The invocations and the time spent per callback of a single validator */
+    static final class CallbackTimers {
+        private final LongAdder[] invocations;
+        private final LongAdder[] nanos;
+
+        CallbackTimers() {
+            invocations = newAdders();
+            nanos = newAdders();
+        }
+
+        void recordInvocation(@NotNull Callback callback, long durationNanos) {
+            invocations[callback.ordinal()].increment();
+            nanos[callback.ordinal()].add(durationNanos);
+        }
+
+        long getInvocations(@NotNull Callback callback) {
+            return invocations[callback.ordinal()].sum();
+        }
+
+        long getNanos(@NotNull Callback callback) {
+            return nanos[callback.ordinal()].sum();
+        }
+
+        void add(@NotNull CallbackTimers other) {
+            for (int i = 0; i < invocations.length; i++) {
+                invocations[i].add(other.invocations[i].sum());
+                nanos[i].add(other.nanos[i].sum());
+            }
+        }
+    }
+}
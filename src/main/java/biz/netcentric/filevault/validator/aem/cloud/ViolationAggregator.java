@@ -0,0 +1,94 @@
+package biz.netcentric.filevault.validator.aem.cloud;
+
+/*-
+ * #%L
+ * AEM Cloud Validator
+ * %%
+ * Copyright (C) 2021 Netcentric - A Cognizant Digital Business
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Counts all violations per rule and keeps the paths of the first violations per rule as samples.
+ * The memory consumption only depends on the number of rules and the number of samples, but not on the number of recorded violations.
+ * Rules are identified by their index.
+ * Paths which are recorded repeatedly for the same rule (as FileVault validates some nodes twice) are only counted once, see {@link RepeatedNodePathFilter}.
+ * {@link #record(int, String)} may be called concurrently, the getters must only be called once all recording threads are done.
+ * In that case the samples are the paths of the first violations which got a slot, which is not necessarily the order of the calls.
+ */
+final class ViolationAggregator {
+
+    private final AtomicLongArray counts;
+    private final AtomicReferenceArray<String>[] samples;
+    /** guarded by the respective filter itself, only contended in case of concurrent violations of the same rule */
+    private final RepeatedNodePathFilter[] repeatedPathFilters;
+
+    /**
+     *
+     * @param numRules the number of rules
+     * @param maxSamplesPerRule the maximum number of paths to keep per rule
+     */
+    ViolationAggregator(int numRules, int maxSamplesPerRule) {
+        if (maxSamplesPerRule < 0) {
+            throw new IllegalArgumentException("The maximum number of samples must not be negative but is " + maxSamplesPerRule);
+        }
+        counts = new AtomicLongArray(numRules);
+        @SuppressWarnings("unchecked")
+        AtomicReferenceArray<String>[] newSamples = new AtomicReferenceArray[numRules];
+        for (int rule = 0; rule < numRules; rule++) {
+            newSamples[rule] = new AtomicReferenceArray<>(maxSamplesPerRule);
+        }
+        samples = newSamples;
+        repeatedPathFilters = new RepeatedNodePathFilter[numRules];
+        for (int rule = 0; rule < numRules; rule++) {
+            repeatedPathFilters[rule] = new RepeatedNodePathFilter();
+        }
+    }
+
+    void record(int rule, @NotNull String path) {
+        RepeatedNodePathFilter repeatedPathFilter = repeatedPathFilters[rule];
+        synchronized (repeatedPathFilter) {
+            if (repeatedPathFilter.isRepeated(path)) {
+                return;
+            }
+        }
+        long count = counts.getAndIncrement(rule);
+        if (count < samples[rule].length()) {
+            samples[rule].set((int) count, path);
+        }
+    }
+
+    long getCount(int rule) {
+        return counts.get(rule);
+    }
+
+    /**
+     *
+     * @param rule the rule index
+     * @return the paths of the first violations of the given rule (in the order in which they were recorded)
+     */
+    @NotNull List<String> getSamples(int rule) {
+        int numSamples = (int) Math.min(counts.get(rule), samples[rule].length());
+        if (numSamples == 0) {
+            return Collections.emptyList();
+        }
+        String[] paths = new String[numSamples];
+        for (int i = 0; i < numSamples; i++) {
+            paths[i] = samples[rule].get(i);
+        }
+        return Collections.unmodifiableList(Arrays.asList(paths));
+    }
+}
@@ -0,0 +1,58 @@
+package biz.netcentric.filevault.validator.aem.cloud;
+
+/*-
+ * #%L
+ * AEM Cloud Validator
+ * %%
+ * Copyright (C) 2021 Netcentric - A Cognizant Digital Business
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.jackrabbit.vault.packaging.PackageType;
+import org.apache.jackrabbit.vault.validation.impl.util.ValidatorSettingsImpl;
+import org.apache.jackrabbit.vault.validation.spi.ValidationContext;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessage;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class AemCloudValidatorFactoryTest {
+
+    private final AemCloudValidatorFactory factory = new AemCloudValidatorFactory();
+    private final ValidationContext context = new SimpleValidationContext("test", PackageType.CONTENT, Paths.get("test.zip"), null);
+
+    @Test
+    void testAggregateViolations() {
+        Map<String, String> options = new HashMap<>();
+        options.put("aggregateViolations", "true");
+        options.put("maxViolationSamples", "1");
+        AemCloudValidator validator = (AemCloudValidator) factory.createValidator(context, new ValidatorSettingsImpl(false, ValidationMessageSeverity.WARN, options));
+        for (int i = 0; i < 10; i++) {
+            Assertions.assertTrue(validator.validate("/var/subnode" + i).isEmpty());
+        }
+        Collection<ValidationMessage> messages = validator.done();
+        MatcherAssert.assertThat(messages, Matchers.contains(
+                new RuleValidationMessage(AemCloudValidator.NodePathViolationType.READONLY_MUTABLE_PATH.getRuleId(), ValidationMessageSeverity.WARN, String.format(AemCloudValidator.VIOLATION_MESSAGE_AGGREGATED_VIOLATIONS, 10, "/var/subnode0", AemCloudValidator.VIOLATION_MESSAGE_READONLY_MUTABLE_PATH))));
+    }
+
+    @Test
+    void testInvalidIntegerOption() {
+        Map<String, String> options = new HashMap<>();
+        options.put("aggregateViolations", "true");
+        options.put("maxViolationSamples", "many");
+        ValidatorSettingsImpl settings = new ValidatorSettingsImpl(false, ValidationMessageSeverity.WARN, options);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> factory.createValidator(context, settings));
+    }
+}
@@ -15,12 +15,24 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
  * #L%
  */
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import javax.jcr.PropertyType;
 
@@ -30,13 +42,16 @@ import org.apache.jackrabbit.spi.commons.name.NameFactoryImpl;
 import org.apache.jackrabbit.vault.packaging.PackageType;
 import org.apache.jackrabbit.vault.util.DocViewNode2;
 import org.apache.jackrabbit.vault.util.DocViewProperty2;
+import org.apache.jackrabbit.vault.validation.ValidationViolation;
 import org.apache.jackrabbit.vault.validation.spi.NodeContext;
+import org.apache.jackrabbit.vault.validation.spi.ValidationContext;
 import org.apache.jackrabbit.vault.validation.spi.ValidationMessage;
 import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
 import org.apache.jackrabbit.vault.validation.spi.util.NodeContextImpl;
 import org.hamcrest.MatcherAssert;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
 import org.junit.jupiter.api.Test;
 
 class AemCloudValidatorTest {
@@ -48,6 +63,28 @@ class AemCloudValidatorTest {
         Assertions.assertFalse(AemCloudValidator.isPackagePathInstalledConditionally("author", Paths.get("/apps/install/container.author.zip")));
         Assertions.assertTrue(AemCloudValidator.isPackagePathInstalledConditionally("author", Paths.get("/apps/install.author/container.zip")));
         Assertions.assertTrue(AemCloudValidator.isPackagePathInstalledConditionally("author", Paths.get("/apps/install.author/subfolder/container.zip")));
+        Assertions.assertTrue(AemCloudValidator.isPackagePathInstalledConditionally("author", Paths.get("/apps/install.author.dev/container.zip")));
+        Assertions.assertTrue(AemCloudValidator.isPackagePathInstalledConditionally("dev", Paths.get("/apps/install.author.dev/container.zip")));
+        Assertions.assertFalse(AemCloudValidator.isPackagePathInstalledConditionally("author", Paths.get("/apps/install.authoring/container.zip")));
+    }
+
+    @Test
+    void testGetInstallationRunModes() {
+        Assertions.assertEquals(Collections.emptySet(), AemCloudValidator.getInstallationRunModes(null));
+        ValidationContext container = new SimpleValidationContext("container", PackageType.CONTAINER, Paths.get("/apps/install.dev/container.zip"), null);
+        ValidationContext subContainer = new SimpleValidationContext("subcontainer", PackageType.CONTAINER, Paths.get("/apps/install.author.stage/subcontainer.zip"), container);
+        Assertions.assertEquals(Collections.singleton("dev"), AemCloudValidator.getInstallationRunModes(container));
+        Assertions.assertEquals(new HashSet<>(Arrays.asList("author", "stage", "dev")), AemCloudValidator.getInstallationRunModes(subContainer));
+    }
+
+    @Test
+    void testReadOnlyMutablePathsInAuthorOnlyPackage() {
+        ValidationContext container = new SimpleValidationContext("container", PackageType.CONTAINER, Paths.get("/apps/install.author.dev/container.zip"), null);
+        AemCloudValidator validator = new AemCloudValidator(false, false, false, PackageType.CONTENT, container, ValidationMessageSeverity.ERROR);
+        Assertions.assertTrue(validator.validate("/var/subnode").isEmpty());
+        container = new SimpleValidationContext("container", PackageType.CONTAINER, Paths.get("/apps/install.publish/container.zip"), null);
+        validator = new AemCloudValidator(false, false, false, PackageType.CONTENT, container, ValidationMessageSeverity.ERROR);
+        Assertions.assertFalse(validator.validate("/var/subnode").isEmpty());
     }
 
     @Test
@@ -82,6 +119,46 @@ class AemCloudValidatorTest {
         Assertions.assertTrue(messages.isEmpty());
     }
 
+    @Test
+    void testAggregatedViolations() {
+        AemCloudValidator validator = new AemCloudValidator(false, false, false, PackageType.MIXED, null, ValidationMessageSeverity.ERROR,
+                AemCloudValidator.DEFAULT_PATH_CLASSIFIER, new ViolationAggregator(AemCloudValidator.NodePathViolationType.values().length, 2));
+        for (int i = 0; i < 1000; i++) {
+            Assertions.assertTrue(validator.validate("/var/subnode" + i).isEmpty());
+        }
+        Assertions.assertTrue(validator.validate("/libs/test").isEmpty());
+        MatcherAssert.assertThat(validator.done(), Matchers.contains(
+                new RuleValidationMessage(AemCloudValidator.NodePathViolationType.READONLY_MUTABLE_PATH.getRuleId(), ValidationMessageSeverity.ERROR, String.format(AemCloudValidator.VIOLATION_MESSAGE_AGGREGATED_VIOLATIONS, 1000, "/var/subnode0, /var/subnode1", AemCloudValidator.VIOLATION_MESSAGE_READONLY_MUTABLE_PATH)),
+                new RuleValidationMessage(AemCloudValidator.NodePathViolationType.MUTABLE_NODES_IN_MIXED_PACKAGE.getRuleId(), ValidationMessageSeverity.ERROR, String.format(AemCloudValidator.VIOLATION_MESSAGE_AGGREGATED_VIOLATIONS, 1000, "/var/subnode0, /var/subnode1", AemCloudValidator.VIOLATION_MESSAGE_MUTABLE_NODES_IN_MIXED_PACKAGE)),
+                new RuleValidationMessage(AemCloudValidator.NodePathViolationType.LIBS_NODES.getRuleId(), ValidationMessageSeverity.ERROR, String.format(AemCloudValidator.VIOLATION_MESSAGE_AGGREGATED_VIOLATIONS, 1, "/libs/test", AemCloudValidator.VIOLATION_MESSAGE_LIBS_NODES))
+        ));
+    }
+
+    @Test
+    void testAggregatedViolationsWithRepeatedNodePaths() throws IOException {
+        ValidationContext context = new SimpleValidationContext("test", PackageType.CONTENT, Paths.get("test.zip"), null);
+        AemCloudValidator validator = new AemCloudValidator(false, false, false, PackageType.CONTENT, null, ValidationMessageSeverity.ERROR,
+                AemCloudValidator.DEFAULT_PATH_CLASSIFIER, new ViolationAggregator(AemCloudValidator.NodePathViolationType.values().length, 3));
+        Map<String, String> files = new HashMap<>();
+        files.put("var/.content.xml", JcrRootValidation.DOC_VIEW_NODE);
+        files.put("var/a/.content.xml", JcrRootValidation.DOC_VIEW_NODE_WITH_CHILDREN);
+        files.put("var/b/file.txt", "test");
+        // the executor passes the paths of all folders having a .content.xml twice
+        MatcherAssert.assertThat(JcrRootValidation.validate(context, validator, files).stream().map(ValidationViolation::getMessage).collect(Collectors.toList()),
+                Matchers.contains(String.format(AemCloudValidator.VIOLATION_MESSAGE_AGGREGATED_VIOLATIONS, 6, "/var, /var/a, /var/a/child/grandchild",
+                        AemCloudValidator.VIOLATION_MESSAGE_READONLY_MUTABLE_PATH)));
+    }
+
+    @Test
+    void testMaxNumViolationsPerType() {
+        AemCloudValidator validator = new AemCloudValidator(false, false, false, PackageType.CONTENT, null, ValidationMessageSeverity.ERROR);
+        int numMessages = 0;
+        for (int i = 0; i < 1000; i++) {
+            numMessages += validator.validate("/var/subnode" + i).size();
+        }
+        assertEquals(5, numMessages);
+    }
+
     @Test
     void testAllowHooksInMutableContent() {
         AemCloudValidator validator = new AemCloudValidator(true, false, false, PackageType.CONTENT, null, ValidationMessageSeverity.ERROR);
@@ -127,8 +204,8 @@ class AemCloudValidatorTest {
         DocViewNode2 node = new DocViewNode2(NameConstants.JCR_ROOT, properties);
         Optional.ofNullable(validator.validate(node, context, true)).ifPresent(messages::addAll);
         MatcherAssert.assertThat(messages, Matchers.containsInAnyOrder(
-                new ValidationMessage(ValidationMessageSeverity.ERROR, String.format(AemCloudValidator.VIOLATION_MESSAGE_INVALID_INDEX_DEFINITION_NODE_NAME, "myindex")),
-                new ValidationMessage(ValidationMessageSeverity.ERROR, String.format(AemCloudValidator.VIOLATION_MESSAGE_INVALID_COMPAT_VERSION_IN_INDEX_DEFINITION, "not set"))
+                new RuleValidationMessage(AemCloudValidator.RULE_ID_INVALID_INDEX_DEFINITION_NODE_NAME, ValidationMessageSeverity.ERROR, String.format(AemCloudValidator.VIOLATION_MESSAGE_INVALID_INDEX_DEFINITION_NODE_NAME, "myindex")),
+                new RuleValidationMessage(AemCloudValidator.RULE_ID_INVALID_COMPAT_VERSION_IN_INDEX_DEFINITION, ValidationMessageSeverity.ERROR, String.format(AemCloudValidator.VIOLATION_MESSAGE_INVALID_COMPAT_VERSION_IN_INDEX_DEFINITION, "not set"))
         ));
     }
 
@@ -146,4 +223,172 @@ class AemCloudValidatorTest {
         assertEquals(1, messages.size());
         assertEquals(String.format(AemCloudValidator.VIOLATION_MESSAGE_NON_LUCENE_TYPE_INDEX_DEFINITION, "property"), messages.iterator().next().getMessage());
     }
+
+    @Test
+    void testNoAllocationsForValidPaths() {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assumptions.assumeTrue(threadMXBean.isThreadAllocatedMemorySupported() && threadMXBean.isThreadAllocatedMemoryEnabled(), "Measuring allocated memory is not supported by this JVM");
+        String[] contentPaths = new String[] { "/", "/content", "/content/example", "/content/example/jcr:content", "/content/example/jcr:content/par", "/conf/example/settings", "/home/users/system/example" };
+        String[] applicationPaths = new String[] { "/", "/apps", "/apps/example", "/apps/example/components/text", "/apps/example/components/text/text.html", "/oak:index/example-1-custom-1" };
+        AemCloudValidator contentValidator = new AemCloudValidator(false, false, false, PackageType.CONTENT, null, ValidationMessageSeverity.ERROR);
+        AemCloudValidator applicationValidator = new AemCloudValidator(false, false, false, PackageType.APPLICATION, null, ValidationMessageSeverity.ERROR);
+        // warm up (also triggers class loading and JIT compilation)
+        validatePaths(contentValidator, contentPaths, 10_000);
+        validatePaths(applicationValidator, applicationPaths, 10_000);
+        // calibrate the overhead of measuring itself
+        long threadId = Thread.currentThread().getId();
+        long start = threadMXBean.getThreadAllocatedBytes(threadId);
+        long overhead = threadMXBean.getThreadAllocatedBytes(threadId) - start;
+
+        final int iterations = 100_000;
+        // the JVM itself occasionally allocates a few KiB in the first round of a fresh JVM (e.g. while deoptimizing), therefore only the best round counts
+        long allocatedBytes = Long.MAX_VALUE;
+        int numMessages = 0;
+        for (int round = 0; round < 5; round++) {
+            start = threadMXBean.getThreadAllocatedBytes(threadId);
+            numMessages += validatePaths(contentValidator, contentPaths, iterations);
+            numMessages += validatePaths(applicationValidator, applicationPaths, iterations);
+            allocatedBytes = Math.min(allocatedBytes, threadMXBean.getThreadAllocatedBytes(threadId) - start - overhead);
+        }
+        assertEquals(0, numMessages);
+        // allow for some noise but that must be way below one byte per node
+        MatcherAssert.assertThat("Allocated bytes for " + (contentPaths.length + applicationPaths.length) * iterations + " nodes", allocatedBytes, Matchers.lessThan(1024L));
+        // done() must not allocate either
+        start = threadMXBean.getThreadAllocatedBytes(threadId);
+        numMessages = contentValidator.done().size() + applicationValidator.done().size();
+        allocatedBytes = threadMXBean.getThreadAllocatedBytes(threadId) - start - overhead;
+        assertEquals(0, numMessages);
+        MatcherAssert.assertThat("Allocated bytes for done()", allocatedBytes, Matchers.lessThan(1024L));
+    }
+
+    private static int validatePaths(AemCloudValidator validator, String[] paths, int iterations) {
+        int numMessages = 0;
+        for (int i = 0; i < iterations; i++) {
+            for (String path : paths) {
+                numMessages += validator.validate(path).size();
+            }
+        }
+        return numMessages;
+    }
+
+    @Test
+    void testConcurrentCallbacks() throws Exception {
+        List<String> paths = new ArrayList<>();
+        paths.add("/");
+        for (int i = 0; i < 5_000; i++) {
+            paths.add("/var/subnode" + i);
+            paths.add("/content/site/page" + i);
+            paths.add("/apps/example/component" + i);
+            paths.add("/libs/example/component" + i);
+        }
+        for (PackageType packageType : new PackageType[] { PackageType.MIXED, PackageType.CONTENT, null }) {
+            Supplier<AemCloudValidator> validatorSupplier = () -> new AemCloudValidator(false, false, false, packageType, null, ValidationMessageSeverity.ERROR);
+            List<String> expectedMessages = validatePaths(validatorSupplier.get(), paths, 1);
+            for (int round = 0; round < 10; round++) {
+                MatcherAssert.assertThat("Package type " + packageType, validatePaths(validatorSupplier.get(), paths, 8), Matchers.equalTo(expectedMessages));
+            }
+        }
+    }
+
+    @Test
+    void testConcurrentCallbacksWithAggregatedViolations() throws Exception {
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            paths.add("/var/subnode" + i);
+        }
+        AemCloudValidator validator = new AemCloudValidator(false, false, false, PackageType.CONTENT, null, ValidationMessageSeverity.ERROR,
+                AemCloudValidator.DEFAULT_PATH_CLASSIFIER, new ViolationAggregator(AemCloudValidator.NodePathViolationType.values().length, 3));
+        List<String> messages = validatePaths(validator, paths, 8);
+        MatcherAssert.assertThat(messages, Matchers.hasSize(1));
+        // the samples depend on the scheduling, but the count must be exact
+        MatcherAssert.assertThat(messages.get(0), Matchers.matchesPattern(
+                "\\Q" + String.format(AemCloudValidator.VIOLATION_MESSAGE_AGGREGATED_VIOLATIONS, 20_000, "\\E/var/subnode\\d+, /var/subnode\\d+, /var/subnode\\d+\\Q", AemCloudValidator.VIOLATION_MESSAGE_READONLY_MUTABLE_PATH) + "\\E"));
+    }
+
+    @Test
+    void testEarlySaturation() {
+        List<String> paths = new ArrayList<>();
+        paths.add("/");
+        for (int i = 0; i < 100; i++) {
+            paths.add("/content/site/page" + i);
+            paths.add("/var/subnode" + i);
+            paths.add("/apps/example/component" + i);
+            if (i % 10 == 0) {
+                paths.add("/libs/example/component" + i);
+            }
+        }
+        int numSaturated = 0;
+        for (PackageType packageType : new PackageType[] { PackageType.MIXED, PackageType.CONTENT, PackageType.APPLICATION, null }) {
+            for (boolean allowLibsNode : new boolean[] { false, true }) {
+                for (boolean allowHooksInMutableContent : new boolean[] { false, true }) {
+                    AemCloudValidator referenceValidator = new AemCloudValidator(false, allowLibsNode, allowHooksInMutableContent, packageType, null, ValidationMessageSeverity.ERROR);
+                    referenceValidator.setEarlySaturationEnabled(false);
+                    AemCloudValidator validator = new AemCloudValidator(false, allowLibsNode, allowHooksInMutableContent, packageType, null, ValidationMessageSeverity.ERROR);
+                    for (String path : paths) {
+                        assertEquals(referenceValidator.validate(path), validator.validate(path), "Messages for path " + path);
+                    }
+                    // meta-inf checks must still be executed after saturation
+                    assertEquals(referenceValidator.validateMetaInfPath(Paths.get("vault/hooks/install-hook.jar")), validator.validateMetaInfPath(Paths.get("vault/hooks/install-hook.jar")));
+                    Assertions.assertFalse(referenceValidator.isSaturated());
+                    if (validator.isSaturated()) {
+                        numSaturated++;
+                    }
+                    assertEquals(referenceValidator.done(), validator.done());
+                }
+            }
+        }
+        // the paths reach all limits and contain both mutable and immutable nodes
+        assertEquals(16, numSaturated);
+    }
+
+    @Test
+    void testEarlySaturationIsFinal() {
+        AemCloudValidator validator = new AemCloudValidator(false, true, false, PackageType.MIXED, null, ValidationMessageSeverity.ERROR);
+        for (int i = 0; i < 4; i++) {
+            MatcherAssert.assertThat(validator.validate("/var/subnode" + i), Matchers.hasSize(2));
+        }
+        Assertions.assertFalse(validator.isSaturated());
+        MatcherAssert.assertThat(validator.validate("/var/subnode4"), Matchers.hasSize(2));
+        Assertions.assertTrue(validator.isSaturated());
+        Assertions.assertTrue(validator.validate("/var/subnode5").isEmpty());
+        // aggregated violations never saturate as they count all nodes
+        validator = new AemCloudValidator(false, true, false, PackageType.MIXED, null, ValidationMessageSeverity.ERROR,
+                AemCloudValidator.DEFAULT_PATH_CLASSIFIER, new ViolationAggregator(AemCloudValidator.NodePathViolationType.values().length, 2));
+        for (int i = 0; i < 10; i++) {
+            validator.validate("/var/subnode" + i);
+        }
+        Assertions.assertFalse(validator.isSaturated());
+    }
+
+    /**
+     * Validates the given paths with the given number of threads (each thread validates every n-th path), starting all threads at once.
+     * @return the texts of all emitted messages including the ones from {@link AemCloudValidator#done()} in sorted order
+     */
+    private static List<String> validatePaths(AemCloudValidator validator, List<String> paths, int numThreads) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        List<ValidationMessage> messages = new ArrayList<>();
+        try {
+            CountDownLatch startLatch = new CountDownLatch(1);
+            List<Future<List<ValidationMessage>>> futures = new ArrayList<>();
+            for (int thread = 0; thread < numThreads; thread++) {
+                int firstIndex = thread;
+                futures.add(executor.submit(() -> {
+                    List<ValidationMessage> threadMessages = new ArrayList<>();
+                    startLatch.await();
+                    for (int i = firstIndex; i < paths.size(); i += numThreads) {
+                        threadMessages.addAll(validator.validate(paths.get(i)));
+                    }
+                    return threadMessages;
+                }));
+            }
+            startLatch.countDown();
+            for (Future<List<ValidationMessage>> future : futures) {
+                messages.addAll(future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        messages.addAll(validator.done());
+        return messages.stream().map(ValidationMessage::getMessage).sorted().collect(Collectors.toList());
+    }
 }
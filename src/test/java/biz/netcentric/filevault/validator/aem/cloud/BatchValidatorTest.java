@@ -0,0 +1,143 @@
+package biz.netcentric.filevault.validator.aem.cloud;
+
+/*-
+ * #%L
+ * AEM Cloud Validator
+ * %%
+ * Copyright (C) 2021 Netcentric - A Cognizant Digital Business
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
+import org.apache.jackrabbit.vault.validation.spi.ValidatorSettings;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BatchValidatorTest {
+
+    private static final String DOC_VIEW_NODE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<jcr:root xmlns:jcr=\"http://www.jcp.org/jcr/1.0\" jcr:primaryType=\"nt:unstructured\"/>\n";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testValidateDirectory() throws IOException, InterruptedException {
+        Map<String, byte[]> contentPackage = createPackage("content", "content", "/var/test");
+        contentPackage.put("jcr_root/var/test/.content.xml", DOC_VIEW_NODE.getBytes(StandardCharsets.UTF_8));
+        writeZip(directory.resolve("content.zip"), contentPackage);
+
+        Map<String, byte[]> applicationPackage = createPackage("application", "application", "/apps/test");
+        applicationPackage.put("jcr_root/apps/test/.content.xml", DOC_VIEW_NODE.getBytes(StandardCharsets.UTF_8));
+        writeZip(directory.resolve("application.zip"), applicationPackage);
+
+        Map<String, byte[]> containerPackage = createPackage("container", "container", "/apps/container");
+        containerPackage.put("jcr_root/apps/container/install/content.zip", toZip(contentPackage));
+        Files.createDirectories(directory.resolve("nested"));
+        writeZip(directory.resolve("nested").resolve("container.zip"), containerPackage);
+
+        // not a package
+        Files.write(directory.resolve("readme.txt"), Collections.singletonList("test"));
+
+        Path reportFile = directory.resolve("report").resolve("report.jsonl");
+        BatchValidator batchValidator = new BatchValidator(new BatchValidator.Settings(ValidationMessageSeverity.WARN, Collections.singletonMap("reportFile", reportFile.toString())), 2);
+        StringWriter report = new StringWriter();
+        BatchValidator.Summary summary = batchValidator.validate(directory, report);
+        Assertions.assertEquals(3, summary.getNumPackages());
+        Assertions.assertEquals(0, summary.getNumErrors());
+        // only the content package (once standalone and once as sub package), FileVault validates '/var/test' twice
+        Assertions.assertEquals(6, summary.getNumWarnings());
+        // 2 nodes per content and application package and 4 own nodes of the container package
+        Assertions.assertEquals(10, summary.getNumNodes());
+        MatcherAssert.assertThat(report.toString(), Matchers.allOf(
+                Matchers.containsString("Package application.zip: 0 violation(s), 2 node(s)"),
+                Matchers.containsString("Package content.zip: 3 violation(s), 2 node(s)"),
+                Matchers.containsString("Package " + Paths.get("nested", "container.zip") + ": 3 violation(s), 6 node(s)"),
+                Matchers.containsString("[WARN] " + AemCloudValidator.VIOLATION_MESSAGE_READONLY_MUTABLE_PATH),
+                Matchers.containsString("nodePath=/var/test"),
+                Matchers.containsString("Validated 3 package(s)")));
+        // the report file contains the violations of all packages
+        MatcherAssert.assertThat(Files.readAllLines(reportFile, StandardCharsets.UTF_8), Matchers.hasSize(6));
+    }
+
+    @Test
+    void testExternalInstallHook() throws IOException, InterruptedException {
+        Map<String, byte[]> contentPackage = createPackage("content", "content", "/content/test",
+                Collections.singletonMap("installhook.test.class", "biz.netcentric.test.InstallHook"));
+        contentPackage.put("jcr_root/content/test/.content.xml", DOC_VIEW_NODE.getBytes(StandardCharsets.UTF_8));
+        writeZip(directory.resolve("content.zip"), contentPackage);
+
+        BatchValidator batchValidator = new BatchValidator(new BatchValidator.Settings(ValidationMessageSeverity.WARN, Collections.emptyMap()), 1);
+        StringWriter report = new StringWriter();
+        BatchValidator.Summary summary = batchValidator.validate(directory, report);
+        Assertions.assertEquals(1, summary.getNumWarnings());
+        MatcherAssert.assertThat(report.toString(), Matchers.containsString("[WARN] " + AemCloudValidator.VIOLATION_MESSAGE_INSTALL_HOOK_IN_MUTABLE_PACKAGE));
+    }
+
+    @Test
+    void testInvalidParallelism() {
+        ValidatorSettings settings = new BatchValidator.Settings(ValidationMessageSeverity.ERROR, Collections.emptyMap());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new BatchValidator(settings, 0));
+    }
+
+    private static Map<String, byte[]> createPackage(String name, String packageType, String filterRoot) {
+        return createPackage(name, packageType, filterRoot, Collections.emptyMap());
+    }
+
+    private static Map<String, byte[]> createPackage(String name, String packageType, String filterRoot, Map<String, String> additionalProperties) {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        StringBuilder additionalEntries = new StringBuilder();
+        additionalProperties.forEach((key, value) -> additionalEntries.append("<entry key=\"").append(key).append("\">").append(value).append("</entry>\n"));
+        String properties = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n"
+                + "<!DOCTYPE properties SYSTEM \"http://java.sun.com/dtd/properties.dtd\">\n"
+                + "<properties>\n"
+                + "<entry key=\"group\">biz.netcentric</entry>\n"
+                + "<entry key=\"name\">" + name + "</entry>\n"
+                + "<entry key=\"version\">1.0.0</entry>\n"
+                + "<entry key=\"packageType\">" + packageType + "</entry>\n"
+                + additionalEntries
+                + "</properties>\n";
+        entries.put("META-INF/vault/properties.xml", properties.getBytes(StandardCharsets.UTF_8));
+        String filter = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<workspaceFilter version=\"1.0\"><filter root=\"" + filterRoot + "\"/></workspaceFilter>\n";
+        entries.put("META-INF/vault/filter.xml", filter.getBytes(StandardCharsets.UTF_8));
+        return entries;
+    }
+
+    private static void writeZip(Path file, Map<String, byte[]> entries) throws IOException {
+        Files.write(file, toZip(entries));
+    }
+
+    private static byte[] toZip(Map<String, byte[]> entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                zip.putNextEntry(new ZipEntry(entry.getKey()));
+                zip.write(entry.getValue());
+                zip.closeEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+}
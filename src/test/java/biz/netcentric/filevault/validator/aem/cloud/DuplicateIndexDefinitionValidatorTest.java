@@ -0,0 +1,99 @@
+package biz.netcentric.filevault.validator.aem.cloud;
+
+/*-
+ * #%L
+ * AEM Cloud Validator
+ * %%
+ * Copyright (C) 2021 Netcentric - A Cognizant Digital Business
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.spi.commons.name.NameConstants;
+import org.apache.jackrabbit.spi.commons.name.NameFactoryImpl;
+import org.apache.jackrabbit.util.Text;
+import org.apache.jackrabbit.vault.packaging.PackageType;
+import org.apache.jackrabbit.vault.util.DocViewNode2;
+import org.apache.jackrabbit.vault.util.DocViewProperty2;
+import org.apache.jackrabbit.vault.validation.impl.util.ValidatorSettingsImpl;
+import org.apache.jackrabbit.vault.validation.spi.DocumentViewXmlValidator;
+import org.apache.jackrabbit.vault.validation.spi.ValidationContext;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessage;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
+import org.apache.jackrabbit.vault.validation.spi.util.NodeContextImpl;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Test;
+
+class DuplicateIndexDefinitionValidatorTest {
+
+    @Test
+    void testDuplicateAndSupersededIndexDefinitionsAcrossSubPackages() {
+        Map<String, String> options = new HashMap<>();
+        options.put("detectDuplicateIndexDefinitions", "true");
+        options.put("duplicateIndexDefinitionsSeverity", "error");
+        ValidatorSettingsImpl settings = new ValidatorSettingsImpl(false, ValidationMessageSeverity.WARN, options);
+        AemCloudValidatorFactory factory = new AemCloudValidatorFactory();
+
+        ValidationContext containerContext = new SimpleValidationContext("container", PackageType.CONTAINER, Paths.get("container.zip"), null);
+        DocumentViewXmlValidator containerValidator = (DocumentViewXmlValidator) factory.createValidator(containerContext, settings);
+
+        ValidationContext firstContext = new SimpleValidationContext("first", PackageType.APPLICATION, Paths.get("jcr_root", "apps", "install", "first.zip"), containerContext);
+        DocumentViewXmlValidator firstValidator = (DocumentViewXmlValidator) factory.createValidator(firstContext, settings);
+        validateIndexDefinition(firstValidator, "/oak:index/damAssetLucene-8-custom-1", "async");
+        validateIndexDefinition(firstValidator, "/oak:index/acme.product-1-custom-1", "async");
+        MatcherAssert.assertThat(firstValidator.done(), Matchers.anyOf(Matchers.nullValue(), Matchers.empty()));
+
+        ValidationContext secondContext = new SimpleValidationContext("second", PackageType.APPLICATION, Paths.get("jcr_root", "apps", "install", "second.zip"), containerContext);
+        DocumentViewXmlValidator secondValidator = (DocumentViewXmlValidator) factory.createValidator(secondContext, settings);
+        // identical duplicate
+        validateIndexDefinition(secondValidator, "/oak:index/damAssetLucene-8-custom-1", "async");
+        // differing duplicate
+        validateIndexDefinition(secondValidator, "/oak:index/acme.product-1-custom-1", "fulltext-async");
+        // superseded versions
+        validateIndexDefinition(secondValidator, "/oak:index/damAssetLucene-8-custom-2", "async");
+        validateIndexDefinition(secondValidator, "/oak:index/damAssetLucene-9-custom-1", "async");
+        // not following naming policy
+        validateIndexDefinition(secondValidator, "/oak:index/invalid", "async");
+        MatcherAssert.assertThat(secondValidator.done(), Matchers.anyOf(Matchers.nullValue(), Matchers.empty()));
+
+        MatcherAssert.assertThat(containerValidator.done(), Matchers.contains(
+                message(DuplicateIndexDefinitionValidator.RULE_ID_CONFLICTING, String.format(DuplicateIndexDefinitionValidator.VIOLATION_MESSAGE_CONFLICTING_INDEX_DEFINITION, "/oak:index/acme.product-1-custom-1",
+                        "biz.netcentric:first:1.0.0, biz.netcentric:second:1.0.0", "async"), "/oak:index/acme.product-1-custom-1"),
+                message(DuplicateIndexDefinitionValidator.RULE_ID_DUPLICATE, String.format(DuplicateIndexDefinitionValidator.VIOLATION_MESSAGE_DUPLICATE_INDEX_DEFINITION, "/oak:index/damAssetLucene-8-custom-1",
+                        "biz.netcentric:first:1.0.0, biz.netcentric:second:1.0.0"), "/oak:index/damAssetLucene-8-custom-1"),
+                message(DuplicateIndexDefinitionValidator.RULE_ID_SUPERSEDED, String.format(DuplicateIndexDefinitionValidator.VIOLATION_MESSAGE_SUPERSEDED_INDEX_DEFINITION, "/oak:index/damAssetLucene-8-custom-1",
+                        "biz.netcentric:first:1.0.0", "/oak:index/damAssetLucene-9-custom-1", "biz.netcentric:second:1.0.0"), "/oak:index/damAssetLucene-8-custom-1"),
+                message(DuplicateIndexDefinitionValidator.RULE_ID_SUPERSEDED, String.format(DuplicateIndexDefinitionValidator.VIOLATION_MESSAGE_SUPERSEDED_INDEX_DEFINITION, "/oak:index/damAssetLucene-8-custom-2",
+                        "biz.netcentric:second:1.0.0", "/oak:index/damAssetLucene-9-custom-1", "biz.netcentric:second:1.0.0"), "/oak:index/damAssetLucene-8-custom-2")));
+    }
+
+    private static void validateIndexDefinition(DocumentViewXmlValidator validator, String nodePath, String async) {
+        DocViewNode2 node = new DocViewNode2(name(Text.getName(nodePath)), Arrays.asList(
+                new DocViewProperty2(NameConstants.JCR_PRIMARYTYPE, "oak:QueryIndexDefinition"),
+                new DocViewProperty2(name("type"), "lucene"),
+                new DocViewProperty2(name("async"), async)));
+        Collection<ValidationMessage> messages = validator.validate(node, new NodeContextImpl(nodePath, Paths.get("_oak_index", ".content.xml"), Paths.get("jcr_root")), false);
+        // only messages from AemCloudValidator (regarding compatVersion and naming policy)
+        MatcherAssert.assertThat(messages, Matchers.everyItem(Matchers.hasProperty("severity", Matchers.is(ValidationMessageSeverity.WARN))));
+    }
+
+    private static ValidationMessage message(String ruleId, String message, String nodePath) {
+        return new RuleValidationMessage(ruleId, ValidationMessageSeverity.ERROR, message, nodePath, null, null, 0, 0, null);
+    }
+
+    private static Name name(String localName) {
+        return NameFactoryImpl.getInstance().create(Name.NS_DEFAULT_URI, localName);
+    }
+}
@@ -0,0 +1,134 @@
+package biz.netcentric.filevault.validator.aem.cloud;
+
+/*-
+ * #%L
+ * AEM Cloud Validator
+ * %%
+ * Copyright (C) 2021 Netcentric - A Cognizant Digital Business
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.spi.commons.name.NameConstants;
+import org.apache.jackrabbit.spi.commons.name.NameFactoryImpl;
+import org.apache.jackrabbit.util.Text;
+import org.apache.jackrabbit.vault.packaging.PackageType;
+import org.apache.jackrabbit.vault.util.DocViewNode2;
+import org.apache.jackrabbit.vault.util.DocViewProperty2;
+import org.apache.jackrabbit.vault.validation.impl.util.ValidatorSettingsImpl;
+import org.apache.jackrabbit.vault.validation.spi.NodePathValidator;
+import org.apache.jackrabbit.vault.validation.spi.ValidationContext;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessage;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
+import org.apache.jackrabbit.vault.validation.spi.Validator;
+import org.apache.jackrabbit.vault.validation.spi.util.NodeContextImpl;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class FlatHierarchyValidatorTest {
+
+    @Test
+    void testFlatHierarchies() {
+        FlatHierarchyValidator validator = new FlatHierarchyValidator(3, ValidationMessageSeverity.WARN);
+        validator.validate("/");
+        validator.validate("/content");
+        validateDocView(validator, "/content/ordered", "sling:OrderedFolder");
+        validator.validate("/content/ordered");
+        for (int i = 0; i < 5; i++) {
+            validator.validate("/content/ordered/item" + i);
+            // same path passed twice in a row (folder and .content.xml) must only be counted once
+            validator.validate("/content/ordered/item" + i);
+        }
+        // within limit
+        for (int i = 0; i < 3; i++) {
+            validator.validate("/content/ordered/item0/child" + i);
+        }
+        // primary type only known after the children (e.g. for .content.xml processed after the child folders)
+        for (int i = 0; i < 4; i++) {
+            validator.validate("/content/unstructured/item" + i);
+        }
+        validateDocView(validator, "/content/unstructured", "nt:unstructured");
+        // unknown primary type
+        for (int i = 0; i < 4; i++) {
+            validator.validate("/content/unknown/item" + i);
+        }
+        MatcherAssert.assertThat(validator.done(), Matchers.contains(
+                message("/content/ordered", "sling:OrderedFolder", 5),
+                message("/content/unknown", FlatHierarchyValidator.UNKNOWN_PRIMARY_TYPE, 4),
+                message("/content/unstructured", "nt:unstructured", 4)));
+    }
+
+    @Test
+    void testChildNamesWithEqualHashes() {
+        ChildNodeCounter counter = new ChildNodeCounter();
+        // "Aa" and "BB" have the same hash code
+        Assertions.assertEquals("Aa".hashCode(), "BB".hashCode());
+        int slot = counter.countChild("/content/Aa");
+        counter.countChild("/content/BB");
+        counter.countChild("/content/BB");
+        counter.countChild("/content/AaBB");
+        counter.countChild("/content/BBBB");
+        Assertions.assertEquals(4, counter.getChildCount(slot));
+    }
+
+    @Test
+    void testManyParents() {
+        ChildNodeCounter counter = new ChildNodeCounter();
+        for (int i = 0; i < 10000; i++) {
+            if (i % 2 == 0) {
+                counter.countChild("/content/parent" + i / 2);
+            }
+            counter.countChild("/content/parent" + i / 2 + "/child" + i);
+        }
+        Assertions.assertEquals(5001, counter.size());
+        MatcherAssert.assertThat(counter.capacity(), Matchers.greaterThanOrEqualTo(2 * counter.size()));
+        for (int i = 0; i < 5000; i++) {
+            int slot = counter.getSlot("/content/parent" + i);
+            Assertions.assertEquals(2, counter.getChildCount(slot));
+        }
+        Assertions.assertEquals(5000, counter.getChildCount(counter.getSlot("/content")));
+        Assertions.assertEquals(-1, counter.getSlot("/content/parent5000"));
+        Assertions.assertEquals(-1, counter.countChild("/"));
+    }
+
+    @Test
+    void testFactoryOption() {
+        Map<String, String> options = new HashMap<>();
+        ValidationContext context = new SimpleValidationContext("test", PackageType.CONTENT, Paths.get("test.zip"), null);
+        Validator validator = new AemCloudValidatorFactory().createValidator(context, new ValidatorSettingsImpl(false, ValidationMessageSeverity.WARN, options));
+        MatcherAssert.assertThat(validator, Matchers.instanceOf(AemCloudValidator.class));
+
+        options.put("maxChildNodes", "1");
+        options.put("maxChildNodesSeverity", "error");
+        NodePathValidator nodePathValidator = (NodePathValidator) new AemCloudValidatorFactory().createValidator(context, new ValidatorSettingsImpl(false, ValidationMessageSeverity.WARN, options));
+        nodePathValidator.validate("/content");
+        nodePathValidator.validate("/content/a");
+        nodePathValidator.validate("/content/b");
+        MatcherAssert.assertThat(nodePathValidator.done(), Matchers.contains(
+                new RuleValidationMessage(FlatHierarchyValidator.RULE_ID, ValidationMessageSeverity.ERROR, String.format(FlatHierarchyValidator.VIOLATION_MESSAGE_TOO_MANY_CHILD_NODES, "/content", FlatHierarchyValidator.UNKNOWN_PRIMARY_TYPE, 2, 1),
+                        "/content", null, null, 0, 0, null)));
+    }
+
+    private static void validateDocView(FlatHierarchyValidator validator, String nodePath, String primaryType) {
+        Name name = NameFactoryImpl.getInstance().create(Name.NS_DEFAULT_URI, Text.getName(nodePath));
+        DocViewNode2 node = new DocViewNode2(name, Collections.singletonList(new DocViewProperty2(NameConstants.JCR_PRIMARYTYPE, primaryType)));
+        validator.validate(node, new NodeContextImpl(nodePath, Paths.get(nodePath, ".content.xml"), Paths.get("jcr_root")), false);
+    }
+
+    private static ValidationMessage message(String nodePath, String primaryType, int childCount) {
+        return new RuleValidationMessage(FlatHierarchyValidator.RULE_ID, ValidationMessageSeverity.WARN, String.format(FlatHierarchyValidator.VIOLATION_MESSAGE_TOO_MANY_CHILD_NODES, nodePath, primaryType, childCount, 3),
+                nodePath, null, null, 0, 0, null);
+    }
+}
@@ -0,0 +1,74 @@
+package biz.netcentric.filevault.validator.aem.cloud;
+
+/*-
+ * #%L
+ * AEM Cloud Validator
+ * %%
+ * Copyright (C) 2021 Netcentric - A Cognizant Digital Business
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class GlobMatcherTest {
+
+    @Test
+    void testMatch() {
+        GlobMatcher matcher = new GlobMatcher(Arrays.asList(
+                "/conf/*/settings/wcm/templates/*/policies", // 0
+                "/var/acme", // 1
+                "/content/**/jcr:content", // 2
+                "/content/site-?", // 3
+                "/content/*")); // 4
+        assertMatches(matcher, "/conf/site/settings/wcm/templates/page/policies", 0);
+        assertMatches(matcher, "/conf/site/settings/wcm/templates/page/policies/jcr:content", 0);
+        assertMatches(matcher, "/conf/site/settings/wcm/templates/page");
+        assertMatches(matcher, "/conf/site/sub/settings/wcm/templates/page/policies");
+        assertMatches(matcher, "/conf/site/settings/wcm/templates/page/policiesfoo");
+        assertMatches(matcher, "/var/acme", 1);
+        assertMatches(matcher, "/var/acme/test", 1);
+        assertMatches(matcher, "/var/acmefoo");
+        assertMatches(matcher, "/var");
+        assertMatches(matcher, "/content/site-a", 3, 4);
+        assertMatches(matcher, "/content/site-ab", 4);
+        assertMatches(matcher, "/content/site-a/page/jcr:content", 2, 3, 4);
+        assertMatches(matcher, "/content/site/a/b/jcr:content/par", 2, 4);
+        assertMatches(matcher, "/content");
+        assertMatches(matcher, "/");
+        assertMatches(matcher, "/äöü");
+    }
+
+    @Test
+    void testManyGlobs() {
+        List<String> globs = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            globs.add("/content/site" + i + "/*/jcr:content");
+        }
+        GlobMatcher matcher = new GlobMatcher(globs);
+        assertMatches(matcher, "/content/site999/page/jcr:content", 999);
+        assertMatches(matcher, "/content/site10/page/jcr:content/par", 10);
+        assertMatches(matcher, "/content/site10/jcr:content");
+    }
+
+    @Test
+    void testInvalidGlobs() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new GlobMatcher(Collections.singletonList("content")));
+        GlobMatcher matcher = new GlobMatcher(Collections.emptyList());
+        assertMatches(matcher, "/content");
+    }
+
+    private static void assertMatches(GlobMatcher matcher, String path, int... expectedGlobIndices) {
+        Assertions.assertArrayEquals(expectedGlobIndices, matcher.match(path), "Unexpected matches for " + path);
+    }
+}
@@ -0,0 +1,132 @@
+package biz.netcentric.filevault.validator.aem.cloud;
+
+/*-
+ * #%L
+ * AEM Cloud Validator
+ * %%
+ * Copyright (C) 2021 Netcentric - A Cognizant Digital Business
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.jcr.PropertyType;
+
+import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.spi.commons.name.NameConstants;
+import org.apache.jackrabbit.spi.commons.name.NameFactoryImpl;
+import org.apache.jackrabbit.util.Text;
+import org.apache.jackrabbit.vault.packaging.PackageType;
+import org.apache.jackrabbit.vault.util.DocViewNode2;
+import org.apache.jackrabbit.vault.util.DocViewProperty2;
+import org.apache.jackrabbit.vault.validation.impl.util.ValidatorSettingsImpl;
+import org.apache.jackrabbit.vault.validation.spi.DocumentViewXmlValidator;
+import org.apache.jackrabbit.vault.validation.spi.ValidationContext;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessage;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
+import org.apache.jackrabbit.vault.validation.spi.util.NodeContextImpl;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import biz.netcentric.filevault.validator.aem.cloud.IndexDefinitionCostValidator.Rule;
+
+class IndexDefinitionCostValidatorTest {
+
+    private static final String INDEX_PATH = "/oak:index/test-1-custom-1";
+
+    @Test
+    void testCostlyIndexDefinition() {
+        IndexDefinitionCostValidator validator = new IndexDefinitionCostValidator(severities(ValidationMessageSeverity.WARN));
+        List<ValidationMessage> messages = new ArrayList<>();
+        validate(validator, INDEX_PATH, messages, property(NameConstants.JCR_PRIMARYTYPE, "oak:QueryIndexDefinition"), property("type", "lucene"));
+        validate(validator, INDEX_PATH + "/indexRules", messages);
+        validate(validator, INDEX_PATH + "/indexRules/nt:base", messages);
+        validate(validator, INDEX_PATH + "/indexRules/nt:base/properties", messages);
+        validate(validator, INDEX_PATH + "/indexRules/nt:base/properties/all", messages, property("name", ".*"), property("isRegexp", "true"), property("nodeScopeIndex", "true"), property("analyzed", "true"));
+        validate(validator, INDEX_PATH + "/indexRules/nt:base/properties/title", messages, property("name", "jcr:title"), property("analyzed", "true"));
+        validate(validator, INDEX_PATH + "/aggregates/nt:base", messages);
+        // not below an index definition
+        validate(validator, "/content/indexRules/nt:base", messages);
+        MatcherAssert.assertThat(messages, Matchers.contains(
+                new RuleValidationMessage(Rule.MISSING_INCLUDED_PATHS.getId(), ValidationMessageSeverity.WARN, String.format(IndexDefinitionCostValidator.VIOLATION_MESSAGE_MISSING_INCLUDED_PATHS, INDEX_PATH)),
+                new RuleValidationMessage(Rule.MISSING_ASYNC.getId(), ValidationMessageSeverity.WARN, String.format(IndexDefinitionCostValidator.VIOLATION_MESSAGE_MISSING_ASYNC, INDEX_PATH)),
+                new RuleValidationMessage(Rule.MISSING_EVALUATE_PATH_RESTRICTIONS.getId(), ValidationMessageSeverity.WARN, String.format(IndexDefinitionCostValidator.VIOLATION_MESSAGE_MISSING_EVALUATE_PATH_RESTRICTIONS, INDEX_PATH)),
+                new RuleValidationMessage(Rule.NT_BASE_RULE.getId(), ValidationMessageSeverity.WARN, String.format(IndexDefinitionCostValidator.VIOLATION_MESSAGE_NT_BASE_RULE, INDEX_PATH + "/indexRules/nt:base")),
+                new RuleValidationMessage(Rule.REGEX_PROPERTY_FULLTEXT.getId(), ValidationMessageSeverity.WARN, String.format(IndexDefinitionCostValidator.VIOLATION_MESSAGE_REGEX_PROPERTY_FULLTEXT, INDEX_PATH + "/indexRules/nt:base/properties/all", "nodeScopeIndex")),
+                new RuleValidationMessage(Rule.REGEX_PROPERTY_FULLTEXT.getId(), ValidationMessageSeverity.WARN, String.format(IndexDefinitionCostValidator.VIOLATION_MESSAGE_REGEX_PROPERTY_FULLTEXT, INDEX_PATH + "/indexRules/nt:base/properties/all", "analyzed")),
+                new RuleValidationMessage(Rule.NT_BASE_RULE.getId(), ValidationMessageSeverity.WARN, String.format(IndexDefinitionCostValidator.VIOLATION_MESSAGE_NT_BASE_RULE, INDEX_PATH + "/aggregates/nt:base"))));
+    }
+
+    @Test
+    void testEfficientIndexDefinition() {
+        IndexDefinitionCostValidator validator = new IndexDefinitionCostValidator(severities(ValidationMessageSeverity.WARN));
+        List<ValidationMessage> messages = new ArrayList<>();
+        validate(validator, INDEX_PATH, messages, property(NameConstants.JCR_PRIMARYTYPE, "oak:QueryIndexDefinition"), property("type", "lucene"),
+                new DocViewProperty2(name("includedPaths"), Arrays.asList("/content/site")), property("async", "async"), property("evaluatePathRestrictions", "true"));
+        validate(validator, INDEX_PATH + "/indexRules/cq:Page", messages);
+        validate(validator, INDEX_PATH + "/indexRules/cq:Page/properties/title", messages, property("name", "jcr:content/jcr:title"), property("analyzed", "true"));
+        // non-lucene index definitions are already reported by AemCloudValidator
+        validate(validator, "/oak:index/property-1-custom-1", messages, property(NameConstants.JCR_PRIMARYTYPE, "oak:QueryIndexDefinition"), property("type", "property"));
+        Assertions.assertTrue(messages.isEmpty(), "Unexpected messages " + messages);
+    }
+
+    @Test
+    void testSeveritiesFromFactoryOption() {
+        Map<String, String> options = new HashMap<>();
+        options.put("analyzeIndexDefinitionCosts", "true");
+        options.put("indexDefinitionCostSeverities", "indexWithoutAsync=error, indexWithoutEvaluatePathRestrictions=info");
+        ValidationContext context = new SimpleValidationContext("test", PackageType.APPLICATION, Paths.get("test.zip"), null);
+        DocumentViewXmlValidator validator = (DocumentViewXmlValidator) new AemCloudValidatorFactory().createValidator(context, new ValidatorSettingsImpl(false, ValidationMessageSeverity.WARN, options));
+        List<ValidationMessage> messages = new ArrayList<>();
+        validate(validator, INDEX_PATH, messages, property(NameConstants.JCR_PRIMARYTYPE, "oak:QueryIndexDefinition"), property("type", "lucene"),
+                new DocViewProperty2(name("compatVersion"), "2", PropertyType.LONG), property("queryPaths", "/content"));
+        MatcherAssert.assertThat(messages, Matchers.contains(
+                new RuleValidationMessage(Rule.MISSING_ASYNC.getId(), ValidationMessageSeverity.ERROR, String.format(IndexDefinitionCostValidator.VIOLATION_MESSAGE_MISSING_ASYNC, INDEX_PATH)),
+                new RuleValidationMessage(Rule.MISSING_EVALUATE_PATH_RESTRICTIONS.getId(), ValidationMessageSeverity.INFO, String.format(IndexDefinitionCostValidator.VIOLATION_MESSAGE_MISSING_EVALUATE_PATH_RESTRICTIONS, INDEX_PATH))));
+
+        options.put("indexDefinitionCostSeverities", "unknownRule=error");
+        ValidatorSettingsImpl invalidSettings = new ValidatorSettingsImpl(false, ValidationMessageSeverity.WARN, options);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new AemCloudValidatorFactory().createValidator(context, invalidSettings));
+    }
+
+    private static Map<Rule, ValidationMessageSeverity> severities(ValidationMessageSeverity severity) {
+        Map<Rule, ValidationMessageSeverity> severities = new EnumMap<>(Rule.class);
+        for (Rule rule : Rule.values()) {
+            severities.put(rule, severity);
+        }
+        return severities;
+    }
+
+    private static void validate(DocumentViewXmlValidator validator, String nodePath, Collection<ValidationMessage> messages, DocViewProperty2... properties) {
+        DocViewNode2 node = new DocViewNode2(name(Text.getName(nodePath)), Arrays.asList(properties));
+        Optional.ofNullable(validator.validate(node, new NodeContextImpl(nodePath, Paths.get("_oak_index", ".content.xml"), Paths.get("jcr_root")), false))
+                .ifPresent(messages::addAll);
+    }
+
+    private static DocViewProperty2 property(String name, String value) {
+        return property(name(name), value);
+    }
+
+    private static DocViewProperty2 property(Name name, String value) {
+        return new DocViewProperty2(name, value);
+    }
+
+    private static Name name(String localName) {
+        return NameFactoryImpl.getInstance().create(Name.NS_DEFAULT_URI, localName);
+    }
+}
@@ -0,0 +1,135 @@
+package biz.netcentric.filevault.validator.aem.cloud;
+
+/*-
+ * #%L
+ * AEM Cloud Validator
+ * %%
+ * Copyright (C) 2021 Netcentric - A Cognizant Digital Business
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.spi.commons.name.NameConstants;
+import org.apache.jackrabbit.spi.commons.name.NameFactoryImpl;
+import org.apache.jackrabbit.vault.packaging.PackageType;
+import org.apache.jackrabbit.vault.util.DocViewNode2;
+import org.apache.jackrabbit.vault.util.DocViewProperty2;
+import org.apache.jackrabbit.vault.validation.impl.util.ValidatorSettingsImpl;
+import org.apache.jackrabbit.vault.validation.spi.ValidationContext;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
+import org.apache.jackrabbit.vault.validation.spi.Validator;
+import org.apache.jackrabbit.vault.validation.spi.util.NodeContextImpl;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import biz.netcentric.filevault.validator.aem.cloud.ValidatorMetrics.Callback;
+
+class InstrumentedValidatorTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testMetricsOfContainerAndSubPackages() throws IOException {
+        AemCloudValidatorFactory factory = new AemCloudValidatorFactory();
+        ValidatorSettingsImpl settings = new ValidatorSettingsImpl(false, ValidationMessageSeverity.ERROR,
+                Collections.singletonMap("metricsDirectory", directory.toString()));
+        ValidationContext containerContext = new SimpleValidationContext("container", PackageType.CONTAINER, Paths.get("container.zip"), null);
+        InstrumentedValidator containerValidator = (InstrumentedValidator) factory.createValidator(containerContext, settings);
+        containerValidator.validate("/");
+        containerValidator.validate("/apps");
+        containerValidator.validate("/apps/container");
+        containerValidator.validateMetaInfPath(Paths.get("vault", "filter.xml"));
+
+        ValidationContext subPackageContext = new SimpleValidationContext("content", PackageType.CONTENT, Paths.get("jcr_root", "apps", "container", "install", "content.zip"), containerContext);
+        Validator subPackageValidator = factory.createValidator(subPackageContext, settings);
+        InstrumentedValidator instrumentedSubPackageValidator = (InstrumentedValidator) subPackageValidator;
+        instrumentedSubPackageValidator.validate("/content");
+        instrumentedSubPackageValidator.validate("/var/test");
+        DocViewNode2 indexDefinition = new DocViewNode2(NameConstants.JCR_ROOT, Arrays.asList(
+                new DocViewProperty2(NameConstants.JCR_PRIMARYTYPE, "oak:QueryIndexDefinition"),
+                new DocViewProperty2(NameFactoryImpl.getInstance().create(Name.NS_DEFAULT_URI, "type"), "lucene")));
+        instrumentedSubPackageValidator.validate(indexDefinition, new NodeContextImpl("/oak:index/test-1-custom-1", Paths.get("_oak_index", "test"), Paths.get("jcr_root")), true);
+        subPackageValidator.done();
+
+        ValidatorMetrics subPackageMetrics = instrumentedSubPackageValidator.getMetrics();
+        Assertions.assertEquals(2, subPackageMetrics.nodes.sum());
+        Assertions.assertEquals(2, subPackageMetrics.mutableNodes.sum());
+        Assertions.assertEquals(0, subPackageMetrics.immutableNodes.sum());
+        Assertions.assertEquals(1, subPackageMetrics.indexDefinitions.sum());
+        // the /var node and the missing compatVersion
+        Assertions.assertEquals(2, subPackageMetrics.messages.sum());
+        Assertions.assertEquals(2, subPackageMetrics.getInvocations(Callback.NODE_PATH));
+        Assertions.assertEquals(1, subPackageMetrics.getInvocations(Callback.DONE));
+        // nothing written before the outermost package is done
+        try (Stream<Path> files = Files.list(directory)) {
+            Assertions.assertEquals(0, files.count());
+        }
+
+        containerValidator.done();
+        Assertions.assertEquals(3, containerValidator.getMetrics().nodes.sum());
+        Assertions.assertEquals(1, containerValidator.getMetrics().getInvocations(Callback.META_INF_PATH));
+        String json = new String(Files.readAllBytes(directory.resolve("biz.netcentric_container_1.0.0-metrics.json")), StandardCharsets.UTF_8);
+        MatcherAssert.assertThat(json, Matchers.allOf(
+                Matchers.startsWith("{\"package\":{\"package\":\"biz.netcentric:container:1.0.0\""),
+                Matchers.containsString("\"subPackages\":[{\"package\":\"biz.netcentric:content:1.0.0\""),
+                Matchers.containsString("\"total\":{\"nodes\":5,\"mutableNodes\":2,\"immutableNodes\":2,\"docViewNodes\":1,\"indexDefinitions\":1,\"metaInfPaths\":1,\"messages\":2,"),
+                Matchers.containsString("\"validators\":{\"AemCloudValidator\":{\"nodePath\":{\"invocations\":5,")));
+    }
+
+    @Test
+    void testMetricsPerValidator() {
+        Map<String, String> options = new HashMap<>();
+        options.put("metricsDirectory", directory.toString());
+        options.put("maxPathLength", "100");
+        ValidationContext context = new SimpleValidationContext("content", PackageType.CONTENT, Paths.get("content.zip"), null);
+        InstrumentedValidator validator = (InstrumentedValidator) new AemCloudValidatorFactory().createValidator(context, new ValidatorSettingsImpl(false, ValidationMessageSeverity.ERROR, options));
+        // the validator would be saturated after the 5th violation without metrics
+        for (int i = 0; i < 10; i++) {
+            validator.validate("/var/test" + i);
+        }
+        validator.validate("/apps/test");
+        validator.validate(new DocViewNode2(NameConstants.JCR_ROOT, Collections.singletonList(new DocViewProperty2(NameConstants.JCR_PRIMARYTYPE, "nt:unstructured"))),
+                new NodeContextImpl("/apps/test", Paths.get("apps", "test", ".content.xml"), Paths.get("jcr_root")), true);
+        validator.done();
+
+        ValidatorMetrics metrics = validator.getMetrics();
+        Assertions.assertEquals(10, metrics.mutableNodes.sum());
+        Assertions.assertEquals(1, metrics.immutableNodes.sum());
+        Assertions.assertEquals(11, metrics.getInvocations(Callback.NODE_PATH));
+        Assertions.assertEquals(11, metrics.getTimers("AemCloudValidator").getInvocations(Callback.NODE_PATH));
+        Assertions.assertEquals(11, metrics.getTimers("PathDepthValidator").getInvocations(Callback.NODE_PATH));
+        Assertions.assertEquals(1, metrics.getTimers("AemCloudValidator").getInvocations(Callback.DOCVIEW_NODE));
+        // not implemented by the path depth validator
+        Assertions.assertEquals(0, metrics.getTimers("PathDepthValidator").getInvocations(Callback.DOCVIEW_NODE));
+        Assertions.assertEquals(1, metrics.getTimers("PathDepthValidator").getInvocations(Callback.DONE));
+        Assertions.assertEquals(metrics.getTimers("AemCloudValidator").getNanos(Callback.NODE_PATH) + metrics.getTimers("PathDepthValidator").getNanos(Callback.NODE_PATH),
+                metrics.getNanos(Callback.NODE_PATH));
+    }
+
+    @Test
+    void testNoInstrumentationByDefault() {
+        AemCloudValidatorFactory factory = new AemCloudValidatorFactory();
+        ValidationContext context = new SimpleValidationContext("content", PackageType.CONTENT, Paths.get("content.zip"), null);
+        MatcherAssert.assertThat(factory.createValidator(context, new ValidatorSettingsImpl()), Matchers.instanceOf(AemCloudValidator.class));
+    }
+}
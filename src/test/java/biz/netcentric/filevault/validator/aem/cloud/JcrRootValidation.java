@@ -0,0 +1,114 @@
+package biz.netcentric.filevault.validator.aem.cloud;
+
+/*-
+ * #%L
+ * AEM Cloud Validator
+ * %%
+ * Copyright (C) 2021 Netcentric - A Cognizant Digital Business
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.apache.jackrabbit.vault.util.Constants;
+import org.apache.jackrabbit.vault.validation.ValidationExecutor;
+import org.apache.jackrabbit.vault.validation.ValidationViolation;
+import org.apache.jackrabbit.vault.validation.impl.util.ValidatorSettingsImpl;
+import org.apache.jackrabbit.vault.validation.spi.ValidationContext;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
+import org.apache.jackrabbit.vault.validation.spi.Validator;
+import org.apache.jackrabbit.vault.validation.spi.impl.DocumentViewParserValidatorFactory;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Validates the files of an in-memory {@code jcr_root} with FileVault's {@link ValidationExecutor} in the same order as the filevault-package-maven-plugin,
+ * i.e. each folder is validated before its children and the {@code .content.xml} is the first child.
+ * Therefore the validator receives the node paths (including their repetitions) exactly like in a real build.
+ */
+final class JcrRootValidation {
+
+    /** a document view file with a single node */
+    static final String DOC_VIEW_NODE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<jcr:root xmlns:jcr=\"http://www.jcp.org/jcr/1.0\" jcr:primaryType=\"nt:unstructured\"/>\n";
+    /** a document view file with a node having a child and a grandchild */
+    static final String DOC_VIEW_NODE_WITH_CHILDREN = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<jcr:root xmlns:jcr=\"http://www.jcp.org/jcr/1.0\" jcr:primaryType=\"nt:unstructured\">\n"
+            + "  <child jcr:primaryType=\"nt:unstructured\">\n"
+            + "    <grandchild jcr:primaryType=\"nt:unstructured\"/>\n"
+            + "  </child>\n"
+            + "</jcr:root>\n";
+    private static final String ID = "test";
+
+    private JcrRootValidation() {
+        // static methods only
+    }
+
+    /**
+     *
+     * @param context the validation context passed to the document view parser
+     * @param validator the validator to test
+     * @param files the file contents by their path relative to the {@code jcr_root} (using '/' as separator), all folders are derived from those paths
+     * @return all violations which are not emitted by the executor itself with severity {@code DEBUG}
+     * @throws IOException in case the executor could not read a file
+     */
+    static @NotNull List<ValidationViolation> validate(@NotNull ValidationContext context, @NotNull Validator validator, @NotNull Map<String, String> files) throws IOException {
+        Map<String, Validator> validatorsById = new LinkedHashMap<>();
+        validatorsById.put(DocumentViewParserValidatorFactory.ID, new DocumentViewParserValidatorFactory().createValidator(context, new ValidatorSettingsImpl()));
+        validatorsById.put(ID, validator);
+        ValidationExecutor executor = new ValidationExecutor(validatorsById);
+        // all files and folders (the latter with a trailing slash), each .content.xml is sorted before its siblings
+        TreeSet<String> entries = new TreeSet<>(Comparator.comparing((String entry) -> !Constants.DOT_CONTENT_XML.equals(Paths.get(entry).getFileName().toString()))
+                .thenComparing(Comparator.naturalOrder()));
+        for (String file : files.keySet()) {
+            entries.add(file);
+            for (int slash = file.indexOf('/'); slash > 0; slash = file.indexOf('/', slash + 1)) {
+                entries.add(file.substring(0, slash + 1));
+            }
+        }
+        List<ValidationViolation> violations = new ArrayList<>();
+        validateChildren("", entries, files, executor, violations);
+        violations.addAll(executor.done());
+        violations.removeIf(violation -> violation.getSeverity() == ValidationMessageSeverity.DEBUG);
+        return violations;
+    }
+
+    private static void validateChildren(@NotNull String folder, @NotNull TreeSet<String> entries, @NotNull Map<String, String> files,
+            @NotNull ValidationExecutor executor, @NotNull List<ValidationViolation> violations) throws IOException {
+        Path basePath = Paths.get(Constants.ROOT_DIR);
+        for (String entry : entries) {
+            // only direct children
+            if (!entry.startsWith(folder) || entry.length() == folder.length()) {
+                continue;
+            }
+            int slash = entry.indexOf('/', folder.length());
+            if (slash >= 0 && slash < entry.length() - 1) {
+                continue;
+            }
+            Path filePath = Paths.get(entry);
+            if (entry.endsWith("/")) {
+                violations.addAll(executor.validateJcrRoot(null, filePath, basePath));
+                validateChildren(entry, entries, files, executor, violations);
+            } else {
+                try (InputStream input = new ByteArrayInputStream(files.get(entry).getBytes(StandardCharsets.UTF_8))) {
+                    violations.addAll(executor.validateJcrRoot(input, filePath, basePath));
+                }
+            }
+        }
+    }
+}
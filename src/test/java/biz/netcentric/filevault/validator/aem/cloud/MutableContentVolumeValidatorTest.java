@@ -0,0 +1,105 @@
+package biz.netcentric.filevault.validator.aem.cloud;
+
+/*-
+ * #%L
+ * AEM Cloud Validator
+ * %%
+ * Copyright (C) 2021 Netcentric - A Cognizant Digital Business
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.spi.commons.name.NameConstants;
+import org.apache.jackrabbit.spi.commons.name.NameFactoryImpl;
+import org.apache.jackrabbit.util.Text;
+import org.apache.jackrabbit.vault.packaging.PackageType;
+import org.apache.jackrabbit.vault.util.DocViewNode2;
+import org.apache.jackrabbit.vault.util.DocViewProperty2;
+import org.apache.jackrabbit.vault.validation.ValidationViolation;
+import org.apache.jackrabbit.vault.validation.impl.util.ValidatorSettingsImpl;
+import org.apache.jackrabbit.vault.validation.spi.DocumentViewXmlValidator;
+import org.apache.jackrabbit.vault.validation.spi.NodePathValidator;
+import org.apache.jackrabbit.vault.validation.spi.ValidationContext;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
+import org.apache.jackrabbit.vault.validation.spi.util.NodeContextImpl;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class MutableContentVolumeValidatorTest {
+
+    @Test
+    void testBudgets() {
+        MutableContentVolumeValidator validator = new MutableContentVolumeValidator(AemCloudValidator.DEFAULT_PATH_CLASSIFIER, new long[] { 3, -1, 20 }, ValidationMessageSeverity.ERROR);
+        validator.validate("/");
+        validate(validator, "/apps/test", "immutable");
+        validator.validate("/content");
+        validate(validator, "/content/site", "0123456789");
+        validator.validate("/content/site/page");
+        validate(validator, "/conf/site", "01234");
+        MatcherAssert.assertThat(validator.done(), Matchers.contains(
+                new RuleValidationMessage(MutableContentVolumeValidator.RULE_ID, ValidationMessageSeverity.ERROR, String.format(MutableContentVolumeValidator.VIOLATION_MESSAGE_BUDGET_EXCEEDED, 4, "nodes", 3,
+                        "/content: 3 nodes, 2 properties, 41 bytes, /conf: 1 nodes, 2 properties, 36 bytes")),
+                new RuleValidationMessage(MutableContentVolumeValidator.RULE_ID, ValidationMessageSeverity.ERROR, String.format(MutableContentVolumeValidator.VIOLATION_MESSAGE_BUDGET_EXCEEDED, 77, "bytes", 20,
+                        "/content: 3 nodes, 2 properties, 41 bytes, /conf: 1 nodes, 2 properties, 36 bytes"))));
+    }
+
+    @Test
+    void testWithinBudgets() {
+        MutableContentVolumeValidator validator = new MutableContentVolumeValidator(AemCloudValidator.DEFAULT_PATH_CLASSIFIER, new long[] { 1, 2, 100 }, ValidationMessageSeverity.ERROR);
+        validator.validate("/apps");
+        validate(validator, "/apps/test", "immutable");
+        validate(validator, "/content/site", "0123456789");
+        Assertions.assertNull(validator.done());
+    }
+
+    @Test
+    void testRepeatedNodePaths() throws IOException {
+        MutableContentVolumeValidator validator = new MutableContentVolumeValidator(AemCloudValidator.DEFAULT_PATH_CLASSIFIER, new long[] { 1, -1, -1 }, ValidationMessageSeverity.ERROR);
+        Map<String, String> files = new HashMap<>();
+        files.put("content/.content.xml", JcrRootValidation.DOC_VIEW_NODE);
+        files.put("content/site/.content.xml", JcrRootValidation.DOC_VIEW_NODE_WITH_CHILDREN);
+        files.put("content/site/file.txt", "test");
+        files.put("apps/test/.content.xml", JcrRootValidation.DOC_VIEW_NODE);
+        ValidationContext context = new SimpleValidationContext("test", PackageType.MIXED, Paths.get("test.zip"), null);
+        // the executor passes the paths of all folders having a .content.xml twice
+        MatcherAssert.assertThat(JcrRootValidation.validate(context, validator, files).stream().map(ValidationViolation::getMessage).collect(Collectors.toList()),
+                Matchers.contains(String.format(MutableContentVolumeValidator.VIOLATION_MESSAGE_BUDGET_EXCEEDED, 5, "nodes", 1,
+                        "/content: 5 nodes, 4 properties, 104 bytes")));
+    }
+
+    @Test
+    void testFactoryOptions() {
+        Map<String, String> options = new HashMap<>();
+        options.put("maxMutableProperties", "0");
+        options.put("mutableContentBudgetSeverity", "info");
+        ValidationContext context = new SimpleValidationContext("test", PackageType.CONTENT, Paths.get("test.zip"), null);
+        NodePathValidator validator = (NodePathValidator) new AemCloudValidatorFactory().createValidator(context, new ValidatorSettingsImpl(false, ValidationMessageSeverity.WARN, options));
+        validate((DocumentViewXmlValidator) validator, "/content/site", "value");
+        MatcherAssert.assertThat(validator.done(), Matchers.contains(
+                new RuleValidationMessage(MutableContentVolumeValidator.RULE_ID, ValidationMessageSeverity.INFO, String.format(MutableContentVolumeValidator.VIOLATION_MESSAGE_BUDGET_EXCEEDED, 2, "properties", 0,
+                        "/content: 1 nodes, 2 properties, 36 bytes"))));
+    }
+
+    /** Emulates the node path callback followed by the document view callback with properties {@code jcr:primaryType=nt:unstructured} and {@code value} */
+    private static void validate(DocumentViewXmlValidator validator, String nodePath, String value) {
+        ((NodePathValidator) validator).validate(nodePath);
+        DocViewNode2 node = new DocViewNode2(NameFactoryImpl.getInstance().create(Name.NS_DEFAULT_URI, Text.getName(nodePath)), Arrays.asList(
+                new DocViewProperty2(NameConstants.JCR_PRIMARYTYPE, "nt:unstructured"),
+                new DocViewProperty2(NameFactoryImpl.getInstance().create(Name.NS_DEFAULT_URI, "value"), value)));
+        validator.validate(node, new NodeContextImpl(nodePath, Paths.get(nodePath, ".content.xml"), Paths.get("jcr_root")), false);
+    }
+}
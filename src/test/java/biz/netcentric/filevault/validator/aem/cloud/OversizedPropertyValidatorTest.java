@@ -0,0 +1,109 @@
+package biz.netcentric.filevault.validator.aem.cloud;
+
+/*-
+ * #%L
+ * AEM Cloud Validator
+ * %%
+ * Copyright (C) 2021 Netcentric - A Cognizant Digital Business
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.jcr.PropertyType;
+
+import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.spi.commons.name.NameConstants;
+import org.apache.jackrabbit.spi.commons.name.NameFactoryImpl;
+import org.apache.jackrabbit.vault.packaging.PackageType;
+import org.apache.jackrabbit.vault.util.DocViewNode2;
+import org.apache.jackrabbit.vault.util.DocViewProperty2;
+import org.apache.jackrabbit.vault.validation.impl.util.ValidatorSettingsImpl;
+import org.apache.jackrabbit.vault.validation.spi.DocumentViewXmlValidator;
+import org.apache.jackrabbit.vault.validation.spi.ValidationContext;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
+import org.apache.jackrabbit.vault.validation.spi.util.NodeContextImpl;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class OversizedPropertyValidatorTest {
+
+    private static final String NODE_PATH = "/content/site/jcr:content";
+
+    @Test
+    void testOversizedValues() {
+        OversizedPropertyValidator validator = new OversizedPropertyValidator(1000, -1, ValidationMessageSeverity.ERROR);
+        MatcherAssert.assertThat(validator.validate(createNode(
+                new DocViewProperty2(NameConstants.JCR_DATA, repeat('A', 4000), PropertyType.BINARY),
+                new DocViewProperty2(NameFactoryImpl.getInstance().create(Name.NS_DEFAULT_URI, "text"), repeat('a', 1001)),
+                new DocViewProperty2(NameFactoryImpl.getInstance().create(Name.NS_DEFAULT_URI, "small"), repeat('a', 1000)),
+                new DocViewProperty2(NameFactoryImpl.getInstance().create(Name.NS_DEFAULT_URI, "values"), Arrays.asList(repeat('a', 600), repeat('b', 600)))),
+                new NodeContextImpl(NODE_PATH, Paths.get("content", "site", ".content.xml"), Paths.get("jcr_root")), false),
+                Matchers.contains(
+                        new RuleValidationMessage(OversizedPropertyValidator.RULE_ID_OVERSIZED_PROPERTY_VALUE, ValidationMessageSeverity.ERROR, String.format(OversizedPropertyValidator.VIOLATION_MESSAGE_OVERSIZED_PROPERTY_VALUE,
+                                "{http://www.jcp.org/jcr/1.0}data", "Binary", NODE_PATH, 3000, 1000)),
+                        new RuleValidationMessage(OversizedPropertyValidator.RULE_ID_OVERSIZED_PROPERTY_VALUE, ValidationMessageSeverity.ERROR, String.format(OversizedPropertyValidator.VIOLATION_MESSAGE_OVERSIZED_PROPERTY_VALUE,
+                                "text", "undefined", NODE_PATH, 1001, 1000)),
+                        new RuleValidationMessage(OversizedPropertyValidator.RULE_ID_OVERSIZED_PROPERTY_VALUE, ValidationMessageSeverity.ERROR, String.format(OversizedPropertyValidator.VIOLATION_MESSAGE_OVERSIZED_PROPERTY_VALUE,
+                                "values", "undefined", NODE_PATH, 1200, 1000))));
+    }
+
+    @Test
+    void testTooManyValues() {
+        OversizedPropertyValidator validator = new OversizedPropertyValidator(-1, 3, ValidationMessageSeverity.WARN);
+        MatcherAssert.assertThat(validator.validate(createNode(
+                new DocViewProperty2(NameFactoryImpl.getInstance().create(Name.NS_DEFAULT_URI, "tags"), Arrays.asList("a", "b", "c", "d")),
+                new DocViewProperty2(NameFactoryImpl.getInstance().create(Name.NS_DEFAULT_URI, "valid"), Arrays.asList("a", "b", "c"))),
+                new NodeContextImpl(NODE_PATH, Paths.get("content", "site", ".content.xml"), Paths.get("jcr_root")), false),
+                Matchers.contains(new RuleValidationMessage(OversizedPropertyValidator.RULE_ID_TOO_MANY_PROPERTY_VALUES, ValidationMessageSeverity.WARN, String.format(OversizedPropertyValidator.VIOLATION_MESSAGE_TOO_MANY_PROPERTY_VALUES,
+                        "tags", "undefined", NODE_PATH, 4, 3))));
+    }
+
+    @Test
+    void testGetSize() {
+        Assertions.assertEquals(0, OversizedPropertyValidator.getSize(PropertyType.BINARY, Collections.emptyList()));
+        // "aGVsbG8=" is "hello" encoded, the padding is not subtracted
+        Assertions.assertEquals(6, OversizedPropertyValidator.getSize(PropertyType.BINARY, Collections.singletonList("aGVsbG8=")));
+        Assertions.assertEquals(10, OversizedPropertyValidator.getSize(PropertyType.STRING, Arrays.asList("hello", "world")));
+    }
+
+    @Test
+    void testFactoryOptions() {
+        Map<String, String> options = new HashMap<>();
+        options.put("maxPropertyValues", "1");
+        options.put("oversizedPropertiesSeverity", "error");
+        ValidationContext context = new SimpleValidationContext("test", PackageType.CONTENT, Paths.get("test.zip"), null);
+        DocumentViewXmlValidator validator = (DocumentViewXmlValidator) new AemCloudValidatorFactory().createValidator(context, new ValidatorSettingsImpl(false, ValidationMessageSeverity.WARN, options));
+        MatcherAssert.assertThat(validator.validate(createNode(
+                new DocViewProperty2(NameFactoryImpl.getInstance().create(Name.NS_DEFAULT_URI, "tags"), Arrays.asList("a", "b"))),
+                new NodeContextImpl(NODE_PATH, Paths.get("content", "site", ".content.xml"), Paths.get("jcr_root")), false),
+                Matchers.contains(new RuleValidationMessage(OversizedPropertyValidator.RULE_ID_TOO_MANY_PROPERTY_VALUES, ValidationMessageSeverity.ERROR, String.format(OversizedPropertyValidator.VIOLATION_MESSAGE_TOO_MANY_PROPERTY_VALUES,
+                        "tags", "undefined", NODE_PATH, 2, 1))));
+    }
+
+    private static DocViewNode2 createNode(DocViewProperty2... properties) {
+        List<DocViewProperty2> allProperties = new ArrayList<>();
+        allProperties.add(new DocViewProperty2(NameConstants.JCR_PRIMARYTYPE, "nt:unstructured"));
+        allProperties.addAll(Arrays.asList(properties));
+        return new DocViewNode2(NameConstants.JCR_CONTENT, allProperties);
+    }
+
+    private static String repeat(char c, int length) {
+        char[] chars = new char[length];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}
@@ -0,0 +1,96 @@
+package biz.netcentric.filevault.validator.aem.cloud;
+
+/*-
+ * #%L
+ * AEM Cloud Validator
+ * %%
+ * Copyright (C) 2021 Netcentric - A Cognizant Digital Business
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class PathClassifierTest {
+
+    private static final List<String> SEGMENTS = Arrays.asList("", "apps", "appsfoo", "app", "libs", "libsfoo", "lib", "oak:index", "oak:indexes", "oak:", "content", "contents", "etc", "etcetera",
+            "conf", "home", "users", "groups", "usersfoo", "var", "tmp", "test", "a");
+
+    @Test
+    void testSameResultsAsLinearPrefixScan() {
+        for (String path : generatePaths()) {
+            int flags = AemCloudValidator.DEFAULT_PATH_CLASSIFIER.classify(path);
+            Assertions.assertEquals(isMutablePathLinear(path), PathClassifier.isMutable(flags), () -> "Different mutable classification for " + path);
+            Assertions.assertEquals(isPathWritableByDistributionJournalImporterLinear(path), PathClassifier.isWritableByDistributionImporter(flags), () -> "Different distribution importer classification for " + path);
+            Assertions.assertEquals(path.startsWith("/libs"), PathClassifier.isLibs(flags), () -> "Different libs classification for " + path);
+            // static methods delegate to the classifier
+            Assertions.assertEquals(isMutablePathLinear(path), AemCloudValidator.isMutablePath(path), () -> "Different mutable classification for " + path);
+            Assertions.assertEquals(isPathWritableByDistributionJournalImporterLinear(path), AemCloudValidator.isPathWritableByDistributionJournalImporter(path), () -> "Different distribution importer classification for " + path);
+        }
+    }
+
+    @Test
+    void testSubtreeAndPlainPrefixes() {
+        Map<String, Integer> subtreePrefixes = new TreeMap<>();
+        subtreePrefixes.put("/a", 1);
+        subtreePrefixes.put("/a/b", 2);
+        PathClassifier classifier = new PathClassifier(subtreePrefixes, Collections.singletonMap("/a/bc", 4));
+        Assertions.assertEquals(0, classifier.classify("/"));
+        Assertions.assertEquals(0, classifier.classify("/ab"));
+        Assertions.assertEquals(1, classifier.classify("/a"));
+        Assertions.assertEquals(1, classifier.classify("/a/"));
+        Assertions.assertEquals(3, classifier.classify("/a/b"));
+        Assertions.assertEquals(3, classifier.classify("/a/b/c"));
+        Assertions.assertEquals(1, classifier.classify("/a/bb"));
+        Assertions.assertEquals(5, classifier.classify("/a/bc"));
+        Assertions.assertEquals(5, classifier.classify("/a/bcd/e"));
+    }
+
+    private static Collection<String> generatePaths() {
+        List<String> paths = new ArrayList<>();
+        paths.add("/");
+        for (String segment1 : SEGMENTS) {
+            paths.add("/" + segment1);
+            for (String segment2 : SEGMENTS) {
+                paths.add("/" + segment1 + "/" + segment2);
+                for (String segment3 : SEGMENTS) {
+                    paths.add("/" + segment1 + "/" + segment2 + "/" + segment3);
+                }
+            }
+        }
+        return paths;
+    }
+
+    /** the original implementation of {@link AemCloudValidator#isMutablePath(String)} */
+    private static boolean isMutablePathLinear(String path) {
+        for (String immutablePathPrefix : AemCloudValidator.IMMUTABLE_PATH_PREFIXES) {
+            if (path.startsWith(immutablePathPrefix+"/") || path.equals(immutablePathPrefix)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** the original implementation of {@link AemCloudValidator#isPathWritableByDistributionJournalImporter(String)} */
+    private static boolean isPathWritableByDistributionJournalImporterLinear(String path) {
+        for (String writablePath : AemCloudValidator.WRITABLE_PATHS_BY_DISTRIBUTION_IMPORTER) {
+            if (path.startsWith(writablePath + "/") || path.equals(writablePath)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
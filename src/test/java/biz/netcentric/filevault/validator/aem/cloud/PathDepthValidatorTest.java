@@ -0,0 +1,120 @@
+package biz.netcentric.filevault.validator.aem.cloud;
+
+/*-
+ * #%L
+ * AEM Cloud Validator
+ * %%
+ * Copyright (C) 2021 Netcentric - A Cognizant Digital Business
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.apache.jackrabbit.vault.packaging.PackageType;
+import org.apache.jackrabbit.vault.validation.ValidationViolation;
+import org.apache.jackrabbit.vault.validation.impl.util.ValidatorSettingsImpl;
+import org.apache.jackrabbit.vault.validation.spi.NodePathValidator;
+import org.apache.jackrabbit.vault.validation.spi.ValidationContext;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class PathDepthValidatorTest {
+
+    @Test
+    void testLimits() {
+        PathDepthValidator validator = new PathDepthValidator(3, 20, false, ValidationMessageSeverity.ERROR);
+        validatePaths(validator, "/", "/apps", "/apps/a", "/apps/a/b", "/apps/a/b/c", "/apps/a/b/c/d", "/apps/a/b/c/d/e",
+                "/content", "/content/a-very-long-name");
+        MatcherAssert.assertThat(validator.done(), Matchers.contains(
+                new RuleValidationMessage(PathDepthValidator.RULE_ID_TOO_DEEP, ValidationMessageSeverity.ERROR, String.format(PathDepthValidator.VIOLATION_MESSAGE_TOO_DEEP, 3, "/apps", 3,
+                        "/apps/a/b/c/d/e (depth 6), /apps/a/b/c/d (depth 5), /apps/a/b/c (depth 4)"), "/apps", null, null, 0, 0, null),
+                new RuleValidationMessage(PathDepthValidator.RULE_ID_TOO_LONG, ValidationMessageSeverity.ERROR, String.format(PathDepthValidator.VIOLATION_MESSAGE_TOO_LONG, 1, "/content", 20,
+                        "/content/a-very-long-name (25 characters)"), "/content", null, null, 0, 0, null)));
+    }
+
+    @Test
+    void testStatistics() {
+        PathDepthValidator validator = new PathDepthValidator(-1, -1, true, ValidationMessageSeverity.ERROR);
+        StringBuilder longPath = new StringBuilder("/content");
+        for (int i = 0; i < 20; i++) {
+            longPath.append("/child").append(i);
+            validator.validate(longPath.toString());
+        }
+        validatePaths(validator, "/content/a", "/content/b");
+        MatcherAssert.assertThat(validator.done(), Matchers.contains(
+                new RuleValidationMessage(PathDepthValidator.RULE_ID_STATISTICS, ValidationMessageSeverity.INFO, String.format(PathDepthValidator.MESSAGE_PATH_STATISTICS, 22, "/content",
+                        "{2: 3, 3: 1, 4: 1, 5: 1, 6: 1, 7: 1, 8: 1, 9: 1, 10: 1, 11: 1, 12: 1, 13: 1, 14: 1, 15: 1, 16: 1, 17: 1, 18: 1, 19: 1, 20: 1, 21: 1}",
+                        "{0-99: 14, 100-199: 8}",
+                        longPath + " (depth 21), " + longPath.substring(0, longPath.lastIndexOf("/")) + " (depth 20), /content/child0/child1/child2/child3/child4/child5/child6/child7/child8/child9/child10/child11/child12/child13/child14/child15/child16/child17 (depth 19), "
+                                + "/content/child0/child1/child2/child3/child4/child5/child6/child7/child8/child9/child10/child11/child12/child13/child14/child15/child16 (depth 18), "
+                                + "/content/child0/child1/child2/child3/child4/child5/child6/child7/child8/child9/child10/child11/child12/child13/child14/child15 (depth 17)",
+                        longPath + " (" + longPath.length() + " characters), " + longPath.substring(0, longPath.lastIndexOf("/")) + " (" + longPath.lastIndexOf("/") + " characters), "
+                                + "/content/child0/child1/child2/child3/child4/child5/child6/child7/child8/child9/child10/child11/child12/child13/child14/child15/child16/child17 (142 characters), "
+                                + "/content/child0/child1/child2/child3/child4/child5/child6/child7/child8/child9/child10/child11/child12/child13/child14/child15/child16 (134 characters), "
+                                + "/content/child0/child1/child2/child3/child4/child5/child6/child7/child8/child9/child10/child11/child12/child13/child14/child15 (126 characters)"),
+                        "/content", null, null, 0, 0, null)));
+    }
+
+    @Test
+    void testWorstOffendersWithEqualValues() {
+        PathDepthValidator validator = new PathDepthValidator(1, -1, false, ValidationMessageSeverity.WARN);
+        for (int i = 0; i < 10; i++) {
+            validator.validate("/var/node" + i);
+        }
+        // the first ones win
+        MatcherAssert.assertThat(validator.done(), Matchers.contains(
+                new RuleValidationMessage(PathDepthValidator.RULE_ID_TOO_DEEP, ValidationMessageSeverity.WARN, String.format(PathDepthValidator.VIOLATION_MESSAGE_TOO_DEEP, 10, "/var", 1,
+                        "/var/node0 (depth 2), /var/node1 (depth 2), /var/node2 (depth 2), /var/node3 (depth 2), /var/node4 (depth 2)"), "/var", null, null, 0, 0, null)));
+    }
+
+    @Test
+    void testRepeatedNodePaths() throws IOException {
+        PathDepthValidator validator = new PathDepthValidator(2, -1, false, ValidationMessageSeverity.ERROR);
+        Map<String, String> files = new HashMap<>();
+        files.put("content/site/.content.xml", JcrRootValidation.DOC_VIEW_NODE_WITH_CHILDREN);
+        files.put("content/site/page/.content.xml", JcrRootValidation.DOC_VIEW_NODE);
+        ValidationContext context = new SimpleValidationContext("test", PackageType.CONTENT, Paths.get("test.zip"), null);
+        // the executor passes the paths of all folders having a .content.xml twice
+        MatcherAssert.assertThat(JcrRootValidation.validate(context, validator, files).stream().map(ValidationViolation::getMessage).collect(Collectors.toList()),
+                Matchers.contains(String.format(PathDepthValidator.VIOLATION_MESSAGE_TOO_DEEP, 3, "/content", 2,
+                        "/content/site/child/grandchild (depth 4), /content/site/child (depth 3), /content/site/page (depth 3)")));
+    }
+
+    @Test
+    void testFormatHistogram() {
+        Assertions.assertEquals("{}", PathDepthValidator.formatHistogram(new long[4], 1));
+        Assertions.assertEquals("{1: 2, 3: 1}", PathDepthValidator.formatHistogram(new long[] { 0, 2, 0, 1 }, 1));
+        Assertions.assertEquals("{0-99: 5, 200-299: 1}", PathDepthValidator.formatHistogram(new long[] { 5, 0, 1 }, 100));
+    }
+
+    @Test
+    void testFactoryOptions() {
+        Map<String, String> options = new HashMap<>();
+        options.put("maxPathLength", "10");
+        options.put("pathDepthSeverity", "info");
+        ValidationContext context = new SimpleValidationContext("test", PackageType.CONTENT, Paths.get("test.zip"), null);
+        NodePathValidator validator = (NodePathValidator) new AemCloudValidatorFactory().createValidator(context, new ValidatorSettingsImpl(false, ValidationMessageSeverity.WARN, options));
+        validator.validate("/content/site");
+        MatcherAssert.assertThat(validator.done(), Matchers.contains(
+                new RuleValidationMessage(PathDepthValidator.RULE_ID_TOO_LONG, ValidationMessageSeverity.INFO, String.format(PathDepthValidator.VIOLATION_MESSAGE_TOO_LONG, 1, "/content", 10,
+                        "/content/site (13 characters)"), "/content", null, null, 0, 0, null)));
+    }
+
+    private static void validatePaths(NodePathValidator validator, String... paths) {
+        for (String path : paths) {
+            Assertions.assertNull(validator.validate(path));
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package biz.netcentric.filevault.validator.aem.cloud;
+
+/*-
+ * #%L
+ * AEM Cloud Validator
+ * %%
+ * Copyright (C) 2021 Netcentric - A Cognizant Digital Business
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import org.apache.jackrabbit.vault.packaging.PackageType;
+import org.apache.jackrabbit.vault.validation.ValidationViolation;
+import org.apache.jackrabbit.vault.validation.impl.util.ValidatorSettingsImpl;
+import org.apache.jackrabbit.vault.validation.spi.NodePathValidator;
+import org.apache.jackrabbit.vault.validation.spi.ValidationContext;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessage;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class PathRuleValidatorTest {
+
+    @Test
+    void testDenyAndAllowRules() {
+        Map<String, String> options = new HashMap<>();
+        options.put("pathRule.policies", "/conf/*/settings/wcm/templates/*/policies");
+        options.put("pathRule.policies.severity", "error");
+        options.put("pathRule.policies.message", "Policies must not be part of application packages");
+        options.put("pathRule.policies.packageTypes", "application, mixed");
+        options.put("pathRule.noTmp", "/content/**/tmp");
+        options.put("pathRule.acmeTmp", "/content/acme/tmp");
+        options.put("pathRule.acmeTmp.type", "allow");
+        options.put("pathRule.acmeVar", "/var/acme");
+        options.put("pathRule.acmeVar.type", "allow");
+        AemCloudValidatorFactory factory = new AemCloudValidatorFactory();
+        ValidatorSettingsImpl settings = new ValidatorSettingsImpl(false, ValidationMessageSeverity.WARN, options);
+
+        NodePathValidator validator = (NodePathValidator) factory.createValidator(new SimpleValidationContext("test", PackageType.APPLICATION, Paths.get("test.zip"), null), settings);
+        List<ValidationMessage> messages = new ArrayList<>();
+        validate(validator, messages, "/conf/site/settings/wcm/templates/page/policies");
+        validate(validator, messages, "/conf/site/settings/wcm/templates/page/structure");
+        MatcherAssert.assertThat(messages, Matchers.contains(
+                new RuleValidationMessage("pathRule.policies", ValidationMessageSeverity.ERROR, "Policies must not be part of application packages")));
+
+        validator = (NodePathValidator) factory.createValidator(new SimpleValidationContext("test", PackageType.CONTENT, Paths.get("test.zip"), null), settings);
+        messages.clear();
+        // package type does not match
+        validate(validator, messages, "/conf/site/settings/wcm/templates/page/policies");
+        validate(validator, messages, "/content/other/tmp");
+        // allow rule takes precedence
+        validate(validator, messages, "/content/acme/tmp");
+        // allow rule exempts from read-only mutable path check
+        validate(validator, messages, "/var/acme/test");
+        validate(validator, messages, "/var/other");
+        MatcherAssert.assertThat(messages, Matchers.contains(
+                new RuleValidationMessage("pathRule.noTmp", ValidationMessageSeverity.WARN, String.format(PathRules.DEFAULT_VIOLATION_MESSAGE, "/content/**/tmp")),
+                new RuleValidationMessage(AemCloudValidator.NodePathViolationType.READONLY_MUTABLE_PATH.getRuleId(), ValidationMessageSeverity.WARN, AemCloudValidator.VIOLATION_MESSAGE_READONLY_MUTABLE_PATH)));
+        // compiled only once
+        Assertions.assertSame(factory.getPathRules(settings), factory.getPathRules(new ValidatorSettingsImpl(false, ValidationMessageSeverity.WARN, new HashMap<>(options))));
+    }
+
+    @Test
+    void testFurtherViolations() {
+        PathRules pathRules = PathRules.fromOptions(Collections.singletonMap("pathRule.noTmp", "/content/**/tmp"), ValidationMessageSeverity.INFO);
+        PathRuleValidator validator = new PathRuleValidator(pathRules, null);
+        List<ValidationMessage> messages = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            validate(validator, messages, "/content/site" + i + "/tmp");
+        }
+        Assertions.assertEquals(PathRuleValidator.MAX_NUM_VIOLATIONS_PER_RULE, messages.size());
+        MatcherAssert.assertThat(validator.done(), Matchers.contains(new RuleValidationMessage("pathRule.noTmp", ValidationMessageSeverity.INFO,
+                String.format(PathRuleValidator.VIOLATION_MESSAGE_FURTHER_VIOLATIONS, "noTmp", 3, String.format(PathRules.DEFAULT_VIOLATION_MESSAGE, "/content/**/tmp")))));
+    }
+
+    @Test
+    void testRepeatedNodePaths() throws IOException {
+        PathRules pathRules = PathRules.fromOptions(Collections.singletonMap("pathRule.noSite", "/content/site"), ValidationMessageSeverity.WARN);
+        PathRuleValidator validator = new PathRuleValidator(pathRules, null);
+        Map<String, String> files = new HashMap<>();
+        files.put("content/site/.content.xml", JcrRootValidation.DOC_VIEW_NODE_WITH_CHILDREN);
+        files.put("content/site/page/.content.xml", JcrRootValidation.DOC_VIEW_NODE);
+        ValidationContext context = new SimpleValidationContext("test", PackageType.CONTENT, Paths.get("test.zip"), null);
+        // the executor passes the paths of all folders having a .content.xml twice, still each of the 4 nodes only violates the rule once
+        List<ValidationViolation> violations = JcrRootValidation.validate(context, validator, files);
+        MatcherAssert.assertThat(violations.stream().map(ValidationViolation::getMessage).collect(Collectors.toList()),
+                Matchers.contains(Collections.nCopies(4, Matchers.equalTo(String.format(PathRules.DEFAULT_VIOLATION_MESSAGE, "/content/site")))));
+    }
+
+    @Test
+    void testInvalidOptions() {
+        ValidationContext context = new SimpleValidationContext("test", PackageType.CONTENT, Paths.get("test.zip"), null);
+        assertInvalid(context, Collections.singletonMap("pathRule.noGlob.severity", "error"));
+        assertInvalid(context, Collections.singletonMap("pathRule.relative", "content"));
+        Map<String, String> options = new HashMap<>();
+        options.put("pathRule.test", "/content");
+        options.put("pathRule.test.unknown", "value");
+        assertInvalid(context, options);
+        options.remove("pathRule.test.unknown");
+        options.put("pathRule.test.packageTypes", "invalid");
+        assertInvalid(context, options);
+    }
+
+    private static void assertInvalid(ValidationContext context, Map<String, String> options) {
+        ValidatorSettingsImpl settings = new ValidatorSettingsImpl(false, ValidationMessageSeverity.WARN, options);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new AemCloudValidatorFactory().createValidator(context, settings));
+    }
+
+    private static void validate(NodePathValidator validator, Collection<ValidationMessage> messages, String nodePath) {
+        Optional.ofNullable(validator.validate(nodePath)).ifPresent(messages::addAll);
+    }
+}
@@ -0,0 +1,48 @@
+package biz.netcentric.filevault.validator.aem.cloud;
+
+/*-
+ * #%L
+ * AEM Cloud Validator
+ * %%
+ * Copyright (C) 2021 Netcentric - A Cognizant Digital Business
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class RepeatedNodePathFilterTest {
+
+    @Test
+    void testRepetitionsOfFoldersWithContentXml() {
+        RepeatedNodePathFilter filter = new RepeatedNodePathFilter();
+        Assertions.assertFalse(filter.isRepeated("/"));
+        Assertions.assertFalse(filter.isRepeated("/var"));
+        // nodes of the .content.xml are passed bottom-up with the folder itself being the last one
+        Assertions.assertFalse(filter.isRepeated("/var/child/grandchild"));
+        Assertions.assertFalse(filter.isRepeated("/var/child"));
+        Assertions.assertFalse(filter.isRepeated("/var/child2"));
+        Assertions.assertTrue(filter.isRepeated("/var"));
+        Assertions.assertFalse(filter.isRepeated("/var/a"));
+        Assertions.assertTrue(filter.isRepeated("/var/a"));
+        Assertions.assertFalse(filter.isRepeated("/var/a/b"));
+        // siblings sharing a prefix are distinct
+        Assertions.assertFalse(filter.isRepeated("/var/ab"));
+        Assertions.assertFalse(filter.isRepeated("/content"));
+        Assertions.assertTrue(filter.isRepeated("/"));
+    }
+
+    @Test
+    void testIsAncestorOrSelf() {
+        Assertions.assertTrue(RepeatedNodePathFilter.isAncestorOrSelf("/", "/var"));
+        Assertions.assertTrue(RepeatedNodePathFilter.isAncestorOrSelf("/var", "/var"));
+        Assertions.assertTrue(RepeatedNodePathFilter.isAncestorOrSelf("/var", "/var/a"));
+        Assertions.assertFalse(RepeatedNodePathFilter.isAncestorOrSelf("/var", "/variable"));
+        Assertions.assertFalse(RepeatedNodePathFilter.isAncestorOrSelf("/var/a", "/var"));
+    }
+}
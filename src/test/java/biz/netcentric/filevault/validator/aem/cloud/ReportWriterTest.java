@@ -0,0 +1,183 @@
+package biz.netcentric.filevault.validator.aem.cloud;
+
+/*-
+ * #%L
+ * AEM Cloud Validator
+ * %%
+ * Copyright (C) 2021 Netcentric - A Cognizant Digital Business
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.jackrabbit.vault.packaging.PackageType;
+import org.apache.jackrabbit.vault.validation.impl.util.ValidatorSettingsImpl;
+import org.apache.jackrabbit.vault.validation.spi.NodePathValidator;
+import org.apache.jackrabbit.vault.validation.spi.ValidationContext;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessage;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ReportWriterTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testJsonLinesViaFactory() throws IOException {
+        Path reportFile = directory.resolve("report.jsonl");
+        Map<String, String> options = new HashMap<>();
+        options.put("reportFile", reportFile.toString());
+        ValidationContext context = new SimpleValidationContext("test", PackageType.CONTENT, Paths.get("test.zip"), null);
+        NodePathValidator validator = (NodePathValidator) new AemCloudValidatorFactory().createValidator(context, new ValidatorSettingsImpl(false, ValidationMessageSeverity.WARN, options));
+        MatcherAssert.assertThat(validator.validate("/var/test"), Matchers.hasSize(1));
+        validator.done();
+        List<String> lines = Files.readAllLines(reportFile, StandardCharsets.UTF_8);
+        MatcherAssert.assertThat(lines, Matchers.hasSize(1));
+        MatcherAssert.assertThat(lines.get(0), Matchers.allOf(
+                Matchers.startsWith("{\"ruleId\":\"readOnlyMutablePath\",\"severity\":\"WARN\","),
+                Matchers.containsString("\"nodePath\":\"/var/test\""),
+                Matchers.containsString("\"package\":\"biz.netcentric:test:1.0.0\"")));
+    }
+
+    @Test
+    void testClosedOnceOutermostPackageIsDone() throws IOException {
+        Path reportFile = directory.resolve("report.jsonl");
+        Map<String, String> options = new HashMap<>();
+        options.put("reportFile", reportFile.toString());
+        ValidatorSettingsImpl settings = new ValidatorSettingsImpl(false, ValidationMessageSeverity.WARN, options);
+        AemCloudValidatorFactory factory = new AemCloudValidatorFactory();
+        ValidationContext context = new SimpleValidationContext("test", PackageType.CONTAINER, Paths.get("test.zip"), null);
+        NodePathValidator validator = (NodePathValidator) factory.createValidator(context, settings);
+        ValidationContext subPackageContext = new SimpleValidationContext("subpackage", PackageType.CONTENT, Paths.get("jcr_root", "apps", "install", "subpackage.zip"), context);
+        NodePathValidator subPackageValidator = (NodePathValidator) factory.createValidator(subPackageContext, settings);
+        subPackageValidator.validate("/var/test");
+        subPackageValidator.done();
+        // still open for the container
+        Assertions.assertThrows(IllegalArgumentException.class, () -> ReportWriter.acquire(reportFile, ReportWriter.Format.SARIF));
+        validator.done();
+        MatcherAssert.assertThat(Files.readAllLines(reportFile, StandardCharsets.UTF_8), Matchers.hasSize(1));
+
+        // a subsequent run with another format starts with a new file
+        ReportWriter.acquire(reportFile, ReportWriter.Format.SARIF).release();
+        MatcherAssert.assertThat(new String(Files.readAllBytes(reportFile), StandardCharsets.UTF_8), Matchers.endsWith("\"results\":[]}]}\n"));
+    }
+
+    @Test
+    void testSubsequentOutermostPackages() throws IOException {
+        Path jsonLinesFile = directory.resolve("report.jsonl");
+        validateOutermostPackage("first", jsonLinesFile, "jsonl");
+        validateOutermostPackage("second", jsonLinesFile, "jsonl");
+        MatcherAssert.assertThat(Files.readAllLines(jsonLinesFile, StandardCharsets.UTF_8), Matchers.contains(
+                Matchers.containsString("\"package\":\"biz.netcentric:first:1.0.0\""),
+                Matchers.containsString("\"package\":\"biz.netcentric:second:1.0.0\"")));
+
+        Path sarifFile = directory.resolve("report.sarif");
+        validateOutermostPackage("first", sarifFile, "sarif");
+        validateOutermostPackage("second", sarifFile, "sarif");
+        String content = new String(Files.readAllBytes(sarifFile), StandardCharsets.UTF_8);
+        // still a single valid document
+        MatcherAssert.assertThat(content, Matchers.allOf(
+                Matchers.containsString("\"properties\":{\"package\":\"biz.netcentric:first:1.0.0\",\"packageRootPath\":\"first.zip\"}},"
+                        + "{\"ruleId\":\"readOnlyMutablePath\""),
+                Matchers.containsString("\"properties\":{\"package\":\"biz.netcentric:second:1.0.0\",\"packageRootPath\":\"second.zip\"}}]}]}\n")));
+        Assertions.assertEquals(1, content.split("\"results\"", -1).length - 1);
+    }
+
+    private static void validateOutermostPackage(String name, Path reportFile, String reportFormat) {
+        Map<String, String> options = new HashMap<>();
+        options.put("reportFile", reportFile.toString());
+        options.put("reportFormat", reportFormat);
+        ValidationContext context = new SimpleValidationContext(name, PackageType.CONTENT, Paths.get(name + ".zip"), null);
+        NodePathValidator validator = (NodePathValidator) new AemCloudValidatorFactory().createValidator(context, new ValidatorSettingsImpl(false, ValidationMessageSeverity.WARN, options));
+        validator.validate("/var/" + name);
+        validator.done();
+    }
+
+    @Test
+    void testRuleIdsOfMessages() throws IOException {
+        Path reportFile = directory.resolve("report.jsonl");
+        ReportWriter writer = new ReportWriter(reportFile, ReportWriter.Format.JSON_LINES);
+        ReportingValidator.report(writer, new RuleValidationMessage("rule1", ValidationMessageSeverity.ERROR, "message1"), null, Paths.get("test.zip"), null, null);
+        // messages not emitted by this validator (e.g. with a message text looking like one of ours)
+        ReportingValidator.report(writer, new ValidationMessage(ValidationMessageSeverity.ERROR, AemCloudValidator.VIOLATION_MESSAGE_READONLY_MUTABLE_PATH), null, Paths.get("test.zip"), null, null);
+        writer.flush();
+        List<String> lines = Files.readAllLines(reportFile, StandardCharsets.UTF_8);
+        MatcherAssert.assertThat(lines, Matchers.contains(
+                Matchers.startsWith("{\"ruleId\":\"rule1\","),
+                Matchers.startsWith("{\"ruleId\":\"" + RuleValidationMessage.UNKNOWN_RULE_ID + "\",")));
+        writer.close();
+    }
+
+    @Test
+    void testSarifAcrossMultipleFlushes() throws IOException {
+        Path reportFile = directory.resolve("report.sarif");
+        ReportWriter writer = new ReportWriter(reportFile, ReportWriter.Format.SARIF);
+        String content = new String(Files.readAllBytes(reportFile), StandardCharsets.UTF_8);
+        MatcherAssert.assertThat(content, Matchers.endsWith("\"results\":[]}]}\n"));
+        writer.report(new ValidationMessage(ValidationMessageSeverity.ERROR, "message1", "/var/test", Paths.get("var", ".content.xml"), null, 3, 0, null),
+                "rule1", "group:name:1.0", Paths.get("test.zip"), null, null);
+        writer.flush();
+        writer.report(new ValidationMessage(ValidationMessageSeverity.INFO, "message2"), "rule2", null, Paths.get("test.zip"), "/content", null);
+        writer.flush();
+        content = new String(Files.readAllBytes(reportFile), StandardCharsets.UTF_8);
+        MatcherAssert.assertThat(content, Matchers.containsString("\"results\":[{\"ruleId\":\"rule1\",\"level\":\"error\",\"message\":{\"text\":\"message1\"},"
+                + "\"locations\":[{\"physicalLocation\":{\"artifactLocation\":{\"uri\":\"var/.content.xml\"},\"region\":{\"startLine\":3}},"
+                + "\"logicalLocations\":[{\"kind\":\"object\",\"fullyQualifiedName\":\"/var/test\"}]}],"
+                + "\"properties\":{\"package\":\"group:name:1.0\",\"packageRootPath\":\"test.zip\"}},"
+                + "{\"ruleId\":\"rule2\",\"level\":\"note\",\"message\":{\"text\":\"message2\"},"
+                + "\"locations\":[{\"logicalLocations\":[{\"kind\":\"object\",\"fullyQualifiedName\":\"/content\"}]}],"
+                + "\"properties\":{\"package\":null,\"packageRootPath\":\"test.zip\"}}]}]}\n"));
+        writer.close();
+    }
+
+    @Test
+    void testConcurrentReporting() throws Exception {
+        Path reportFile = directory.resolve("report.jsonl");
+        ReportWriter writer = ReportWriter.acquire(reportFile, ReportWriter.Format.JSON_LINES);
+        Assertions.assertSame(writer, ReportWriter.acquire(directory.resolve(".").resolve("report.jsonl"), ReportWriter.Format.JSON_LINES));
+        writer.release();
+        Assertions.assertThrows(IllegalArgumentException.class, () -> ReportWriter.acquire(reportFile, ReportWriter.Format.SARIF));
+        ValidationMessage message = new ValidationMessage(ValidationMessageSeverity.WARN, "a message which is long enough to exceed the buffer size several times");
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < 1000; j++) {
+                        writer.report(message, "rule", null, Paths.get("test.zip"), "/content/" + j, null);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        writer.release();
+        List<String> lines = Files.readAllLines(reportFile, StandardCharsets.UTF_8);
+        MatcherAssert.assertThat(lines, Matchers.hasSize(8000));
+        MatcherAssert.assertThat(lines, Matchers.everyItem(Matchers.endsWith("\"packageRootPath\":\"test.zip\"}")));
+    }
+}
@@ -0,0 +1,102 @@
+package biz.netcentric.filevault.validator.aem.cloud;
+
+/*-
+ * #%L
+ * AEM Cloud Validator
+ * %%
+ * Copyright (C) 2021 Netcentric - A Cognizant Digital Business
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.jackrabbit.vault.fs.api.WorkspaceFilter;
+import org.apache.jackrabbit.vault.fs.config.DefaultWorkspaceFilter;
+import org.apache.jackrabbit.vault.packaging.PackageInfo;
+import org.apache.jackrabbit.vault.packaging.PackageProperties;
+import org.apache.jackrabbit.vault.packaging.PackageType;
+import org.apache.jackrabbit.vault.packaging.impl.PackagePropertiesImpl;
+import org.apache.jackrabbit.vault.validation.spi.ValidationContext;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Simple in-memory {@link ValidationContext} used in tests and benchmarks.
+ */
+public class SimpleValidationContext implements ValidationContext {
+
+    private final @NotNull PackageProperties properties;
+    private final @NotNull Path packageRootPath;
+    private final @Nullable ValidationContext containerValidationContext;
+    private final @NotNull Map<String, Object> attributes;
+
+    public SimpleValidationContext(@NotNull String packageName, @Nullable PackageType packageType, @NotNull Path packageRootPath, @Nullable ValidationContext containerValidationContext) {
+        Properties packageProperties = new Properties();
+        packageProperties.setProperty(PackageProperties.NAME_GROUP, "biz.netcentric");
+        packageProperties.setProperty(PackageProperties.NAME_NAME, packageName);
+        packageProperties.setProperty(PackageProperties.NAME_VERSION, "1.0.0");
+        if (packageType != null) {
+            packageProperties.setProperty(PackageProperties.NAME_PACKAGE_TYPE, packageType.name().toLowerCase());
+        }
+        this.properties = new PackagePropertiesImpl() {
+            @Override
+            protected Properties getPropertiesMap() {
+                return packageProperties;
+            }
+        };
+        this.packageRootPath = packageRootPath;
+        this.containerValidationContext = containerValidationContext;
+        this.attributes = new HashMap<>();
+    }
+
+    @Override
+    public @NotNull WorkspaceFilter getFilter() {
+        return new DefaultWorkspaceFilter();
+    }
+
+    @Override
+    public @NotNull PackageProperties getProperties() {
+        return properties;
+    }
+
+    @Override
+    public @Nullable ValidationContext getContainerValidationContext() {
+        return containerValidationContext;
+    }
+
+    @Override
+    public @NotNull Path getPackageRootPath() {
+        return packageRootPath;
+    }
+
+    @Override
+    public @NotNull Collection<PackageInfo> getDependenciesPackageInfo() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public synchronized Object setAttribute(String name, Object value) {
+        return attributes.put(name, value);
+    }
+
+    @Override
+    public synchronized Object getAttribute(String name) {
+        return attributes.get(name);
+    }
+
+    @Override
+    public synchronized Set<String> getAttributeNames() {
+        return Collections.unmodifiableSet(attributes.keySet());
+    }
+}
@@ -0,0 +1,233 @@
+package biz.netcentric.filevault.validator.aem.cloud;
+
+/*-
+ * #%L
+ * AEM Cloud Validator
+ * %%
+ * Copyright (C) 2021 Netcentric - A Cognizant Digital Business
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.jackrabbit.vault.packaging.PackageType;
+import org.apache.jackrabbit.vault.validation.impl.util.ValidatorSettingsImpl;
+import org.apache.jackrabbit.vault.validation.spi.NodePathValidator;
+import org.apache.jackrabbit.vault.validation.spi.ValidationContext;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessage;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
+import org.apache.jackrabbit.vault.validation.spi.Validator;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ValidationResultCacheTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testPutAndGet() {
+        ValidationResultCache cache = new ValidationResultCache(directory.resolve("cache"), 10);
+        Assertions.assertNull(cache.get("key1"));
+        List<ValidationMessage> messages = Arrays.asList(
+                new RuleValidationMessage("rule1", ValidationMessageSeverity.ERROR, "message1", "/var/test", null, null, 0, 0, null),
+                new RuleValidationMessage("rule2", ValidationMessageSeverity.WARN, "message2", "/oak:index/test", Paths.get("_oak_index", ".content.xml"), Paths.get("jcr_root"), 2, 3, null),
+                new RuleValidationMessage(RuleValidationMessage.UNKNOWN_RULE_ID, ValidationMessageSeverity.INFO, "message3"));
+        cache.put("key1", messages);
+        Assertions.assertEquals(messages, cache.get("key1"));
+        cache.put("key2", Collections.emptyList());
+        Assertions.assertEquals(Collections.emptyList(), cache.get("key2"));
+    }
+
+    @Test
+    void testLeastRecentlyUsedEviction() throws IOException {
+        ValidationResultCache cache = new ValidationResultCache(directory, 2);
+        cache.put("key1", Collections.emptyList());
+        cache.put("key2", Collections.emptyList());
+        // make key1 the least recently used entry independent of the file system's timestamp resolution
+        Files.setLastModifiedTime(directory.resolve("key1.cache"), FileTime.fromMillis(0));
+        Assertions.assertNotNull(cache.get("key2"));
+        cache.put("key3", Collections.emptyList());
+        Assertions.assertNull(cache.get("key1"));
+        Assertions.assertNotNull(cache.get("key2"));
+        Assertions.assertNotNull(cache.get("key3"));
+    }
+
+    @Test
+    void testEvictionLeavesRoomForNewEntries() throws IOException {
+        ValidationResultCache cache = new ValidationResultCache(directory, 20);
+        for (int i = 0; i < 21; i++) {
+            cache.put("key" + i, Collections.emptyList());
+        }
+        Assertions.assertEquals(18, countEntries());
+        cache.put("key21", Collections.emptyList());
+        cache.put("key22", Collections.emptyList());
+        // overwriting an existing entry does not increase the number of entries
+        cache.put("key22", Collections.emptyList());
+        Assertions.assertEquals(20, countEntries());
+        cache.put("key23", Collections.emptyList());
+        Assertions.assertEquals(18, countEntries());
+    }
+
+    private long countEntries() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    @Test
+    void testKeyOnlyDependsOnZipEntryNamesAndContents() throws IOException {
+        ValidatorSettingsImpl settings = new ValidatorSettingsImpl(false, ValidationMessageSeverity.WARN, Collections.emptyMap());
+        Path packageFile = directory.resolve("test.zip");
+        writeZip(packageFile, 0, "META-INF/vault/properties.xml", "properties", "jcr_root/var/.content.xml", "content");
+        String key = ValidationResultCache.createKey(packageFile, settings);
+        Assertions.assertNotNull(key);
+        // rebuilt with other timestamps and another entry order
+        writeZip(packageFile, 1_000_000_000_000L, "jcr_root/var/.content.xml", "content", "META-INF/vault/properties.xml", "properties");
+        Assertions.assertEquals(key, ValidationResultCache.createKey(packageFile, settings));
+        // modified content
+        writeZip(packageFile, 0, "META-INF/vault/properties.xml", "properties", "jcr_root/var/.content.xml", "other content");
+        Assertions.assertNotEquals(key, ValidationResultCache.createKey(packageFile, settings));
+        // content moved to another entry
+        writeZip(packageFile, 0, "META-INF/vault/properties.xml", "properties", "jcr_root/etc/.content.xml", "content");
+        Assertions.assertNotEquals(key, ValidationResultCache.createKey(packageFile, settings));
+        // not a zip file
+        Files.write(packageFile, new byte[] { 1, 2, 3 });
+        Assertions.assertNull(ValidationResultCache.createKey(packageFile, settings));
+    }
+
+    /**
+     *
+     * @param file the zip file to write
+     * @param time the modification time of all entries
+     * @param namesAndContents alternating entry names and contents
+     * @throws IOException in case the file could not be written
+     */
+    private static void writeZip(Path file, long time, String... namesAndContents) throws IOException {
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(file))) {
+            for (int i = 0; i < namesAndContents.length; i += 2) {
+                ZipEntry entry = new ZipEntry(namesAndContents[i]);
+                entry.setTime(time);
+                zip.putNextEntry(entry);
+                zip.write(namesAndContents[i + 1].getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+    }
+
+    @Test
+    void testConcurrentAccess() throws Exception {
+        ValidationResultCache cache = new ValidationResultCache(directory, 5);
+        List<ValidationMessage> messages = Collections.singletonList(new RuleValidationMessage("rule", ValidationMessageSeverity.ERROR, "message", "/var/test", null, null, 0, 0, null));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                String key = "key" + (i % 10);
+                futures.add(executor.submit(() -> {
+                    cache.put(key, messages);
+                    List<ValidationMessage> cachedMessages = cache.get(key);
+                    // may have been evicted concurrently, but must never be corrupt
+                    if (cachedMessages != null) {
+                        Assertions.assertEquals(messages, cachedMessages);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            MatcherAssert.assertThat(files.count(), Matchers.lessThanOrEqualTo(5L));
+        }
+    }
+
+    @Test
+    void testCacheVersion() throws IOException {
+        Path jar = directory.resolve("validator.jar");
+        Files.write(jar, new byte[] { 1, 2, 3 });
+        Assertions.assertEquals("1.5.0", ValidationResultCache.ValidatorVersion.getCacheVersion("1.5.0", jar));
+        // snapshots may be rebuilt with different code
+        String snapshotVersion = ValidationResultCache.ValidatorVersion.getCacheVersion("1.5.0-SNAPSHOT", jar);
+        MatcherAssert.assertThat(snapshotVersion, Matchers.startsWith("1.5.0-SNAPSHOT-"));
+        Files.write(jar, new byte[] { 1, 2, 4 });
+        MatcherAssert.assertThat(ValidationResultCache.ValidatorVersion.getCacheVersion("1.5.0-SNAPSHOT", jar),
+                Matchers.allOf(Matchers.startsWith("1.5.0-SNAPSHOT-"), Matchers.not(snapshotVersion)));
+        // classes directory
+        Path classes = directory.resolve("classes");
+        Files.createDirectories(classes.resolve("a"));
+        Files.write(classes.resolve("a").resolve("A.class"), new byte[] { 1 });
+        MatcherAssert.assertThat(ValidationResultCache.ValidatorVersion.getCacheVersion("unknown", classes), Matchers.startsWith("unknown-"));
+        Assertions.assertNull(ValidationResultCache.ValidatorVersion.getCacheVersion("1.5.0-SNAPSHOT", null));
+        Assertions.assertNull(ValidationResultCache.ValidatorVersion.getCacheVersion("1.5.0-SNAPSHOT", directory.resolve("missing.jar")));
+    }
+
+    @Test
+    void testReplayCachedResultsFromFactory() throws IOException {
+        Path packageFile = directory.resolve("test.zip");
+        writeZip(packageFile, 0, "jcr_root/var/.content.xml", "content");
+        Map<String, String> options = new HashMap<>();
+        options.put("resultCacheDirectory", directory.resolve("cache").toString());
+        ValidatorSettingsImpl settings = new ValidatorSettingsImpl(false, ValidationMessageSeverity.WARN, options);
+        AemCloudValidatorFactory factory = new AemCloudValidatorFactory();
+
+        ValidationContext context = new SimpleValidationContext("test", PackageType.CONTENT, packageFile, null);
+        Validator validator = factory.createValidator(context, settings);
+        MatcherAssert.assertThat(validator, Matchers.instanceOf(CachingValidator.class));
+        Collection<ValidationMessage> messages = ((NodePathValidator) validator).validate("/var/test");
+        Assertions.assertEquals(1, messages.size());
+        Assertions.assertTrue(validator.done().isEmpty());
+
+        // same package again
+        context = new SimpleValidationContext("test", PackageType.CONTENT, packageFile, null);
+        validator = factory.createValidator(context, settings);
+        MatcherAssert.assertThat(validator, Matchers.instanceOf(CachingValidator.ReplayingValidator.class));
+        MatcherAssert.assertThat(validator.done(), Matchers.contains(
+                new RuleValidationMessage(AemCloudValidator.NodePathViolationType.READONLY_MUTABLE_PATH.getRuleId(), ValidationMessageSeverity.WARN, AemCloudValidator.VIOLATION_MESSAGE_READONLY_MUTABLE_PATH, "/var/test", null, null, 0, 0, null)));
+
+        // sub packages of a cached container are cached as well
+        ValidationContext subPackageContext = new SimpleValidationContext("subpackage", PackageType.CONTENT, Paths.get("jcr_root", "apps", "install", "subpackage.zip"), context);
+        MatcherAssert.assertThat(factory.createValidator(subPackageContext, settings), Matchers.instanceOf(CachingValidator.class));
+
+        // different options must not reuse the cached results
+        options.put("allowReadOnlyMutablePaths", "true");
+        settings = new ValidatorSettingsImpl(false, ValidationMessageSeverity.WARN, options);
+        context = new SimpleValidationContext("test", PackageType.CONTENT, packageFile, null);
+        MatcherAssert.assertThat(factory.createValidator(context, settings), Matchers.instanceOf(CachingValidator.class));
+
+        // modified package must not reuse the cached results
+        writeZip(packageFile, 0, "jcr_root/var/.content.xml", "modified content");
+        options.remove("allowReadOnlyMutablePaths");
+        settings = new ValidatorSettingsImpl(false, ValidationMessageSeverity.WARN, options);
+        context = new SimpleValidationContext("test", PackageType.CONTENT, packageFile, null);
+        MatcherAssert.assertThat(factory.createValidator(context, settings), Matchers.instanceOf(CachingValidator.class));
+    }
+}